@@ -1,51 +1,215 @@
+import com.ecommerce.Money;
 import com.ecommerce.Product;
+import com.ecommerce.ProductCatalog;
 import com.ecommerce.Customer;
+import com.ecommerce.analytics.ProductSales;
+import com.ecommerce.browse.ProductFilter;
+import com.ecommerce.browse.ProductPage;
+import com.ecommerce.browse.ProductSort;
+import com.ecommerce.analytics.SalesAnalytics;
+import com.ecommerce.http.StorefrontServer;
+import com.ecommerce.importer.CatalogImporter;
 import com.ecommerce.orders.Order;
+import com.ecommerce.orders.OrderStatus;
+import com.ecommerce.orders.StatusFeedProcessor;
+import com.ecommerce.output.AsyncOutputSink;
+import com.ecommerce.service.CartSnapshot;
+import com.ecommerce.service.StoreService;
+import com.ecommerce.session.SessionManager;
+import com.ecommerce.store.MappedProductStore;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
 
 public class ECommerceMain {
-    private static List<Product> products = new ArrayList<>();
-    private static List<Customer> customers = new ArrayList<>();
-    private static List<Order> orders = new ArrayList<>();
+    private static ProductCatalog catalog = null;
+    private static MappedProductStore catalogFile = null; // only with -Decommerce.catalog.file=<path>
+    private static final int DEFAULT_CATALOG_FILE_CAPACITY = 1_000_000; // -Decommerce.catalog.capacity=<n>
+    private static final long CATALOG_FILE_TEXT_BYTES_PER_PRODUCT = 256;
+    private static StoreService store = null; // everything the store does; this class is just the console for it
     private static Scanner scanner = new Scanner(System.in);
+    // Everything this class shows goes through here; a background thread writes it to the terminal
+    private static AsyncOutputSink output = null;
     private static Customer currentCustomer = null;
-    private static int nextOrderID = 1001;
+    private static String sessionToken = null; // currentCustomer's session; it times out like any other
+    private static final Path JOURNAL_DIR = Paths.get("data", "journal");
+    private static final int RECENT_ORDER_LIMIT = 20;
+    private static final int FEED_FAILURES_SHOWN = 50;
+    private static final int IMPORT_FAILURES_SHOWN = 50;
+    private static final int TOP_SELLER_LIMIT = 5;
+    private static final int BROWSE_PAGE_SIZE = 10;
+    private static ProductSort browseSort = ProductSort.ID; // how Browse Products lists the catalog
+    private static boolean browseDescending = false;
+    private static boolean browseInStockOnly = false;
     
     public static void main(String[] args) {
-        System.out.println("=== Welcome to Java E-Commerce System ===\n");
+        openOutput();
+        if (args.length > 0 && args[0].equals("--http")) {
+            runHttpServer(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--status-feed")) {
+            runStatusFeed(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--import")) {
+            runCatalogImport(args);
+            return;
+        }
+        
+        println("=== Welcome to Java E-Commerce System ===\n");
         
         try {
             initializeSystem();
             runMainMenu();
         } catch (Exception e) {
             // General exception for unexpected errors
-            System.out.println("Oops! An unexpected error occurred: " + e.getMessage());
-            System.out.println("Please try restarting the program.");
+            println("Oops! An unexpected error occurred: " + e.getMessage());
+            println("Please try restarting the program.");
             // e.printStackTrace();
         } finally {
             scanner.close();
+            closeStore();
+            closeCatalogFile();
+        }
+        
+        println("\nThanks for visiting our store!");
+        output.close();
+    }
+    
+    // Serves the store over HTTP instead of the console: java ECommerceMain --http [port]
+    private static void runHttpServer(String[] args) {
+        int port = StorefrontServer.DEFAULT_PORT;
+        if (args.length > 1) {
+            try {
+                port = Integer.parseInt(args[1].trim());
+            } catch (NumberFormatException e) {
+                println("Please give the port as a number, e.g. --http 8080");
+                output.close();
+                return;
+            }
+        }
+        
+        StorefrontServer server;
+        try {
+            initializeSystem();
+            server = new StorefrontServer(store, port);
+        } catch (Exception e) {
+            println("Could not start the storefront API: " + e.getMessage());
+            closeStore();
+            closeCatalogFile();
+            output.close();
+            return;
         }
         
-        System.out.println("\nThanks for visiting our store!");
+        // Ctrl+C stops the server and saves everything, just like leaving the console menu
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            closeStore();
+            closeCatalogFile();
+            output.close();
+        }));
+        server.start();
+        println("✓ Storefront API listening on http://localhost:" + server.getPort() + "/products"
+                + (server.usesVirtualThreads() ? " (virtual threads)" : " (thread pool)"));
+    }
+    
+    // Applies a warehouse status feed and exits: java ECommerceMain --status-feed <file>
+    private static void runStatusFeed(String[] args) {
+        if (args.length < 2) {
+            println("Please give the feed file, e.g. --status-feed shipped.csv");
+            output.close();
+            return;
+        }
+        Path feed = Paths.get(args[1]);
+        try {
+            initializeSystem();
+            long[] shown = new long[1];
+            StatusFeedProcessor.Summary summary = store.applyStatusFeed(feed, (line, reason) -> {
+                synchronized (shown) { // failures arrive from several worker threads
+                    if (shown[0]++ < FEED_FAILURES_SHOWN) {
+                        println("❌ Line " + line + ": " + reason);
+                    }
+                }
+            });
+            if (summary.getFailed() > FEED_FAILURES_SHOWN) {
+                println("(Showing the first " + FEED_FAILURES_SHOWN + " of " + summary.getFailed() + " failed lines.)");
+            }
+            println("✓ " + feed + ": " + summary);
+        } catch (Exception e) {
+            println("Could not apply the status feed: " + e.getMessage());
+        } finally {
+            closeStore();
+            closeCatalogFile();
+            output.close();
+        }
+    }
+    
+    // Adds or updates products from a file and exits: java ECommerceMain --import <file.csv|file.jsonl>
+    private static void runCatalogImport(String[] args) {
+        if (args.length < 2) {
+            println("Please give the file to import, e.g. --import products.csv");
+            output.close();
+            return;
+        }
+        Path file = Paths.get(args[1]);
+        try {
+            initializeSystem();
+            long[] shown = new long[1];
+            CatalogImporter.Summary summary = store.importCatalog(file, (line, reason) -> {
+                if (shown[0]++ < IMPORT_FAILURES_SHOWN) {
+                    println("❌ Line " + line + ": " + reason);
+                }
+            });
+            if (summary.getFailed() > IMPORT_FAILURES_SHOWN) {
+                println("(Showing the first " + IMPORT_FAILURES_SHOWN + " of " + summary.getFailed() + " failed lines.)");
+            }
+            println("✓ " + file + ": " + summary + "; the catalog now has " + store.getProductCount() + " products");
+        } catch (Exception e) {
+            println("Could not import " + file + ": " + e.getMessage());
+        } finally {
+            closeStore();
+            closeCatalogFile();
+            output.close();
+        }
     }
     
     private static void initializeSystem() {
+        openCatalog();
+        
+        try {
+            // Loads the last snapshot and replays the journal after it
+            Duration idleTimeout = Duration.ofMinutes(Long.getLong("ecommerce.session.idleMinutes", SessionManager.DEFAULT_IDLE_TIMEOUT.toMinutes()));
+            store = StoreService.open(catalog, JOURNAL_DIR, idleTimeout, output);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load saved data from " + JOURNAL_DIR + ": " + e.getMessage());
+        }
+        if (store.getProductCount() > 0) {
+            println("✓ Restored " + store.getProductCount() + " products, " + store.getCustomerCount() + " customers and " + store.getOrderCount() + " orders from " + JOURNAL_DIR);
+            return;
+        }
+        
         try {
+            // First run: nothing saved yet, so start with the sample catalog
             // Old way of adding products (commented out to show iteration)
-            // products.add(new Product(1, "Old Item", 10.0, "", 10));
+            // catalog.put(new Product(1, "Old Item", Money.parse("10.00"), "", 10));
 
             // Create sample art and craft products
-            products.add(new Product(201, "Professional Acrylic Paint Set", 85.50, "Set of 24 vibrant, high-pigment acrylic paints (75ml tubes)", 10));
-            products.add(new Product(202, "Artist's Easel (Wooden)", 150.00, "Adjustable solid beechwood easel for studio or outdoor use", 3));
-            products.add(new Product(203, "Sketchbook (A4, 100 sheets)", 12.75, "Premium acid-free paper, ideal for pencils, charcoal, and ink", 50));
-            products.add(new Product(204, "Watercolor Brush Set", 28.99, "Set of 12 synthetic brushes for watercolor painting", 25));
-            products.add(new Product(205, "Clay Sculpting Tool Kit", 35.00, "11-piece set with various tools for pottery and sculpting", 18));
-            products.add(new Product(206, "Calligraphy Pen Set", 45.99, "Includes 4 pens, 5 nibs, and black ink for elegant writing", 15));
-            products.add(new Product(207, "Large Canvas (24x36 inch)", 22.00, "Primed cotton canvas, ready for oil or acrylic paints", 30));
-            products.add(new Product(208, "Craft Glue (All-Purpose)", 5.99, "Strong, quick-drying adhesive for paper, fabric, and wood", 100));
-            
-            System.out.println("✓ Product catalog loaded successfully with art and craft supplies");
+            List<Product> products = new ArrayList<>();
+            products.add(new Product(201, "Professional Acrylic Paint Set", Money.parse("85.50"), "Set of 24 vibrant, high-pigment acrylic paints (75ml tubes)", 10));
+            products.add(new Product(202, "Artist's Easel (Wooden)", Money.parse("150.00"), "Adjustable solid beechwood easel for studio or outdoor use", 3));
+            products.add(new Product(203, "Sketchbook (A4, 100 sheets)", Money.parse("12.75"), "Premium acid-free paper, ideal for pencils, charcoal, and ink", 50));
+            products.add(new Product(204, "Watercolor Brush Set", Money.parse("28.99"), "Set of 12 synthetic brushes for watercolor painting", 25));
+            products.add(new Product(205, "Clay Sculpting Tool Kit", Money.parse("35.00"), "11-piece set with various tools for pottery and sculpting", 18));
+            products.add(new Product(206, "Calligraphy Pen Set", Money.parse("45.99"), "Includes 4 pens, 5 nibs, and black ink for elegant writing", 15));
+            products.add(new Product(207, "Large Canvas (24x36 inch)", Money.parse("22.00"), "Primed cotton canvas, ready for oil or acrylic paints", 30));
+            products.add(new Product(208, "Craft Glue (All-Purpose)", Money.parse("5.99"), "Strong, quick-drying adhesive for paper, fabric, and wood", 100));
+            store.seedCatalog(products);
+            
+            println("✓ Product catalog loaded successfully with art and craft supplies");
             
         } catch (Exception e) {
             // Error message for initialization
@@ -53,12 +217,57 @@ public class ECommerceMain {
         }
     }
     
+    // Keeps the catalog on the heap, or in a memory-mapped file if one was asked for
+    private static void openCatalog() {
+        String file = System.getProperty("ecommerce.catalog.file");
+        if (file == null || file.trim().isEmpty()) {
+            catalog = new ProductCatalog();
+            return;
+        }
+        int capacity = Integer.getInteger("ecommerce.catalog.capacity", DEFAULT_CATALOG_FILE_CAPACITY);
+        if (capacity <= 0) {
+            throw new RuntimeException("ecommerce.catalog.capacity must be a positive number of products.");
+        }
+        try {
+            // An existing file smaller than this is grown to it
+            catalogFile = MappedProductStore.openOrCreate(Paths.get(file.trim()), capacity,
+                    capacity * CATALOG_FILE_TEXT_BYTES_PER_PRODUCT);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open the catalog file " + file + ": " + e.getMessage());
+        }
+        catalog = new ProductCatalog(catalogFile);
+    }
+    
+    private static void closeCatalogFile() {
+        if (catalogFile == null) {
+            return;
+        }
+        try {
+            catalogFile.close();
+        } catch (IOException e) {
+            println("⚠️ Could not close the catalog file cleanly: " + e.getMessage());
+        }
+    }
+    
+    private static void closeStore() {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.close(); // snapshots the journal on the way out so the next start has little to replay
+        } catch (IOException | IllegalStateException e) {
+            println("⚠️ Could not close " + JOURNAL_DIR + " cleanly: " + e.getMessage());
+        }
+        store = null;
+    }
+    
     private static void runMainMenu() {
         boolean running = true;
         while (running) {
             try {
+                refreshSession();
                 displayMainMenu();
-                int choice = getMenuChoiceInput(1, 6); 
+                int choice = getMenuChoiceInput(1, 8); 
                 
                 switch (choice) {
                     case 1:
@@ -68,64 +277,92 @@ public class ECommerceMain {
                         if (currentCustomer != null) {
                             browseProducts();
                         } else {
-                            System.out.println("Please log in first to browse products.");
+                            println("Please log in first to browse products.");
                         }
                         break;
                     case 3:
                         if (currentCustomer != null) {
                             manageCart();
                         } else {
-                            System.out.println("Please log in first to manage your cart.");
+                            println("Please log in first to manage your cart.");
                         }
                         break;
                     case 4:
                         if (currentCustomer != null) {
                             checkout();
                         } else {
-                            System.out.println("Please log in first to checkout.");
+                            println("Please log in first to checkout.");
                         }
                         break;
                     case 5:
                         viewOrders();
                         break;
                     case 6:
-                        System.out.println("Exiting the system...");
+                        viewSalesReport();
+                        break;
+                    case 7:
+                        viewStoreMetrics();
+                        break;
+                    case 8:
+                        println("Exiting the system...");
                         running = false; // Exit loop
                         break;
                     default:
                         // This case should ideally not be reached with getMenuChoiceInput
-                        System.out.println("Invalid option. Please try again.");
+                        println("Invalid option. Please try again.");
                 }
                 
             } catch (Exception e) {
                 // Error message for menu interaction
-                System.out.println("Something went wrong with your choice: " + e.getMessage());
-                System.out.println("Let's try that again.\n");
+                println("Something went wrong with your choice: " + e.getMessage());
+                println("Let's try that again.\n");
             }
         }
     }
     
+    // Checks the session is still alive (which also brings back a cart put aside while idle)
+    private static void refreshSession() {
+        if (sessionToken == null) {
+            return;
+        }
+        currentCustomer = store.resumeSession(sessionToken);
+        if (currentCustomer == null) {
+            sessionToken = null;
+            println("\nYour session timed out. Please log in again; your cart has been saved.");
+        }
+    }
+    
+    private static void logIn(Customer customer) {
+        if (sessionToken != null) {
+            store.endSession(sessionToken);
+        }
+        sessionToken = store.startSession(customer).getToken();
+        currentCustomer = customer;
+    }
+    
     private static void displayMainMenu() {
-        System.out.println("\n=== MAIN MENU ===");
+        println("\n=== MAIN MENU ===");
         if (currentCustomer != null) {
-            System.out.println("Logged in as: " + currentCustomer.getName());
+            println("Logged in as: " + currentCustomer.getName());
         } else {
-            System.out.println("Not logged in.");
+            println("Not logged in.");
         }
-        System.out.println("1. Customer Login/Register");
-        System.out.println("2. Browse Products");
-        System.out.println("3. View/Manage Cart");
-        System.out.println("4. Checkout");
-        System.out.println("5. View Orders");
-        System.out.println("6. Exit");
-        System.out.print("Enter your choice: ");
+        println("1. Customer Login/Register");
+        println("2. Browse Products");
+        println("3. View/Manage Cart");
+        println("4. Checkout");
+        println("5. View Orders");
+        println("6. Sales Report");
+        println("7. Store Metrics");
+        println("8. Exit");
+        print("Enter your choice: ");
     }
     
     private static void handleCustomerLogin() {
-        System.out.println("\n=== CUSTOMER LOGIN ===");
-        System.out.println("1. Login as existing customer");
-        System.out.println("2. Register as new customer");
-        System.out.print("Choose an option: ");
+        println("\n=== CUSTOMER LOGIN ===");
+        println("1. Login as existing customer");
+        println("2. Register as new customer");
+        print("Choose an option: ");
         
         try {
             int choice = getMenuChoiceInput(1, 2);
@@ -135,86 +372,88 @@ public class ECommerceMain {
             } else if (choice == 2) {
                 registerNewCustomer();
             } else {
-                System.out.println("Invalid login option. Returning to main menu.");
+                println("Invalid login option. Returning to main menu.");
             }
         } catch (Exception e) {
-            System.out.println("Login process failed: " + e.getMessage());
+            println("Login process failed: " + e.getMessage());
         }
     }
     
     private static void loginExistingCustomer() {
-        if (customers.isEmpty()) {
-            System.out.println("No customers registered yet. Please register first.");
+        if (store.getCustomerCount() == 0) {
+            println("No customers registered yet. Please register first.");
             return;
         }
         
-        System.out.println("\nAvailable customers:");
-        for (int i = 0; i < customers.size(); i++) {
-            System.out.println((i + 1) + ". " + customers.get(i).getName()); // Simpler display
-        }
-        
-        System.out.print("Select customer by number (1-" + customers.size() + "): ");
+        print("Enter your email address: ");
         try {
-            int choice = getMenuChoiceInput(1, customers.size());
-            if (choice != -1) { // Check for valid input from getMenuChoiceInput
-                currentCustomer = customers.get(choice - 1);
-                System.out.println("Welcome back, " + currentCustomer.getName() + "!");
+            String email = readLine();
+            Customer customer = store.findCustomerByEmail(email); // straight to the account, however many there are
+            if (customer != null) {
+                logIn(customer);
+                println("Welcome back, " + currentCustomer.getName() + "!");
             } else {
-                System.out.println("Invalid selection. Please try again.");
+                println("No account found with that email address. Check it, or register as a new customer.");
             }
         } catch (Exception e) {
             // Error message
-            System.out.println("Could not log in: " + e.getMessage());
+            println("Could not log in: " + e.getMessage());
         }
     }
     
     private static void registerNewCustomer() {
-        System.out.println("\n=== REGISTER NEW CUSTOMER ===");
+        println("\n=== REGISTER NEW CUSTOMER ===");
         
         try {
-            System.out.print("Enter your full name: ");
-            String name = scanner.nextLine(); 
+            print("Enter your full name: ");
+            String name = readLine(); 
             
-            System.out.print("Enter your email address: ");
-            String email = scanner.nextLine();
+            print("Enter your email address: ");
+            String email = readLine();
             
             // Basic validation before creating object
             if (name.trim().isEmpty() || email.trim().isEmpty()) {
-                System.out.println("Name and email cannot be empty. Registration failed.");
+                println("Name and email cannot be empty. Registration failed.");
                 return;
             }
             
-            int newCustomerID = customers.size() + 1001; // Simple ID generation
-            Customer newCustomer = new Customer(newCustomerID, name, email); // Validation happens in Customer class
-            customers.add(newCustomer);
-            currentCustomer = newCustomer;
+            Customer newCustomer = store.registerCustomer(name, email); // Validation happens in Customer class
+            logIn(newCustomer);
             
-            System.out.println("Registration successful! Welcome, " + newCustomer.getName() + "!");
+            println("Registration successful! Welcome, " + newCustomer.getName() + "!");
             
-        } catch (IllegalArgumentException e) {
-            // Error from Customer class validation
-            System.out.println("Registration failed: " + e.getMessage());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // Error from Customer class validation, or the registration couldn't be saved
+            println("Registration failed: " + e.getMessage());
         } catch (Exception e) {
             // Exception for other unexpected errors during registration
-            System.out.println("An error occurred during registration. Please try again.");
+            println("An error occurred during registration. Please try again.");
         }
     }
     
     private static void browseProducts() {
+        // Cursors of the pages seen so far, so "previous" can go back; null is the first page
+        List<String> pageCursors = new ArrayList<>();
+        pageCursors.add(null);
         boolean browsing = true;
         while (browsing) {
-            System.out.println("\n=== BROWSE PRODUCTS ===");
-            displayProducts();
-            
-            System.out.println("\nOptions:");
-            System.out.println("1. Add product to cart");
-            System.out.println("2. View product details");
-            System.out.println("3. Search Products");
-            System.out.println("4. Return to main menu");
-            System.out.print("Enter your choice: ");
+            println("\n=== BROWSE PRODUCTS ===");
+            String cursor = pageCursors.get(pageCursors.size() - 1);
+            ProductPage page = store.productPage(browseSort, browseDescending, browseInStockOnly, cursor, BROWSE_PAGE_SIZE);
+            displayProducts(page, pageCursors.size());
+            
+            println("\nOptions:");
+            println("1. Add product to cart");
+            println("2. View product details");
+            println("3. Search Products");
+            println("4. Next page");
+            println("5. Previous page");
+            println("6. Sort and filter");
+            println("7. Return to main menu");
+            print("Enter your choice: ");
             
             try {
-                int choice = getMenuChoiceInput(1, 3);
+                int choice = getMenuChoiceInput(1, 7);
                 
                 switch (choice) {
                     case 1:
@@ -227,142 +466,210 @@ public class ECommerceMain {
                         searchProducts();
                         break;
                     case 4:
+                        if (page.hasNext()) {
+                            pageCursors.add(page.getNextCursor());
+                        } else {
+                            println("This is the last page.");
+                        }
+                        break;
+                    case 5:
+                        if (pageCursors.size() > 1) {
+                            pageCursors.remove(pageCursors.size() - 1);
+                        } else {
+                            println("This is the first page.");
+                        }
+                        break;
+                    case 6:
+                        chooseProductListing();
+                        pageCursors.clear();
+                        pageCursors.add(null); // a new order starts from its first page
+                        break;
+                    case 7:
                         browsing = false; // Exit loop
                         break;
                     default:
-                        System.out.println("Invalid option. Please choose 1, 2, or 3.");
+                        println("Invalid option. Please choose 1-7.");
                 }
             } catch (Exception e) {
-                System.out.println("Error during browsing: " + e.getMessage());
+                println("Error during browsing: " + e.getMessage());
             }
         }
     }
     
-    private static void displayProducts() {
-        System.out.println("Available Products:");
-        for (Product product : products) {
-            product.displayDetails();
+    // Shows one page of products; only this page is read from the catalog
+    private static void displayProducts(ProductPage page, int pageNumber) {
+        println("Available Products (page " + pageNumber + ", by " + browseSort.getDisplayName().toLowerCase()
+                + (browseDescending ? ", highest first" : "") + (browseInStockOnly ? ", in stock only" : "") + "):");
+        if (page.getProducts().isEmpty()) {
+            println("No products to show here.");
+            return;
         }
+        StringBuilder listing = new StringBuilder();
+        for (Product product : page.getProducts()) {
+            listing.append(store.productDetails(product)); // cached; only changed products are formatted again
+        }
+        print(listing);
+    }
+    
+    private static void chooseProductListing() {
+        println("\nSort products by:");
+        println("1. Product ID");
+        println("2. Price, lowest first");
+        println("3. Price, highest first");
+        println("4. Name");
+        println("5. Stock, most first");
+        print("Enter your choice: ");
+        int choice = getMenuChoiceInput(1, 5);
+        switch (choice) {
+            case 1: browseSort = ProductSort.ID; browseDescending = false; break;
+            case 2: browseSort = ProductSort.PRICE; browseDescending = false; break;
+            case 3: browseSort = ProductSort.PRICE; browseDescending = true; break;
+            case 4: browseSort = ProductSort.NAME; browseDescending = false; break;
+            case 5: browseSort = ProductSort.STOCK; browseDescending = true; break;
+            default:
+                println("\nSort order not changed.");
+                break;
+        }
+        
+        print("Show only products in stock? (yes/no): ");
+        String answer = readLine().trim().toLowerCase();
+        browseInStockOnly = answer.equals("yes") || answer.equals("y");
     }
     
     private static void addProductToCart() {
-        System.out.print("Enter product ID to add to cart: ");
+        print("Enter product ID to add to cart: ");
         try {
             int productID = getIntegerInput(); 
             Product selectedProduct = findProductByID(productID);
             
             if (selectedProduct == null) {
-                System.out.println("Product not found. Check the ID and try again.");
+                println("Product not found. Check the ID and try again.");
                 return;
             }
             
             if (!selectedProduct.isAvailable()) {
-                System.out.println("Sorry, " + selectedProduct.getName() + " is currently out of stock.");
+                println("Sorry, " + selectedProduct.getName() + " is currently out of stock.");
                 return;
             }
             
-            System.out.print("Enter quantity (1-" + selectedProduct.getStock() + "): ");
+            print("Enter quantity (1-" + selectedProduct.getStock() + "): ");
             int quantity = getQuantityInput(1, selectedProduct.getStock()); 
             
             if (quantity != -1) { // Check if quantity input was valid
-                currentCustomer.addToCart(selectedProduct, quantity);
-                System.out.println("✓ Added " + quantity + " x " + selectedProduct.getName() + " to your cart!");
+                store.addToCart(currentCustomer, productID, quantity);
+                println("✓ Added " + quantity + " x " + selectedProduct.getName() + " to your cart!");
             } else {
-                System.out.println("Invalid quantity. Item not added to cart.");
+                println("Invalid quantity. Item not added to cart.");
             }
             
         } catch (IllegalArgumentException e) {
             // Validation errors from Product/Customer classes
-            System.out.println("Could not add to cart: " + e.getMessage());
+            println("Could not add to cart: " + e.getMessage());
         } catch (Exception e) {
             // General exception for other issues
-            System.out.println("An error occurred while adding to cart. Please try again.");
+            println("An error occurred while adding to cart. Please try again.");
         }
     }
 
     private static void searchProducts(){
-        System.out.println("Enter product name to search");
-        List<Product> temProducts = new ArrayList<>(); 
+        println("Enter product name or keywords to search");
 
         try{
-            String productName = scanner.nextLine();
+            String productName = readLine();
             if(productName == null || productName.trim().isEmpty()){
-                System.out.println("Please enter a valid name");
+                println("Please enter a valid name");
             }
             else{
-                for(int i=0; i<products.size(); i++){
-                    if(products.get(i).getName().toLowerCase().contains(productName.toLowerCase())){
-                        temProducts.add(products.get(i));
+                print("Highest price (press Enter for any): ");
+                String maxPrice = readLine().trim();
+                print("Only products in stock? (yes/no): ");
+                String answer = readLine().trim().toLowerCase();
+                boolean inStockOnly = answer.equals("yes") || answer.equals("y");
+                
+                List<Product> temProducts;
+                if (maxPrice.isEmpty() && !inStockOnly) {
+                    // Looks through names and descriptions, best matches first
+                    temProducts = store.searchProducts(productName, StoreService.DEFAULT_SEARCH_LIMIT);
+                } else {
+                    // Matches combined with the price and stock indexes, cheapest first
+                    ProductFilter filter = ProductFilter.any().matching(productName);
+                    if (!maxPrice.isEmpty()) {
+                        filter = filter.priceUpTo(Money.parse(maxPrice));
                     }
+                    if (inStockOnly) {
+                        filter = filter.inStockOnly();
+                    }
+                    temProducts = store.filterProducts(filter, false, null, StoreService.DEFAULT_SEARCH_LIMIT).getProducts();
                 }
 
                 if(temProducts.size() == 0) 
-                    System.out.println("No products found matching your search");
+                    println("No products found matching your search");
                 else {
                     for (Product product : temProducts) {
-                        product.displayDetails();
+                        print(store.productDetails(product));
                     }
                 }
             }
 
         } catch (IllegalArgumentException e){
-            System.out.println("Could not search the product");
+            println("Could not search the product");
         } catch (Exception e) {
             // General exception for other issues
-            System.out.println("An error occurred while adding to cart. Please try again.");
+            println("An error occurred while adding to cart. Please try again.");
         }
     }
     
     private static void viewProductDetails() {
-        System.out.print("Enter product ID for details: ");
+        print("Enter product ID for details: ");
         try {
             int productID = getIntegerInput();
             Product product = findProductByID(productID);
             
             if (product == null) {
-                System.out.println("Product not found with ID " + productID + ".");
+                println("Product not found with ID " + productID + ".");
                 return;
             }
             
-            System.out.println("\n=== PRODUCT DETAILS ===");
-            System.out.println("Name: " + product.getName());
-            System.out.println("Price: $" + String.format("%.2f", product.getPrice()));
-            System.out.println("Description: " + product.getDescription());
-            System.out.println("Stock: " + product.getStock() + " available");
-            System.out.println("=======================");
+            println("\n=== PRODUCT DETAILS ===");
+            println("Name: " + product.getName());
+            println("Price: $" + product.getPrice());
+            println("Description: " + product.getDescription());
+            println("Stock: " + product.getStock() + " available");
+            println("=======================");
             
         } catch (Exception e) {
-            System.out.println("Error viewing product details: " + e.getMessage());
+            println("Error viewing product details: " + e.getMessage());
         }
     }
     
     private static void manageCart() {
         boolean managing = true;
         while (managing) {
-            System.out.println("\n=== CART MANAGEMENT ===");
-            currentCustomer.displayCart();
+            println("\n=== CART MANAGEMENT ===");
+            CartSnapshot cart = store.viewCart(currentCustomer);
+            displayCart(cart);
             
-            if (currentCustomer.isCartEmpty()) {
-                System.out.println("Your cart is empty. Time to go shopping!");
+            if (cart.isEmpty()) {
+                println("Your cart is empty. Time to go shopping!");
                 return; // Exit cart management if empty
             }
             
-            System.out.println("\nOptions:");
-            System.out.println("1. Update item quantity");
-            System.out.println("2. Remove item from cart");
-            System.out.println("3. Clear entire cart");
-            System.out.println("4. Return to main menu");
-            System.out.print("Enter your choice: ");
+            println("\nOptions:");
+            println("1. Update item quantity");
+            println("2. Remove item from cart");
+            println("3. Clear entire cart");
+            println("4. Return to main menu");
+            print("Enter your choice: ");
             
             try {
                 int choice = getMenuChoiceInput(1, 4);
                 
                 switch (choice) {
                     case 1:
-                        updateCartQuantity();
+                        updateCartQuantity(cart);
                         break;
                     case 2:
-                        removeFromCart();
+                        removeFromCart(cart);
                         break;
                     case 3:
                         clearCart();
@@ -371,246 +678,330 @@ public class ECommerceMain {
                         managing = false; // Exit loop
                         break;
                     default:
-                        System.out.println("Invalid option. Please choose 1-4.");
+                        println("Invalid option. Please choose 1-4.");
                 }
             } catch (Exception e) {
-                System.out.println("Error managing cart: " + e.getMessage());
+                println("Error managing cart: " + e.getMessage());
             }
         }
     }
     
-    private static void updateCartQuantity() {
-        System.out.print("Enter the item number from your cart to update: ");
+    private static void updateCartQuantity(CartSnapshot cart) {
+        print("Enter the item number from your cart to update: ");
         try {
-            int itemIndex = getMenuChoiceInput(1, currentCustomer.getShoppingCart().size()) - 1;
+            int itemIndex = getMenuChoiceInput(1, cart.size()) - 1;
             if (itemIndex == -2) { // getMenuChoiceInput returns -1 for invalid, -2 if out of range
-                System.out.println("Invalid item number. Please try again.");
+                println("Invalid item number. Please try again.");
                 return;
             }
             
-            Product productInCart = currentCustomer.getShoppingCart().get(itemIndex);
+            Product productInCart = cart.getProduct(itemIndex);
             
-            System.out.print("Enter new quantity for " + productInCart.getName() + " (1-" + productInCart.getStock() + "): ");
+            print("Enter new quantity for " + productInCart.getName() + " (1-" + productInCart.getStock() + "): ");
             int newQuantity = getQuantityInput(1, productInCart.getStock());
             
             if (newQuantity != -1) { // Check if quantity input was valid
-                currentCustomer.updateQuantity(itemIndex, newQuantity);
-                System.out.println("✓ Quantity updated successfully!");
+                store.updateCartQuantity(currentCustomer, itemIndex, newQuantity);
+                println("✓ Quantity updated successfully!");
             } else {
-                System.out.println("Invalid quantity. Quantity not updated.");
+                println("Invalid quantity. Quantity not updated.");
             }
             
         } catch (IllegalArgumentException e) {
-            System.out.println("Could not update quantity: " + e.getMessage());
+            println("Could not update quantity: " + e.getMessage());
         } catch (Exception e) {
-            System.out.println("An error occurred while updating cart quantity. Please try again.");
+            println("An error occurred while updating cart quantity. Please try again.");
         }
     }
     
-    private static void removeFromCart() {
-        System.out.print("Enter the item number from your cart to remove: ");
+    private static void removeFromCart(CartSnapshot cart) {
+        print("Enter the item number from your cart to remove: ");
         try {
-            int itemIndex = getMenuChoiceInput(1, currentCustomer.getShoppingCart().size()) - 1;
+            int itemIndex = getMenuChoiceInput(1, cart.size()) - 1;
             if (itemIndex == -2) { // getMenuChoiceInput returns -1 for invalid, -2 if out of range
-                System.out.println("Invalid item number. Please try again.");
+                println("Invalid item number. Please try again.");
                 return;
             }
             
-            String productName = currentCustomer.getShoppingCart().get(itemIndex).getName();
-            
-            currentCustomer.removeFromCart(itemIndex);
-            System.out.println("✓ Removed " + productName + " from your cart.");
+            Product removed = store.removeFromCart(currentCustomer, itemIndex);
+            println("✓ Removed " + removed.getName() + " from your cart.");
             
         } catch (IllegalArgumentException e) {
-            System.out.println("Could not remove item: " + e.getMessage());
+            println("Could not remove item: " + e.getMessage());
         } catch (Exception e) {
-            System.out.println("An error occurred while removing item. Please try again.");
+            println("An error occurred while removing item. Please try again.");
         }
     }
     
     private static void clearCart() {
-        System.out.print("Are you sure you want to clear your entire cart? (yes/no): ");
-        String confirmation = scanner.nextLine().trim().toLowerCase();
+        print("Are you sure you want to clear your entire cart? (yes/no): ");
+        String confirmation = readLine().trim().toLowerCase();
         
         if (confirmation.equals("yes") || confirmation.equals("y")) {
-            currentCustomer.clearCart();
-            System.out.println("✓ Your cart is now empty.");
+            store.clearCart(currentCustomer);
+            println("✓ Your cart is now empty.");
         } else {
-            System.out.println("Cart not cleared.");
+            println("Cart not cleared.");
         }
     }
     
+    // Same layout as Customer.displayCart, from a copy taken through the store
+    private static void displayCart(CartSnapshot cart) {
+        if (cart.isEmpty()) {
+            println("Your shopping cart is empty.");
+            return;
+        }
+        
+        println("\n=== YOUR SHOPPING CART ===");
+        for (int i = 0; i < cart.size(); i++) {
+            printf("%d. %s x%d = $%s\n", (i + 1), cart.getProduct(i).getName(), cart.getQuantity(i), Money.format(cart.getSubtotalCents(i)));
+        }
+        printf("\nTotal: $%s\n", Money.format(cart.getTotalCents()));
+        println("==========================");
+    }
+    
     private static void checkout() {
-        if (currentCustomer.isCartEmpty()) {
-            System.out.println("Your cart is empty. Add some products before checking out.");
+        CartSnapshot cart = store.viewCart(currentCustomer);
+        if (cart.isEmpty()) {
+            println("Your cart is empty. Add some products before checking out.");
             return;
         }
         
-        System.out.println("\n=== CHECKOUT ===");
-        currentCustomer.displayCart();
+        println("\n=== CHECKOUT ===");
+        displayCart(cart);
         
-        System.out.print("Ready to place your order? (yes/no): ");
-        String confirmation = scanner.nextLine().trim().toLowerCase();
+        print("Ready to place your order? (yes/no): ");
+        String confirmation = readLine().trim().toLowerCase();
         
         if (!confirmation.equals("yes") && !confirmation.equals("y")) {
-            System.out.println("Checkout cancelled. You can continue shopping.");
+            println("Checkout cancelled. You can continue shopping.");
             return;
         }
         
         try {
-            // Create order
-            Order order = new Order(nextOrderID++, currentCustomer);
+            // Reserves stock for every item at once, then creates the confirmed order and clears the cart.
+            // If any item is short on stock nothing is changed.
+            Order order = store.checkout(currentCustomer);
             
-            // Update product stock for each item in the order
-            List<Product> itemsInOrder = order.getProducts();
-            List<Integer> quantitiesInOrder = order.getQuantities();
-            
-            for (int i = 0; i < itemsInOrder.size(); i++) {
-                itemsInOrder.get(i).reduceStock(quantitiesInOrder.get(i));
-            }
-            
-            // Finalize order
-            orders.add(order);
-            currentCustomer.clearCart(); // Clear customer's cart after order
-            order.setStatus("Confirmed"); // Set initial status
-            
-            System.out.println("\n✓ Your order has been placed successfully!");
-            order.displayOrderSummary();
+            println("\n✓ Your order has been placed successfully!");
+            order.displayOrderSummary(catalog, output);
             
         } catch (IllegalArgumentException e) {
             // Validation errors from Order/Product classes
-            System.out.println("Order placement failed: " + e.getMessage());
+            println("Order placement failed: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            // The order couldn't be saved, so it wasn't placed; the stock and the cart are as they were
+            println("Order placement failed: " + e.getMessage());
+            println("Nothing was charged and your cart has been kept. Please try again later.");
         } catch (Exception e) {
             // Exception for other issues during checkout
-            System.out.println("An unexpected error occurred during checkout. Please try again.");
+            println("An unexpected error occurred during checkout. Please try again.");
         }
     }
     
     private static void viewOrders() {
-        System.out.println("\n=== ALL ORDERS ===");
-        if (orders.isEmpty()) {
-            System.out.println("No orders have been placed yet.");
+        println("\n=== ALL ORDERS ===");
+        int orderCount = store.getOrderCount();
+        if (orderCount == 0) {
+            println("No orders have been placed yet.");
             return;
         }
         
-        for (Order order : orders) {
-            System.out.println(order);
+        // Only the most recent ones; any order can still be opened by its ID below
+        for (Order order : store.latestOrders(RECENT_ORDER_LIMIT)) {
+            println(order);
+        }
+        if (orderCount > RECENT_ORDER_LIMIT) {
+            println("(Showing the latest " + RECENT_ORDER_LIMIT + " of " + orderCount + " orders.)");
         }
         int origOrderId = 0;
         int orderID = getIntegerInput();
         Order order = findOrderByID(orderID);
-        System.out.print("Enter an Order ID to see details (or 0 to go back): ");
+        print("Enter an Order ID to see details (or 0 to go back): ");
         try {
             origOrderId = orderID;
             if (orderID == 0) return;
             
 
             if (order != null) {
-                order.displayOrderSummary();
+                order.displayOrderSummary(catalog, output);
             } else {
-                System.out.println("Order with ID " + orderID + " not found.");
+                println("Order with ID " + orderID + " not found.");
             }
         } catch (Exception e) {
-            System.out.println("Error viewing order details: " + e.getMessage());
+            println("Error viewing order details: " + e.getMessage());
         }
 
         if (order == null) {
-            System.out.println("⚠️ Internal error: Order reference is null.");
+            println("⚠️ Internal error: Order reference is null.");
             return;
         }
-        System.out.print("Would you like to update the status of this order? (yes/no): ");
-        String updateChoice = scanner.nextLine().trim().toLowerCase();
+        if (order.getStatus().isFinal()) {
+            println("This order is " + order.getStatus() + " and its status can't change any more.");
+            return;
+        }
+        print("Would you like to update the status of this order? (yes/no): ");
+        String updateChoice = readLine().trim().toLowerCase();
         if (updateChoice.equals("yes") || updateChoice.equals("y")) {
-            List<String> validStatuses = Arrays.asList("Pending", "Confirmed", "Processing", "Shipped", "Delivered", "Cancelled");
-            //"Pending", "Confirmed", "Processing", "Shipped", "Delivered", "Cancelled"
+            // Only the statuses this order can move to from where it is now
+            OrderStatus[] nextStatuses = order.getStatus().nextStatuses();
 
-            System.out.println("Available Status Options:");
-            for (int i = 0; i < validStatuses.size(); i++) {
-                System.out.println((i + 1) + ". " + validStatuses.get(i));
+            println("Available Status Options:");
+            for (int i = 0; i < nextStatuses.length; i++) {
+                println((i + 1) + ". " + nextStatuses[i]);
             }
 
-            System.out.print("Enter the number for new status: ");
-            int statusChoice = getMenuChoiceInput(1, validStatuses.size());
+            print("Enter the number for new status: ");
+            int statusChoice = getMenuChoiceInput(1, nextStatuses.length);
 
-            if (statusChoice >= 1 && statusChoice <= validStatuses.size()) {
-                String newStatus = validStatuses.get(statusChoice - 1);
+            if (statusChoice >= 1 && statusChoice <= nextStatuses.length) {
+                OrderStatus newStatus = nextStatuses[statusChoice - 1];
                 try {
-                    Objects.requireNonNull(order).setStatus(newStatus); // Assuming this internally validates transitions
-                    System.out.println("✅ Order status updated to: " + newStatus);
+                    store.updateOrderStatus(order.getOrderID(), newStatus);
+                    println("✅ Order status updated to: " + newStatus);
                 } catch (IllegalArgumentException e) {
-                    System.out.println("❌ Failed to update status: " + e.getMessage());
+                    println("❌ Failed to update status: " + e.getMessage());
                 }
             } else {
-                System.out.println("❌ Invalid status choice. No changes made.");
+                println("❌ Invalid status choice. No changes made.");
             }
         }
 
     }
     
     
+    // Running totals kept by the store's analytics; nothing here goes through the order history
+    private static void viewSalesReport() {
+        SalesAnalytics analytics = store.getAnalytics();
+        println("\n=== SALES REPORT ===");
+        println("Orders: " + analytics.getOrderCount() + "   Units sold: " + analytics.getUnitsSold()
+                + "   Revenue: $" + Money.format(analytics.getRevenueCents()));
+        for (OrderStatus status : OrderStatus.values()) {
+            println("  " + status + ": " + analytics.getOrderCount(status));
+        }
+        println("Revenue in the last hour: $" + Money.format(analytics.windowRevenueCents(Duration.ofHours(1)))
+                + "   last 24 hours: $" + Money.format(analytics.windowRevenueCents(SalesAnalytics.MAX_WINDOW)));
+        List<ProductSales> topSellers = analytics.topSellers(SalesAnalytics.MAX_WINDOW, TOP_SELLER_LIMIT);
+        if (topSellers.isEmpty()) {
+            println("Nothing sold in the last 24 hours.");
+            return;
+        }
+        println("Top sellers in the last 24 hours:");
+        for (int i = 0; i < topSellers.size(); i++) {
+            ProductSales sales = topSellers.get(i);
+            Product product = store.productForDisplay(sales.getProductID());
+            String name = product != null ? product.getName() : "Product #" + sales.getProductID();
+            println("  " + (i + 1) + ". " + name + " - " + sales.getUnits() + " sold, $" + Money.format(sales.getRevenueCents()));
+        }
+    }
+    
+    // How often lookups, searches, cart additions, checkouts and status changes ran since
+    // the store started, and how long they took
+    private static void viewStoreMetrics() {
+        println("\n=== STORE METRICS ===");
+        print(store.metricsTable());
+    }
+    
     // Gets a menu choice, returns -1 for invalid number, -2 for out of range
     private static int getMenuChoiceInput(int min, int max) {
-        String input = scanner.nextLine().trim();
+        String input = readLine().trim();
         try {
             int choice = Integer.parseInt(input);
             if (choice >= min && choice <= max) {
                 return choice;
             } else {
-                System.out.print("That's not a valid option. Please enter a number between " + min + " and " + max + ": ");
+                print("That's not a valid option. Please enter a number between " + min + " and " + max + ": ");
                 return -2; // Indicate out of range
             }
         } catch (NumberFormatException e) {
-            System.out.print("Please enter a number, not text. Try again: ");
+            print("Please enter a number, not text. Try again: ");
             return -1; // Indicate invalid format
         }
     }
     
     // Gets a general integer input, returns -1 for invalid number
     private static int getIntegerInput() {
-        String input = scanner.nextLine().trim();
+        String input = readLine().trim();
         try {
             return Integer.parseInt(input);
         } catch (NumberFormatException e) {
-            System.out.print("Please enter a valid number: ");
+            print("Please enter a valid number: ");
             return -1; // Indicate invalid format
         }
     }
     
     // Gets a quantity input, returns -1 for invalid number or out of range
     private static int getQuantityInput(int min, int max) {
-        String input = scanner.nextLine().trim();
+        String input = readLine().trim();
         try {
             int quantity = Integer.parseInt(input);
             if (quantity >= min && quantity <= max) {
                 return quantity;
             } else {
-                System.out.print("Quantity must be between " + min + " and " + max + ". Try again: ");
+                print("Quantity must be between " + min + " and " + max + ". Try again: ");
                 return -1; // Indicate out of range
             }
         } catch (NumberFormatException e) {
-            System.out.print("Please enter a number for quantity: ");
+            print("Please enter a number for quantity: ");
             return -1; // Indicate invalid format
         }
     }
     
-    // Helper to find product by ID
-    private static Product findProductByID(int productID) {
-        for (Product product : products) {
-            if (product.getProductID() == productID) {
-                return product;
+    // Console output is queued (see AsyncOutputSink); these keep the menu code reading like
+    // plain printing. -Decommerce.output.policy=drop throws away output the terminal can't
+    // keep up with instead of waiting for it.
+    private static void openOutput() {
+        AsyncOutputSink.OverflowPolicy policy = AsyncOutputSink.OverflowPolicy.BLOCK;
+        String configured = System.getProperty("ecommerce.output.policy");
+        String warning = null;
+        if (configured != null) {
+            try {
+                policy = AsyncOutputSink.OverflowPolicy.parse(configured);
+            } catch (IllegalArgumentException e) {
+                warning = "⚠️ " + e.getMessage() + "; using block.\n";
             }
         }
-        return null; // Not found
+        int capacity = Integer.getInteger("ecommerce.output.buffer", AsyncOutputSink.DEFAULT_CAPACITY);
+        if (capacity <= 0) {
+            warning = "⚠️ The output buffer must hold at least one message; using " + AsyncOutputSink.DEFAULT_CAPACITY + ".\n";
+            capacity = AsyncOutputSink.DEFAULT_CAPACITY;
+        }
+        output = new AsyncOutputSink(System.out, capacity, policy);
+        if (warning != null) {
+            output.write(warning);
+        }
+    }
+    
+    private static void print(Object text) {
+        output.write(String.valueOf(text));
+    }
+    
+    private static void println(Object text) {
+        output.write(text + "\n");
+    }
+    
+    private static void println() {
+        output.write("\n");
+    }
+    
+    private static void printf(String format, Object... values) {
+        output.write(String.format(format, values));
+    }
+    
+    // Shows everything still queued (the prompt in particular) before waiting for the user
+    private static String readLine() {
+        output.flush();
+        return scanner.nextLine();
+    }
+    
+    // Helper to find product by ID
+    private static Product findProductByID(int productID) {
+        return store.findProduct(productID); // null if not found
     }
     
     // Helper to find order by ID
     private static Order findOrderByID(int orderID) {
-        for (Order order : orders) {
-            if (order.getOrderID() == orderID) {
-                return order;
-            }
-        }
-        return null; // Not found
+        return store.findOrder(orderID); // null if not found
     }
     // TODO: Consider adding a way to search products by name
     // TODO: Maybe add a simple admin menu for managing stock
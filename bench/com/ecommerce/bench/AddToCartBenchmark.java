@@ -0,0 +1,70 @@
+package com.ecommerce.bench;
+
+import com.ecommerce.Customer;
+import com.ecommerce.Product;
+import com.ecommerce.ProductCatalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+// Customer.addToCart, filling a cart up to cartSize different products and then starting
+// again with an empty one, so the score is the average cost of one add into carts of that size.
+// Each thread fills its own customer's cart.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddToCartBenchmark {
+    private static final int CATALOG_SIZE = 100_000;
+
+    @Param({"1", "10", "100", "1000"})
+    public int cartSize;
+
+    private ProductCatalog catalog;
+
+    @State(Scope.Thread)
+    public static class Cart {
+        private Customer customer;
+        private Product[] products;
+        private int next;
+
+        @Setup
+        public void setup(AddToCartBenchmark benchmark, ThreadParams thread) {
+            int threadIndex = thread.getThreadIndex();
+            int cartSize = benchmark.cartSize;
+            customer = new DataGenerator(42).customer(1001 + threadIndex);
+            products = new Product[cartSize];
+            for (int i = 0; i < cartSize; i++) {
+                products[i] = benchmark.catalog.get(1 + (threadIndex * cartSize + i) % CATALOG_SIZE);
+            }
+        }
+    }
+
+    @Setup
+    public void setup() {
+        catalog = new DataGenerator(42).catalog(CATALOG_SIZE);
+    }
+
+    @Benchmark
+    public int addToCart(Cart cart) {
+        if (cart.next == cart.products.length) {
+            cart.customer.clearCart();
+            cart.next = 0;
+        }
+        cart.customer.addToCart(cart.products[cart.next++], 1);
+        return cart.customer.getCartSize();
+    }
+}
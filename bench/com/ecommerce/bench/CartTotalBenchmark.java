@@ -0,0 +1,72 @@
+package com.ecommerce.bench;
+
+import com.ecommerce.Customer;
+import com.ecommerce.Money;
+import com.ecommerce.Product;
+import com.ecommerce.ProductCatalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Customer.calculateTotal on a cart of cartSize products.
+// calculateTotal: prices don't change, so the running total is simply returned.
+// calculateTotalRepriced: every call first changes the price of one product in the cart (the
+// cost of setPrice is included), so the total has to be added up again.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartTotalBenchmark {
+    private static final int CATALOG_SIZE = 100_000;
+    private static final Money[] PRICES = {Money.ofCents(1999), Money.ofCents(2099)};
+
+    @Param({"1", "10", "100", "1000"})
+    public int cartSize;
+
+    private ProductCatalog catalog;
+
+    @State(Scope.Thread)
+    public static class Cart {
+        private Customer customer;
+        private Product repriced;
+        private int nextPrice;
+
+        @Setup
+        public void setup(CartTotalBenchmark benchmark, ThreadParams thread) {
+            DataGenerator generator = new DataGenerator(42);
+            customer = generator.customer(1001 + thread.getThreadIndex());
+            generator.fillCart(customer, benchmark.catalog, CATALOG_SIZE, benchmark.cartSize, new Random(thread.getThreadIndex()));
+            repriced = customer.getCartProduct(0);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        catalog = new DataGenerator(42).catalog(CATALOG_SIZE);
+    }
+
+    @Benchmark
+    public Money calculateTotal(Cart cart) {
+        return cart.customer.calculateTotal();
+    }
+
+    @Benchmark
+    public Money calculateTotalRepriced(Cart cart) {
+        cart.repriced.setPrice(PRICES[cart.nextPrice++ & 1]);
+        return cart.customer.calculateTotal();
+    }
+}
@@ -0,0 +1,97 @@
+package com.ecommerce.bench;
+
+import com.ecommerce.Customer;
+import com.ecommerce.Product;
+import com.ecommerce.ProductCatalog;
+import com.ecommerce.orders.CheckoutEngine;
+import com.ecommerce.orders.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// A whole checkout: fill a cart with cartSize products, then CheckoutEngine.checkout reserves
+// the stock and creates the order. All threads buy from the same hotProducts products, so
+// fewer hot products means more threads competing for the same stock counters.
+// checkout runs on one thread, checkoutContended on four and checkoutHeavilyContended on
+// sixteen, all against the same products.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckoutBenchmark {
+    private static final int PLENTY = 1_000_000_000;
+
+    @Param({"10", "10000"})
+    public int hotProducts;
+
+    @Param({"1", "5"})
+    public int cartSize;
+
+    private ProductCatalog catalog;
+    private CheckoutEngine engine;
+
+    @State(Scope.Thread)
+    public static class Shopper {
+        private final DataGenerator generator = new DataGenerator(42);
+        private Customer customer;
+        private Random random;
+
+        @Setup
+        public void setup(ThreadParams thread) {
+            customer = generator.customer(1001 + thread.getThreadIndex());
+            random = new Random(thread.getThreadIndex());
+        }
+    }
+
+    @Setup
+    public void setup() {
+        catalog = new DataGenerator(42).catalog(hotProducts);
+        engine = new CheckoutEngine(1);
+    }
+
+    // So no measured checkout ever fails for lack of stock
+    @Setup(Level.Iteration)
+    public void restock() {
+        for (Product product : catalog.products()) {
+            product.setStock(PLENTY);
+        }
+    }
+
+    @Benchmark
+    public Order checkout(Shopper shopper) {
+        return checkoutOnce(shopper);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Order checkoutContended(Shopper shopper) {
+        return checkoutOnce(shopper);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Order checkoutHeavilyContended(Shopper shopper) {
+        return checkoutOnce(shopper);
+    }
+
+    private Order checkoutOnce(Shopper shopper) {
+        shopper.generator.fillCart(shopper.customer, catalog, hotProducts, cartSize, shopper.random);
+        return engine.checkout(shopper.customer);
+    }
+}
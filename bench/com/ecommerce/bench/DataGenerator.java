@@ -0,0 +1,150 @@
+package com.ecommerce.bench;
+
+import com.ecommerce.Customer;
+import com.ecommerce.Money;
+import com.ecommerce.Product;
+import com.ecommerce.ProductCatalog;
+
+import java.util.Random;
+
+// Makes up realistic-looking products, customers, carts and search queries.
+// Everything is derived from a seed, so two runs with the same parameters measure
+// exactly the same data. Names and descriptions are built from small word lists and
+// shared between products, which keeps a ten-million-product catalog within a few
+// gigabytes of heap while still giving the search index plenty of distinct text.
+// The benchmarks build their data with it in @Setup methods, outside the measurement;
+// only CheckoutBenchmark fills a cart as part of each measured checkout.
+public final class DataGenerator {
+    private static final String[] ADJECTIVES = {
+        "Professional", "Student", "Premium", "Classic", "Deluxe", "Compact", "Large", "Small",
+        "Heavy", "Light", "Vintage", "Modern", "Natural", "Bright", "Soft", "Fine",
+        "Coarse", "Travel", "Studio", "Pocket", "Artist", "Beginner", "Master", "Eco",
+        "Metallic", "Neon", "Pastel", "Matte", "Glossy", "Waterproof", "Archival", "Recycled"
+    };
+    private static final String[] MATERIALS = {
+        "Acrylic", "Watercolor", "Oil", "Gouache", "Charcoal", "Graphite", "Pastel", "Ink",
+        "Clay", "Resin", "Wooden", "Bamboo", "Cotton", "Linen", "Paper", "Canvas",
+        "Silk", "Wool", "Leather", "Glass", "Ceramic", "Steel", "Brass", "Copper",
+        "Foam", "Felt", "Cork", "Chalk", "Wax", "Sable", "Nylon", "Gel"
+    };
+    private static final String[] NOUNS = {
+        "Paint Set", "Brush Set", "Easel", "Sketchbook", "Palette", "Marker Pack", "Pen Set", "Pencil Kit",
+        "Tool Kit", "Canvas Board", "Glue", "Tape", "Scissors", "Cutter", "Ruler", "Eraser",
+        "Sponge Set", "Knife Set", "Roller", "Stamp Kit", "Stencil Pack", "Frame", "Apron", "Organizer",
+        "Spray", "Varnish", "Primer", "Medium", "Sealant", "Yarn Bundle", "Bead Kit", "Sculpting Kit"
+    };
+    private static final String[] PHRASES = {
+        "ideal for beginners and professionals", "acid-free and archival quality", "quick-drying formula",
+        "non-toxic and safe for kids", "includes a carrying case", "rich, high-pigment colors",
+        "suitable for indoor and outdoor use", "ergonomic handles for long sessions", "easy to clean with water",
+        "great for paper, fabric and wood", "blendable and layerable", "lightfast and fade resistant",
+        "refillable and long lasting", "precision tips for fine detail", "adjustable height and angle",
+        "perfect for studio or classroom"
+    };
+
+    private final long seed;
+    private final String[] names = new String[ADJECTIVES.length * MATERIALS.length * NOUNS.length];
+    private final String[] descriptions = new String[PHRASES.length * PHRASES.length];
+
+    public DataGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    // The same productID always gets the same product (for a given seed)
+    public Product product(int productID) {
+        long h = mix(seed ^ productID);
+        long priceCents = 99 + Math.floorMod(h, 50_000); // $0.99 to about $500
+        int stock = 1 + Math.floorMod(h >>> 20, 500);
+        return new Product(productID, name(Math.floorMod(h >>> 8, names.length)),
+                Money.ofCents(priceCents), description(Math.floorMod(h >>> 40, descriptions.length)), stock);
+    }
+
+    // Products 1..size, in order
+    public ProductCatalog catalog(int size) {
+        ProductCatalog catalog = new ProductCatalog(size);
+        for (int id = 1; id <= size; id++) {
+            catalog.put(product(id));
+        }
+        return catalog;
+    }
+
+    public Customer customer(int customerID) {
+        return new Customer(customerID, "Shopper " + customerID, "shopper" + customerID + "@example.com");
+    }
+
+    // Puts 'cartSize' different products from 1..catalogSize into the customer's cart, one of each
+    public void fillCart(Customer customer, ProductCatalog catalog, int catalogSize, int cartSize, Random random) {
+        if (cartSize > catalogSize) {
+            throw new IllegalArgumentException("A cart of " + cartSize + " different products needs a catalog at least that big.");
+        }
+        int start = 1 + random.nextInt(catalogSize);
+        for (int i = 0; i < cartSize; i++) {
+            int id = 1 + (start - 1 + i) % catalogSize;
+            customer.addToCart(catalog.get(id), 1);
+        }
+    }
+
+    // Queries like shoppers type them: whole words, word starts, and pieces of words
+    public String[] queries(int count, Random random) {
+        String[] queries = new String[count];
+        for (int i = 0; i < count; i++) {
+            String word;
+            switch (random.nextInt(3)) {
+                case 0:
+                    word = MATERIALS[random.nextInt(MATERIALS.length)];
+                    break;
+                case 1:
+                    word = NOUNS[random.nextInt(NOUNS.length)].split(" ")[0];
+                    break;
+                default:
+                    word = ADJECTIVES[random.nextInt(ADJECTIVES.length)];
+                    break;
+            }
+            switch (random.nextInt(4)) {
+                case 0:
+                    word = word.substring(0, Math.min(word.length(), 3)); // prefix
+                    break;
+                case 1:
+                    word = word.substring(Math.min(1, word.length() - 1)); // piece of a word
+                    break;
+                case 2:
+                    word = word + " " + MATERIALS[random.nextInt(MATERIALS.length)]; // two words
+                    break;
+                default:
+                    break;
+            }
+            queries[i] = word.toLowerCase();
+        }
+        return queries;
+    }
+
+    private String name(int index) {
+        String name = names[index];
+        if (name == null) {
+            int adjective = index % ADJECTIVES.length;
+            int material = (index / ADJECTIVES.length) % MATERIALS.length;
+            int noun = index / (ADJECTIVES.length * MATERIALS.length);
+            name = ADJECTIVES[adjective] + " " + MATERIALS[material] + " " + NOUNS[noun];
+            names[index] = name;
+        }
+        return name;
+    }
+
+    private String description(int index) {
+        String description = descriptions[index];
+        if (description == null) {
+            String first = PHRASES[index % PHRASES.length];
+            String second = PHRASES[index / PHRASES.length];
+            description = Character.toUpperCase(first.charAt(0)) + first.substring(1) + ", " + second;
+            descriptions[index] = description;
+        }
+        return description;
+    }
+
+    // SplitMix64 finalizer: turns neighbouring IDs into unrelated-looking numbers
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,57 @@
+package com.ecommerce.bench;
+
+import com.ecommerce.Product;
+import com.ecommerce.ProductCatalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Looking a product up by ID, as ECommerceMain.findProductByID does (ProductCatalog.get).
+// Nine lookups in ten hit; the rest ask for IDs past the end of the catalog.
+// The ten-million-product catalog needs the larger heap asked for below.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class FindProductBenchmark {
+    @Param({"1000", "100000", "10000000"})
+    public int catalogSize;
+
+    private ProductCatalog catalog;
+
+    // Each thread draws its own IDs
+    @State(Scope.Thread)
+    public static class Lookups {
+        private SplittableRandom random;
+
+        @Setup
+        public void setup(ThreadParams thread) {
+            random = new SplittableRandom(thread.getThreadIndex());
+        }
+    }
+
+    @Setup
+    public void setup() {
+        catalog = new DataGenerator(42).catalog(catalogSize);
+    }
+
+    @Benchmark
+    public Product findProduct(Lookups lookups) {
+        int range = catalogSize + catalogSize / 9 + 1;
+        return catalog.get(1 + lookups.random.nextInt(range));
+    }
+}
@@ -0,0 +1,60 @@
+package com.ecommerce.bench;
+
+import com.ecommerce.Customer;
+import com.ecommerce.ProductCatalog;
+import com.ecommerce.orders.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Building an Order from a cart of cartSize products (new Order(id, customer)), which copies
+// the cart's lines and adds up the total. The cart is left as it is, so only construction is measured.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderCreateBenchmark {
+    private static final int CATALOG_SIZE = 100_000;
+
+    @Param({"1", "10", "100"})
+    public int cartSize;
+
+    private ProductCatalog catalog;
+
+    @State(Scope.Thread)
+    public static class Cart {
+        private Customer customer;
+        private int nextOrderID = 1;
+
+        @Setup
+        public void setup(OrderCreateBenchmark benchmark, ThreadParams thread) {
+            DataGenerator generator = new DataGenerator(42);
+            customer = generator.customer(1001 + thread.getThreadIndex());
+            generator.fillCart(customer, benchmark.catalog, CATALOG_SIZE, benchmark.cartSize, new Random(thread.getThreadIndex()));
+        }
+    }
+
+    @Setup
+    public void setup() {
+        catalog = new DataGenerator(42).catalog(CATALOG_SIZE);
+    }
+
+    @Benchmark
+    public Order newOrder(Cart cart) {
+        return new Order(cart.nextOrderID++, cart.customer);
+    }
+}
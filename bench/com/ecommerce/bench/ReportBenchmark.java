@@ -0,0 +1,109 @@
+package com.ecommerce.bench;
+
+import com.ecommerce.analytics.CustomerValue;
+import com.ecommerce.analytics.OrderReports;
+import com.ecommerce.analytics.OrderSnapshot;
+import com.ecommerce.orders.OrderStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Whole-history reports over an OrderSnapshot (OrderReports), on a fork/join pool of
+// 'parallelism' threads; one operation is one full scan. Orders average four lines, so
+// lineItems=100000000 is 25 million orders and needs about 3 GB of heap
+// (-jvmArgsAppend -Xmx6g). Divide lineItems by the time per operation for lines per second.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportBenchmark {
+    private static final int CUSTOMERS = 1_000_000;
+    private static final int PRODUCTS = 100_000;
+    private static final int DAYS = 3 * 365;
+
+    @Param({"1000000", "10000000"})
+    public int lineItems;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private ForkJoinPool pool;
+    private OrderReports reports;
+    private OrderSnapshot snapshot;
+
+    @Setup
+    public void setup() {
+        pool = new ForkJoinPool(parallelism);
+        reports = new OrderReports(pool);
+        snapshot = generate(lineItems, new Random(42));
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private static OrderSnapshot generate(int lineItems, Random random) {
+        OrderSnapshot.Builder builder = new OrderSnapshot.Builder(lineItems / 4 + 1, lineItems);
+        OrderStatus[] statuses = OrderStatus.values();
+        LocalDate firstDay = LocalDate.of(2022, 1, 1);
+        int orderID = 1001;
+        int lines = 0;
+        while (lines < lineItems) {
+            int orderLines = Math.min(1 + random.nextInt(7), lineItems - lines);
+            long[] prices = new long[orderLines];
+            int[] quantities = new int[orderLines];
+            long total = 0;
+            for (int i = 0; i < orderLines; i++) {
+                prices[i] = 100 + random.nextInt(50_000);
+                quantities[i] = 1 + random.nextInt(3);
+                total += prices[i] * quantities[i];
+            }
+            builder.addOrder(orderID++, 1001 + random.nextInt(CUSTOMERS), firstDay.plusDays(random.nextInt(DAYS)),
+                    statuses[random.nextInt(statuses.length)], total);
+            for (int i = 0; i < orderLines; i++) {
+                builder.addLine(1 + random.nextInt(PRODUCTS), prices[i], quantities[i]);
+            }
+            lines += orderLines;
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public SortedMap<LocalDate, Long> revenueByDay() {
+        return reports.revenueByDay(snapshot);
+    }
+
+    @Benchmark
+    public long[] basketSizes() {
+        return reports.basketSizes(snapshot, 20);
+    }
+
+    @Benchmark
+    public List<CustomerValue> topCustomers() {
+        return reports.topCustomers(snapshot, 10);
+    }
+
+    @Benchmark
+    public long lineItemRevenue() {
+        return reports.lineItemRevenueCents(snapshot);
+    }
+}
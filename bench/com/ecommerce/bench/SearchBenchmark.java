@@ -0,0 +1,64 @@
+package com.ecommerce.bench;
+
+import com.ecommerce.Product;
+import com.ecommerce.search.ProductSearchIndex;
+import com.ecommerce.service.StoreService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Full-text search, as the console's "Search Products" option does (ProductSearchIndex.search
+// with the usual limit of 20 results). Queries mix whole words, word starts and word pieces.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({"1000", "100000", "1000000"})
+    public int catalogSize;
+
+    private ProductSearchIndex index;
+    private String[] queries;
+
+    // Each thread works through the queries from its own starting point
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        @Setup
+        public void setup(ThreadParams thread) {
+            next = thread.getThreadIndex() * 97;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        DataGenerator generator = new DataGenerator(42);
+        index = new ProductSearchIndex();
+        generator.catalog(catalogSize).products().forEach(index::index);
+        queries = generator.queries(QUERY_COUNT, new Random(7));
+    }
+
+    @Benchmark
+    public List<Product> searchProducts(Cursor cursor) {
+        String query = queries[cursor.next++ & (QUERY_COUNT - 1)];
+        return index.search(query, StoreService.DEFAULT_SEARCH_LIMIT);
+    }
+}
@@ -1,37 +1,58 @@
 package com.ecommerce;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.ecommerce.output.OutputSink;
+import com.ecommerce.util.IntIntHashMap;
+
+import java.util.Arrays;
+import java.util.Locale;
 
 public class Customer {
+    private static final int NOT_IN_CART = -1;
+    private static final int INITIAL_CART_CAPACITY = 4;
+    
     private int customerID;
     private String name;
     private String email;
-    private List<Product> shoppingCart;
-    private List<Integer> quantities; // Keeps track of how many of each product
+    
+    // The shopping cart: line i holds cartProducts[i] x cartQuantities[i].
+    // cartSlots maps a productID to its line so duplicates are found in O(1).
+    // The arrays are only allocated once something is added, so an empty cart costs nothing.
+    private IntIntHashMap cartSlots;
+    private Product[] cartProducts;
+    private int[] cartQuantities;
+    private int cartSize;
+    private long cartTotalCents; // kept up to date on every change
+    private long cartPriceVersion = -1; // Product.priceVersion() when cartTotalCents was last fully added up
     
     public Customer() {
         this.customerID = 0;
         this.name = "";
         this.email = "";
-        this.shoppingCart = new ArrayList<>();
-        this.quantities = new ArrayList<>();
     }
     
     public Customer(int customerID, String name, String email) {
         setCustomerID(customerID);
         setName(name);
         setEmail(email);
-        this.shoppingCart = new ArrayList<>();
-        this.quantities = new ArrayList<>();
     }
     
     // Getters
     public int getCustomerID() { return customerID; }
     public String getName() { return name; }
     public String getEmail() { return email; }
-    public List<Product> getShoppingCart() { return shoppingCart; }
-    public List<Integer> getQuantities() { return quantities; }
+    
+    // Cart contents, by line number (0 to getCartSize() - 1, same order as displayCart)
+    public int getCartSize() { return cartSize; }
+    
+    public Product getCartProduct(int index) {
+        checkCartIndex(index);
+        return cartProducts[index];
+    }
+    
+    public int getCartQuantity(int index) {
+        checkCartIndex(index);
+        return cartQuantities[index];
+    }
     
     // Setters with basic validation
     public void setCustomerID(int customerID) {
@@ -55,7 +76,7 @@ public class Customer {
         if (email == null || email.trim().isEmpty()) {
             throw new IllegalArgumentException("Email address can't be empty.");
         }
-        email = email.trim().toLowerCase();
+        email = normalizeEmail(email);
         // Email validation
         if (!email.contains("@")) {
             throw new IllegalArgumentException("Please enter a valid email address (needs an '@' symbol).");
@@ -63,6 +84,11 @@ public class Customer {
         this.email = email;
     }
     
+    // The form setEmail stores an address in, so addresses can be compared (and looked up)
+    public static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+    
     // Adds a product to the cart, or updates quantity if already there
     public void addToCart(Product product, int quantity) {
         if (product == null) {
@@ -73,89 +99,143 @@ public class Customer {
         }
         
         // Check if product is already in cart
-        for (int i = 0; i < shoppingCart.size(); i++) {
-            if (shoppingCart.get(i).getProductID() == product.getProductID()) {
-                int currentQuantityInCart = quantities.get(i);
-                int newTotalQuantity = currentQuantityInCart + quantity;
-                
-                if (!product.hasEnoughStock(newTotalQuantity)) {
-                    throw new IllegalArgumentException("Adding " + quantity + " more would exceed available stock for " + product.getName() + ".");
-                }
-                quantities.set(i, newTotalQuantity);
-                return; // Product quantity updated, so we're done
+        int line = cartSlots == null ? NOT_IN_CART : cartSlots.get(product.getProductID());
+        if (line != NOT_IN_CART) {
+            int currentQuantityInCart = cartQuantities[line];
+            int newTotalQuantity = currentQuantityInCart + quantity;
+            
+            if (!product.hasEnoughStock(newTotalQuantity)) {
+                throw new IllegalArgumentException("Adding " + quantity + " more would exceed available stock for " + product.getName() + ".");
             }
+            cartQuantities[line] = newTotalQuantity;
+            cartTotalCents = Money.addCents(cartTotalCents, Money.multiplyCents(product.getPriceCents(), quantity));
+            return; // Product quantity updated, so we're done
         }
         
         // If product not found in cart, add it as a new item
         if (!product.hasEnoughStock(quantity)) {
             throw new IllegalArgumentException("Not enough stock for " + product.getName() + ". Only " + product.getStock() + " available.");
         }
-        shoppingCart.add(product);
-        quantities.add(quantity);
+        ensureCartCapacity();
+        cartProducts[cartSize] = product;
+        cartQuantities[cartSize] = quantity;
+        cartSlots.put(product.getProductID(), cartSize);
+        cartSize++;
+        cartTotalCents = Money.addCents(cartTotalCents, Money.multiplyCents(product.getPriceCents(), quantity));
     }
     
     // Removes an item from the cart by its index (from display)
     public void removeFromCart(int productIndex) {
-        if (productIndex < 0 || productIndex >= shoppingCart.size()) {
+        if (productIndex < 0 || productIndex >= cartSize) {
             throw new IllegalArgumentException("Invalid item number. Please choose from the list.");
         }
-        shoppingCart.remove(productIndex);
-        quantities.remove(productIndex);
+        Product removed = cartProducts[productIndex];
+        cartTotalCents -= Money.multiplyCents(removed.getPriceCents(), cartQuantities[productIndex]);
+        cartSlots.remove(removed.getProductID());
+        
+        // Shift the later lines up so the cart keeps its display order
+        int moved = cartSize - productIndex - 1;
+        System.arraycopy(cartProducts, productIndex + 1, cartProducts, productIndex, moved);
+        System.arraycopy(cartQuantities, productIndex + 1, cartQuantities, productIndex, moved);
+        cartSize--;
+        cartProducts[cartSize] = null;
+        for (int i = productIndex; i < cartSize; i++) {
+            cartSlots.put(cartProducts[i].getProductID(), i);
+        }
+        if (cartSize == 0) {
+            clearCart(); // nothing left, so give the cart's memory back
+        }
     }
     
     // Updates the quantity of an item already in the cart
     public void updateQuantity(int productIndex, int newQuantity) {
-        if (productIndex < 0 || productIndex >= shoppingCart.size()) {
+        if (productIndex < 0 || productIndex >= cartSize) {
             throw new IllegalArgumentException("Invalid item number. Please choose from the list.");
         }
         if (newQuantity <= 0) {
             throw new IllegalArgumentException("Quantity must be at least 1. To remove, use the 'remove item' option.");
         }
         
-        Product product = shoppingCart.get(productIndex);
+        Product product = cartProducts[productIndex];
         if (!product.hasEnoughStock(newQuantity)) {
             throw new IllegalArgumentException("Not enough stock for " + product.getName() + ". Only " + product.getStock() + " available.");
         }
         
-        quantities.set(productIndex, newQuantity);
+        cartTotalCents = Money.addCents(cartTotalCents, Money.multiplyCents(product.getPriceCents(), newQuantity - cartQuantities[productIndex]));
+        cartQuantities[productIndex] = newQuantity;
+    }
+    
+    // Total cost of all items in the cart.
+    // The total is kept up to date as items change, so this is O(1). It's only added up
+    // from scratch again if some product's price has changed since the last time.
+    public Money calculateTotal() {
+        return Money.ofCents(calculateTotalCents());
     }
     
-    // Calculates the total cost of all items in the cart
-    public double calculateTotal() {
-        double total = 0.0;
-        for (int i = 0; i < shoppingCart.size(); i++) {
-            total += shoppingCart.get(i).getPrice() * quantities.get(i);
+    // Same as calculateTotal, in raw cents (no allocation)
+    public long calculateTotalCents() {
+        long priceVersion = Product.priceVersion();
+        if (priceVersion != cartPriceVersion) {
+            long total = 0;
+            for (int i = 0; i < cartSize; i++) {
+                total = Money.addCents(total, Money.multiplyCents(cartProducts[i].getPriceCents(), cartQuantities[i]));
+            }
+            cartTotalCents = total;
+            cartPriceVersion = priceVersion;
         }
-        return total;
+        return cartTotalCents;
     }
     
     // Checks if the cart is empty
     public boolean isCartEmpty() {
-        return shoppingCart.isEmpty();
+        return cartSize == 0;
     }
     
-    // Clears all items from the cart
+    // Clears all items from the cart and gives its memory back
     public void clearCart() {
-        shoppingCart.clear();
-        quantities.clear();
+        cartSlots = null;
+        cartProducts = null;
+        cartQuantities = null;
+        cartSize = 0;
+        cartTotalCents = 0;
+    }
+    
+    private void ensureCartCapacity() {
+        if (cartProducts == null) {
+            cartSlots = new IntIntHashMap(INITIAL_CART_CAPACITY, NOT_IN_CART);
+            cartProducts = new Product[INITIAL_CART_CAPACITY];
+            cartQuantities = new int[INITIAL_CART_CAPACITY];
+        } else if (cartSize == cartProducts.length) {
+            cartProducts = Arrays.copyOf(cartProducts, cartSize << 1);
+            cartQuantities = Arrays.copyOf(cartQuantities, cartSize << 1);
+        }
+    }
+    
+    private void checkCartIndex(int index) {
+        if (index < 0 || index >= cartSize) {
+            throw new IllegalArgumentException("Invalid item number. Please choose from the list.");
+        }
     }
     
-    // Displays the current contents of the shopping cart
-    public void displayCart() {
+    // Shows the current contents of the shopping cart, all in one write
+    public void displayCart(OutputSink out) {
         if (isCartEmpty()) {
-            System.out.println("Your shopping cart is empty.");
+            out.write("Your shopping cart is empty.\n");
             return;
         }
         
-        System.out.println("\n=== YOUR SHOPPING CART ===");
-        for (int i = 0; i < shoppingCart.size(); i++) {
-            Product product = shoppingCart.get(i);
-            int qty = quantities.get(i);
-            double subtotal = product.getPrice() * qty;
-            System.out.printf("%d. %s x%d = $%.2f\n", (i + 1), product.getName(), qty, subtotal);
-        }
-        System.out.printf("\nTotal: $%.2f\n", calculateTotal());
-        System.out.println("==========================");
+        StringBuilder text = new StringBuilder(64 + cartSize * 48);
+        text.append("\n=== YOUR SHOPPING CART ===\n");
+        for (int i = 0; i < cartSize; i++) {
+            Product product = cartProducts[i];
+            int qty = cartQuantities[i];
+            long subtotal = Money.multiplyCents(product.getPriceCents(), qty);
+            text.append(i + 1).append(". ").append(product.getName()).append(" x").append(qty)
+                    .append(" = $").append(Money.format(subtotal)).append('\n');
+        }
+        text.append("\nTotal: $").append(Money.format(calculateTotalCents())).append('\n');
+        text.append("==========================\n");
+        out.write(text.toString());
     }
     
     @Override
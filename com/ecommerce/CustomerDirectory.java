@@ -0,0 +1,100 @@
+package com.ecommerce;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Every registered customer, found by ID or by email address in O(1).
+// Two ConcurrentHashMaps index the same customers: one by customerID, one by the email
+// address as Customer.setEmail normalizes it (trimmed, lowercase), so "Ada@Example.com "
+// and "ada@example.com" are the same account. IDs come from an AtomicInteger, so sign-ups
+// on many threads at once never wait for each other or get the same ID, and an email
+// address is claimed with putIfAbsent, so of two sign-ups racing for one address exactly
+// one wins. Customers are only removed when their registration couldn't be saved, and
+// their email addresses don't change once they're registered here. Safe to use from many
+// threads at once.
+public class CustomerDirectory {
+    private final ConcurrentHashMap<Integer, Customer> byID = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Customer> byEmail = new ConcurrentHashMap<>();
+    private final AtomicInteger nextCustomerID;
+
+    public CustomerDirectory(int firstCustomerID) {
+        if (firstCustomerID <= 0) {
+            throw new IllegalArgumentException("Customer IDs must start at a positive number.");
+        }
+        this.nextCustomerID = new AtomicInteger(firstCustomerID);
+    }
+
+    public int size() {
+        return byID.size();
+    }
+
+    // Null if there is no such customer
+    public Customer get(int customerID) {
+        return byID.get(customerID);
+    }
+
+    // Null if nobody has registered with this address (in any capitalization)
+    public Customer findByEmail(String email) {
+        if (email == null || email.trim().isEmpty()) {
+            return null;
+        }
+        return byEmail.get(Customer.normalizeEmail(email));
+    }
+
+    // Creates an account with the next free ID. Throws IllegalArgumentException if the
+    // name or email is invalid, or if the email address is already registered.
+    public Customer register(String name, String email) {
+        Customer customer = new Customer();
+        customer.setName(name); // validation happens in Customer, before an ID is used up
+        customer.setEmail(email);
+        if (byEmail.containsKey(customer.getEmail())) {
+            throw duplicateEmail(customer.getEmail());
+        }
+        customer.setCustomerID(nextCustomerID.getAndIncrement());
+        // Claim the address before the ID is visible, so nobody can find a half-registered
+        // customer. Losing a race here only leaves a gap in the IDs.
+        if (byEmail.putIfAbsent(customer.getEmail(), customer) != null) {
+            throw duplicateEmail(customer.getEmail());
+        }
+        byID.put(customer.getCustomerID(), customer);
+        return customer;
+    }
+
+    // Takes back a registration, e.g. one that couldn't be saved, freeing its email address.
+    // The ID isn't reused.
+    public void unregister(Customer customer) {
+        if (customer == null) {
+            throw new IllegalArgumentException("Customer can't be null.");
+        }
+        byID.remove(customer.getCustomerID(), customer);
+        byEmail.remove(customer.getEmail(), customer);
+    }
+
+    // Puts back a customer saved earlier (e.g. while replaying the journal), keeping its ID.
+    // Data saved before addresses had to be unique may repeat one; the first customer
+    // registered with it keeps it for logins.
+    public void restore(Customer customer) {
+        if (customer == null || customer.getCustomerID() <= 0) {
+            throw new IllegalArgumentException("Only customers with an ID can be restored.");
+        }
+        byID.put(customer.getCustomerID(), customer);
+        byEmail.merge(customer.getEmail(), customer,
+                (kept, other) -> kept.getCustomerID() <= other.getCustomerID() ? kept : other);
+        nextCustomerID.accumulateAndGet(customer.getCustomerID() + 1, Math::max);
+    }
+
+    // Every customer, by ID. This copies and sorts the whole directory, so it's for small
+    // stores and tools; everything else should look customers up directly.
+    public List<Customer> all() {
+        List<Customer> customers = new ArrayList<>(byID.values());
+        customers.sort(Comparator.comparingInt(Customer::getCustomerID));
+        return customers;
+    }
+
+    private static IllegalArgumentException duplicateEmail(String email) {
+        return new IllegalArgumentException("An account with the email address " + email + " already exists. Please log in instead.");
+    }
+}
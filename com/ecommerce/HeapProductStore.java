@@ -0,0 +1,169 @@
+package com.ecommerce;
+
+import com.ecommerce.util.IntIntHashMap;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+
+// Keeps Product objects on the heap.
+// Products sit in a dense array (in the order they were added, so browsing looks
+// the same as before) and an int-keyed open-addressing map points each productID
+// at its slot. Lookups, inserts and removals are O(1) and nothing is boxed.
+//
+// Reads never lock: they read optimistically and only take the read lock if a write
+// happened meanwhile. Adding and removing products take the write lock.
+class HeapProductStore implements ProductStore {
+    private static final int NOT_FOUND = -1;
+
+    private final StampedLock lock = new StampedLock();
+    private final IntIntHashMap slotsByID;
+    private Product[] products;
+    private volatile int size;
+
+    HeapProductStore(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected catalog size can't be negative.");
+        }
+        this.slotsByID = new IntIntHashMap(expectedSize, NOT_FOUND);
+        this.products = new Product[Math.max(expectedSize, 16)];
+        this.size = 0;
+    }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public Product get(int productID) {
+        if (productID <= 0) {
+            return null; // IDs are always positive, so this can't be in the catalog
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Product product = find(productID);
+                if (lock.validate(stamp)) {
+                    return product;
+                }
+            } catch (RuntimeException e) {
+                // read the map halfway through a write (e.g. mid-resize); read again under the lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return find(productID);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private Product find(int productID) {
+        int slot = slotsByID.get(productID);
+        return slot == NOT_FOUND ? null : products[slot];
+    }
+
+    @Override
+    public Product put(Product product) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotsByID.get(product.getProductID());
+            if (slot != NOT_FOUND) {
+                Product previous = products[slot];
+                products[slot] = product;
+                return previous;
+            }
+            if (size == products.length) {
+                products = Arrays.copyOf(products, size << 1);
+            }
+            products[size] = product;
+            slotsByID.put(product.getProductID(), size);
+            size++;
+            return null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // The last product moves into the freed slot so the array stays dense
+    @Override
+    public Product remove(int productID) {
+        if (productID <= 0) {
+            return null;
+        }
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotsByID.remove(productID);
+            if (slot == NOT_FOUND) {
+                return null;
+            }
+            Product removed = products[slot];
+            int last = size - 1;
+            if (slot != last) {
+                Product moved = products[last];
+                products[slot] = moved;
+                slotsByID.put(moved.getProductID(), slot);
+            }
+            products[last] = null;
+            size = last;
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Grows the storage a single time up front for bulk loads
+    @Override
+    public void ensureCapacity(int additional) {
+        long stamp = lock.writeLock();
+        try {
+            int needed = size + additional;
+            if (needed > products.length) {
+                products = Arrays.copyOf(products, Math.max(needed, products.length << 1));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // The product in slot 'index', or null past the end
+    private Product at(int index) {
+        long stamp = lock.tryOptimisticRead();
+        Product[] array = products;
+        Product product = index < size && index < array.length ? array[index] : null;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                product = index < size ? products[index] : null;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return product;
+    }
+
+    // Walks the slots in order. Weakly consistent: products added or removed during the
+    // walk may or may not be seen (a removal moves the last product into the freed slot).
+    @Override
+    public Iterator<Product> iterator() {
+        return new Iterator<Product>() {
+            private int index = 0;
+            private Product next = at(0);
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Product next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Product product = next;
+                next = at(++index);
+                return product;
+            }
+        };
+    }
+}
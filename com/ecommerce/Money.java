@@ -0,0 +1,130 @@
+package com.ecommerce;
+
+// An exact amount of money, stored as a whole number of cents.
+// Adding and multiplying cents with long arithmetic never loses a fraction of a cent
+// the way double does, and it's just as cheap. Money objects are immutable; the
+// static addCents/multiplyCents/format helpers work on raw cents and allocate nothing,
+// for code that adds up many amounts in a loop.
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+    
+    private static final int CENTS_PER_UNIT = 100;
+    
+    private final long cents;
+    
+    private Money(long cents) {
+        this.cents = cents;
+    }
+    
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+    
+    // Reads an amount like "85.50", "150", "5.9" or "$12.75" (at most 2 decimal places)
+    public static Money parse(String amount) {
+        if (amount == null || amount.trim().isEmpty()) {
+            throw new IllegalArgumentException("Amount can't be empty.");
+        }
+        String text = amount.trim();
+        int i = 0;
+        boolean negative = false;
+        if (text.charAt(i) == '-') {
+            negative = true;
+            i++;
+        }
+        if (i < text.length() && text.charAt(i) == '$') {
+            i++;
+        }
+        
+        long units = 0;
+        int digits = 0;
+        while (i < text.length() && Character.isDigit(text.charAt(i))) {
+            units = Math.addExact(Math.multiplyExact(units, 10), text.charAt(i) - '0');
+            digits++;
+            i++;
+        }
+        
+        long fraction = 0;
+        int decimals = 0;
+        if (i < text.length() && text.charAt(i) == '.') {
+            i++;
+            while (i < text.length() && Character.isDigit(text.charAt(i))) {
+                if (++decimals > 2) {
+                    throw new IllegalArgumentException("Amount can't have more than 2 decimal places: " + amount);
+                }
+                fraction = fraction * 10 + (text.charAt(i) - '0');
+                i++;
+            }
+        }
+        if (i != text.length() || digits + decimals == 0) {
+            throw new IllegalArgumentException("Not a valid amount: " + amount);
+        }
+        if (decimals == 1) {
+            fraction *= 10; // "5.9" means 90 cents
+        }
+        
+        long total = Math.addExact(Math.multiplyExact(units, CENTS_PER_UNIT), fraction);
+        return ofCents(negative ? -total : total);
+    }
+    
+    public long getCents() { return cents; }
+    
+    public boolean isNegative() { return cents < 0; }
+    public boolean isZero() { return cents == 0; }
+    
+    public Money plus(Money other) {
+        return ofCents(addCents(cents, other.cents));
+    }
+    
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+    
+    public Money times(int quantity) {
+        return ofCents(multiplyCents(cents, quantity));
+    }
+    
+    // Raw-cents arithmetic. Throws ArithmeticException instead of silently overflowing.
+    public static long addCents(long a, long b) {
+        return Math.addExact(a, b);
+    }
+    
+    public static long multiplyCents(long cents, int quantity) {
+        return Math.multiplyExact(cents, (long) quantity);
+    }
+    
+    // Formats cents as "85.50" (no currency symbol, so callers can put "$" in front)
+    public static String format(long cents) {
+        long whole = cents / CENTS_PER_UNIT;
+        int fraction = (int) Math.abs(cents % CENTS_PER_UNIT);
+        StringBuilder text = new StringBuilder(24);
+        if (cents < 0 && whole == 0) {
+            text.append('-');
+        }
+        text.append(whole).append('.');
+        if (fraction < 10) {
+            text.append('0');
+        }
+        return text.append(fraction).toString();
+    }
+    
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Money && ((Money) other).cents == cents;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+    
+    @Override
+    public String toString() {
+        return format(cents);
+    }
+}
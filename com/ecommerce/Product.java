@@ -1,23 +1,48 @@
 package com.ecommerce;
 
+import com.ecommerce.output.OutputSink;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A product in the catalog.
+// Subclasses may keep the product's data somewhere other than these fields (see
+// com.ecommerce.store.MappedProduct); they override the getters, the setters and
+// compareAndSetStock, and reuse the validate* helpers so the rules stay the same.
 public class Product {
+    // Lets many checkouts change stock at once with compare-and-set instead of locks
+    private static final VarHandle STOCK;
+    static {
+        try {
+            STOCK = MethodHandles.lookup().findVarHandle(Product.class, "stock", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
+    // Goes up whenever any product's price changes, so carts know when their running total is stale
+    private static final AtomicLong PRICE_VERSION = new AtomicLong();
+    
     private int productID;
-    private String name;
-    private double price;
-    private String description;
-    private int stock;
+    // Volatile so an import updating a product in place is seen at once by every reader
+    private volatile String name;
+    private volatile Money price;
+    private volatile String description;
+    private volatile int stock;
+    private volatile ProductListener listener; // set by the catalog that holds this product
     
     // Constructor to create a new product
     public Product() {
         this.productID = 0;
         this.name = "";
-        this.price = 0.0;
+        this.price = Money.ZERO;
         this.description = "";
         this.stock = 0;
     }
     
     // Constructor with all product details
-    public Product(int productID, String name, double price, String description, int stock) {
+    public Product(int productID, String name, Money price, String description, int stock) {
         setProductID(productID);
         setName(name);
         setPrice(price);
@@ -28,7 +53,8 @@ public class Product {
     // Getters
     public int getProductID() { return productID; }
     public String getName() { return name; }
-    public double getPrice() { return price; }
+    public Money getPrice() { return price; }
+    public long getPriceCents() { return price.getCents(); }
     public String getDescription() { return description; }
     public int getStock() { return stock; }
     
@@ -41,47 +67,133 @@ public class Product {
     }
     
     public void setName(String name) {
+        this.name = validateName(name);
+        notifyChanged(ProductChange.NAME);
+    }
+    
+    public void setPrice(Money price) {
+        this.price = validatePrice(price);
+        notifyChanged(ProductChange.PRICE);
+    }
+    
+    public void setDescription(String description) {
+        this.description = validateDescription(description);
+        notifyChanged(ProductChange.DESCRIPTION);
+    }
+    
+    public void setStock(int stock) {
+        this.stock = validateStock(stock);
+        notifyChanged(ProductChange.STOCK);
+    }
+    
+    // Validation rules, shared with subclasses. Each returns the cleaned-up value.
+    protected static String validateName(String name) {
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Product name can't be empty.");
         }
         if (name.trim().length() > 100) { 
             throw new IllegalArgumentException("Product name is too long.");
         }
-        this.name = name.trim();
+        return name.trim();
     }
     
-    public void setPrice(double price) {
-        if (price < 0) {
+    protected static Money validatePrice(Money price) {
+        if (price == null) {
+            throw new IllegalArgumentException("Price can't be empty.");
+        }
+        if (price.isNegative()) {
             throw new IllegalArgumentException("Price can't be negative.");
         }
-        this.price = price;
+        return price;
     }
     
-    public void setDescription(String description) {
+    protected static String validateDescription(String description) {
         if (description == null) {
-            this.description = "";
+            return "";
         } else if (description.length() > 250) {
             throw new IllegalArgumentException("Description is too long.");
         } else {
-            this.description = description.trim();
+            return description.trim();
         }
     }
     
-    public void setStock(int stock) {
+    protected static int validateStock(int stock) {
         if (stock < 0) {
             throw new IllegalArgumentException("Stock quantity can't be negative.");
         }
-        this.stock = stock;
+        return stock;
+    }
+    
+    // Atomically changes stock from 'expected' to 'updated'; false if someone else changed it first
+    protected boolean compareAndSetStock(int expected, int updated) {
+        return STOCK.weakCompareAndSet(this, expected, updated);
+    }
+    
+    static long priceVersion() {
+        return PRICE_VERSION.get();
+    }
+    
+    // Only the catalog attaches itself here, so it can keep its indexes up to date
+    void setListener(ProductListener listener) {
+        this.listener = listener;
+    }
+    
+    boolean hasListener(ProductListener listener) {
+        return this.listener == listener;
+    }
+    
+    // Subclasses call this after they change a field, just like the setters here do
+    protected void notifyChanged(ProductChange change) {
+        if (change == ProductChange.PRICE) {
+            PRICE_VERSION.incrementAndGet();
+        }
+        ProductListener current = listener;
+        if (current != null) {
+            current.productChanged(this, change);
+        }
     }
     
     // Check if product is in stock
     public boolean isAvailable() {
-        return stock > 0;
+        return getStock() > 0;
     }
     
     // Check if there's enough stock for a requested quantity
     public boolean hasEnoughStock(int requestedQuantity) {
-        return stock >= requestedQuantity;
+        return getStock() >= requestedQuantity;
+    }
+    
+    // Takes 'quantity' units out of stock if there are enough, all in one atomic step.
+    // Never blocks and never lets stock go negative, even with many checkouts at once.
+    // Returns false (and changes nothing) if there isn't enough stock.
+    public boolean tryReserve(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Can't reserve zero or less.");
+        }
+        int current;
+        do {
+            current = getStock();
+            if (current < quantity) {
+                return false;
+            }
+        } while (!compareAndSetStock(current, current - quantity));
+        notifyChanged(ProductChange.STOCK);
+        return true;
+    }
+    
+    // Puts previously reserved units back into stock (e.g. when a checkout is rolled back)
+    public void release(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Can't release zero or less.");
+        }
+        int current;
+        do {
+            current = getStock();
+            if (current > Integer.MAX_VALUE - quantity) {
+                throw new IllegalArgumentException("Releasing " + quantity + " would overflow the stock of " + getName() + ".");
+            }
+        } while (!compareAndSetStock(current, current + quantity));
+        notifyChanged(ProductChange.STOCK);
     }
     
     // Reduce stock after a purchase
@@ -89,21 +201,34 @@ public class Product {
         if (quantity <= 0) {
             throw new IllegalArgumentException("Can't reduce stock by zero or less.");
         }
-        if (quantity > stock) {
-            throw new IllegalArgumentException("Not enough stock for " + name + ". Only " + stock + " available.");
+        if (!tryReserve(quantity)) {
+            throw new IllegalArgumentException("Not enough stock for " + getName() + ". Only " + getStock() + " available.");
         }
-        stock -= quantity;
     }
     
-    // Prints product details for browsing
-    public void displayDetails() {
-        String availability = isAvailable() ? "In Stock (" + stock + " available)" : "Out of Stock";
-        System.out.printf("%d. %s - $%.2f\n   %s\n   %s\n", 
-                           productID, name, price, description, availability);
+    // Shows product details for browsing
+    public void displayDetails(OutputSink out) {
+        out.write(details());
+    }
+    
+    // The text displayDetails prints; ProductViewCache keeps it for products shown often
+    public String details() {
+        int available = getStock();
+        String description = getDescription();
+        String name = getName();
+        StringBuilder out = new StringBuilder(48 + name.length() + description.length());
+        out.append(getProductID()).append(". ").append(name).append(" - $").append(Money.format(getPriceCents()));
+        out.append("\n   ").append(description).append("\n   ");
+        if (available > 0) {
+            out.append("In Stock (").append(available).append(" available)");
+        } else {
+            out.append("Out of Stock");
+        }
+        return out.append('\n').toString();
     }
     
     @Override
     public String toString() {
-        return name + " ($" + String.format("%.2f", price) + ")";
+        return getName() + " ($" + getPrice() + ")";
     }
 }
@@ -0,0 +1,225 @@
+package com.ecommerce;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Product catalog indexed by productID.
+// The products themselves live in a ProductStore: on the heap by default (O(1) lookups,
+// inserts and removals with nothing boxed), or in a memory-mapped file for very large
+// catalogs. Listeners (search index and the like) are told about every add, remove and change.
+//
+// Safe to use from many threads at once. Lookups and iteration go straight to the store,
+// which never blocks readers; adds, updates and removals take turns on one lock, so two
+// writers can't both add the same ID, and listeners hear about one product's adds and
+// removals in the order they happened.
+public class ProductCatalog {
+    private final ProductStore store;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final List<ProductListener> listeners = new CopyOnWriteArrayList<>();
+    private final ProductListener changeForwarder = new ProductListener() {
+        @Override
+        public void productChanged(Product product, ProductChange change) {
+            for (ProductListener listener : listeners) {
+                listener.productChanged(product, change);
+            }
+        }
+    };
+
+    public ProductCatalog() {
+        this(16);
+    }
+
+    public ProductCatalog(int expectedSize) {
+        this(new HeapProductStore(expectedSize));
+    }
+
+    public ProductCatalog(ProductStore store) {
+        if (store == null) {
+            throw new IllegalArgumentException("Product store can't be null.");
+        }
+        this.store = store;
+    }
+
+    public int size() { return store.size(); }
+    public boolean isEmpty() { return store.size() == 0; }
+
+    // Finds a product by its ID, returns null if there is no such product
+    public Product get(int productID) {
+        if (productID <= 0) {
+            return null; // IDs are always positive, so this can't be in the catalog
+        }
+        return attach(store.get(productID));
+    }
+
+    public boolean contains(int productID) {
+        return get(productID) != null;
+    }
+
+    // Registers a listener and tells it about every product already in the catalog
+    public void addListener(ProductListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener can't be null.");
+        }
+        writeLock.lock(); // no add or removal can slip in between, so it sees each product once
+        try {
+            listeners.add(listener);
+            for (Product product : products()) {
+                listener.productAdded(product);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void removeListener(ProductListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Adds a product, or updates the one that already has the same ID.
+    // An existing product is updated in place through its setters rather than swapped for
+    // 'product': carts and other holders keep referring to the live object, so a later
+    // checkout reserves the stock everyone else sees, and listeners hear about each change.
+    // Returns the existing product, now updated (or null if it's a new ID).
+    public Product put(Product product) {
+        if (product == null) {
+            throw new IllegalArgumentException("Can't add a null product to the catalog.");
+        }
+        if (product.getProductID() <= 0) {
+            throw new IllegalArgumentException("Product ID must be a positive number.");
+        }
+        writeLock.lock();
+        try {
+            Product existing = get(product.getProductID());
+            if (existing != null) {
+                if (existing != product) {
+                    update(existing, product);
+                }
+                return existing;
+            }
+            store.put(product);
+            Product stored = attach(store.get(product.getProductID()));
+            for (ProductListener listener : listeners) {
+                listener.productAdded(stored);
+            }
+            return null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Loads many products at once, letting the store size itself a single time up front
+    public void putAll(Collection<Product> newProducts) {
+        if (newProducts == null) {
+            throw new IllegalArgumentException("Product list can't be null.");
+        }
+        writeLock.lock();
+        try {
+            store.ensureCapacity(newProducts.size());
+            for (Product product : newProducts) {
+                put(product);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Removes a product by ID and returns it (or null if it wasn't in the catalog)
+    public Product remove(int productID) {
+        if (productID <= 0) {
+            return null;
+        }
+        writeLock.lock();
+        try {
+            Product removed = store.remove(productID);
+            if (removed != null) {
+                detach(removed);
+            }
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // All products in catalog order
+    public Iterable<Product> products() {
+        return () -> new ProductIterator(false);
+    }
+
+    // View of the products that are currently in stock.
+    // Nothing is copied: the view is created in constant time and skips
+    // out-of-stock products while it is being iterated.
+    public Iterable<Product> availableProducts() {
+        return () -> new ProductIterator(true);
+    }
+
+    // Makes sure changes made through this product reach our listeners
+    private Product attach(Product product) {
+        if (product != null && !product.hasListener(changeForwarder)) {
+            product.setListener(changeForwarder);
+        }
+        return product;
+    }
+
+    // Copies what differs from 'source' onto 'target', one setter (and one change) at a time
+    private static void update(Product target, Product source) {
+        if (!target.getName().equals(source.getName())) {
+            target.setName(source.getName());
+        }
+        if (!target.getPrice().equals(source.getPrice())) {
+            target.setPrice(source.getPrice());
+        }
+        if (!target.getDescription().equals(source.getDescription())) {
+            target.setDescription(source.getDescription());
+        }
+        if (target.getStock() != source.getStock()) {
+            target.setStock(source.getStock());
+        }
+    }
+
+    private void detach(Product product) {
+        product.setListener(null);
+        for (ProductListener listener : listeners) {
+            listener.productRemoved(product);
+        }
+    }
+
+    private class ProductIterator implements Iterator<Product> {
+        private final boolean availableOnly;
+        private final Iterator<Product> stored = store.iterator();
+        private Product next;
+
+        ProductIterator(boolean availableOnly) {
+            this.availableOnly = availableOnly;
+            this.next = advance();
+        }
+
+        private Product advance() {
+            while (stored.hasNext()) {
+                Product product = stored.next();
+                if (!availableOnly || product.isAvailable()) {
+                    return attach(product);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Product next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Product product = next;
+            next = advance();
+            return product;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.ecommerce;
+
+// The product fields other components can be told about when they change
+public enum ProductChange {
+    NAME,
+    DESCRIPTION,
+    PRICE,
+    STOCK
+}
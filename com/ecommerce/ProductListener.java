@@ -0,0 +1,11 @@
+package com.ecommerce;
+
+// Gets told when products are added to, removed from, or changed inside a ProductCatalog.
+// Register one with ProductCatalog.addListener; every method is optional.
+public interface ProductListener {
+    default void productAdded(Product product) { }
+
+    default void productRemoved(Product product) { }
+
+    default void productChanged(Product product, ProductChange change) { }
+}
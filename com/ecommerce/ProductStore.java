@@ -0,0 +1,26 @@
+package com.ecommerce;
+
+import java.util.Iterator;
+
+// Where a ProductCatalog keeps its products.
+// The default is HeapProductStore (ordinary Product objects on the heap);
+// com.ecommerce.store.MappedProductStore keeps them in a memory-mapped file instead.
+public interface ProductStore {
+    int size();
+
+    // Finds a product by its ID, returns null if there is no such product
+    Product get(int productID);
+
+    // Adds a product, or replaces the one with the same ID; returns the one replaced (or null).
+    // A store may copy the product's data, so read it back with get() afterwards.
+    Product put(Product product);
+
+    // Removes a product by ID and returns it (or null if it wasn't there)
+    Product remove(int productID);
+
+    // Every product, in the store's own order
+    Iterator<Product> iterator();
+
+    // Hint that about 'additional' more products are about to be added
+    default void ensureCapacity(int additional) { }
+}
@@ -0,0 +1,218 @@
+package com.ecommerce;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Keeps ready-made text for products (the browse listing, the API's JSON, ...) so showing
+// a popular product doesn't format it all over again. Each way of showing a product is a
+// View, made once with view(); render() then returns the cached text, or formats and
+// caches it on a miss.
+//
+// Register the cache with the catalog (ProductCatalog.addListener). Any change to a
+// product (name, price, description, stock) bumps its version, and text made for an older
+// version is never handed out again. The version is read before the product is, so text
+// formatted while the product was changing is stored under the old version and simply
+// misses next time; no reader can see a stale price or stock level after the change.
+// Versions are kept per stripe of product IDs rather than per product, so memory stays
+// fixed however big the catalog gets; a change also invalidates the few other products
+// sharing its stripe, which costs them one extra format each.
+//
+// The cache holds at most 'capacity' texts. It's split into segments (each with its own
+// lock) and each segment is a segmented LRU: new text goes into a probation list, and
+// only text that's asked for again moves up to the protected list. Walking the whole
+// catalog once (as the browse menu does) cycles through probation without pushing out
+// the products people actually keep looking at.
+public class ProductViewCache implements ProductListener {
+    public static final int DEFAULT_CAPACITY = 16_384;
+    private static final int MAX_VIEWS = 16;
+    private static final int SEGMENTS = 16;
+    private static final int VERSION_STRIPES = 1 << 14;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final CopyOnWriteArrayList<View> views = new CopyOnWriteArrayList<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ProductViewCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ProductViewCache(int capacity) {
+        if (capacity < SEGMENTS) {
+            throw new IllegalArgumentException("The cache must hold at least " + SEGMENTS + " entries.");
+        }
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity / SEGMENTS);
+        }
+    }
+
+    // One way of showing a product
+    public static final class View {
+        private final int index;
+        private final Function<Product, String> renderer;
+
+        private View(int index, Function<Product, String> renderer) {
+            this.index = index;
+            this.renderer = renderer;
+        }
+    }
+
+    // Adds a way of showing products; 'renderer' is called on every miss, from any thread
+    public synchronized View view(Function<Product, String> renderer) {
+        if (renderer == null) {
+            throw new IllegalArgumentException("A view needs a renderer.");
+        }
+        if (views.size() == MAX_VIEWS) {
+            throw new IllegalStateException("A cache supports at most " + MAX_VIEWS + " views.");
+        }
+        View view = new View(views.size(), renderer);
+        views.add(view);
+        return view;
+    }
+
+    // The product as 'view' shows it, formatted only if the cache doesn't have it yet
+    public String render(Product product, View view) {
+        int productID = product.getProductID();
+        long version = versions.get(stripe(productID)); // before reading the product, see above
+        long key = key(productID, view);
+        Segment segment = segmentFor(productID);
+        Entry entry = segment.get(key);
+        if (entry != null && entry.version == version) {
+            hits.increment();
+            return entry.text;
+        }
+        misses.increment();
+        String text = view.renderer.apply(product);
+        segment.put(key, new Entry(version, text));
+        return text;
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void productAdded(Product product) {
+        invalidate(product.getProductID()); // may replace a product with the same ID
+    }
+
+    @Override
+    public void productRemoved(Product product) {
+        invalidate(product.getProductID());
+    }
+
+    @Override
+    public void productChanged(Product product, ProductChange change) {
+        invalidate(product.getProductID());
+    }
+
+    private void invalidate(int productID) {
+        versions.incrementAndGet(stripe(productID));
+        Segment segment = segmentFor(productID);
+        for (View view : views) {
+            segment.remove(key(productID, view)); // just frees the space; the version already hides it
+        }
+    }
+
+    private static int stripe(int productID) {
+        return mix(productID) & (VERSION_STRIPES - 1);
+    }
+
+    private Segment segmentFor(int productID) {
+        return segments[(mix(productID) >>> 16) & (SEGMENTS - 1)];
+    }
+
+    private static int mix(int productID) {
+        return productID * 0x9E3779B9; // spreads neighbouring IDs across stripes and segments
+    }
+
+    private static long key(int productID, View view) {
+        return (long) productID * MAX_VIEWS + view.index;
+    }
+
+    private static final class Entry {
+        final long version;
+        final String text;
+
+        Entry(long version, String text) {
+            this.version = version;
+            this.text = text;
+        }
+    }
+
+    private static final class Segment {
+        private final LinkedHashMap<Long, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<Long, Entry> protectedEntries = new LinkedHashMap<>(16, 0.75f, true);
+        private final int probationCapacity;
+        private final int protectedCapacity;
+
+        Segment(int capacity) {
+            this.protectedCapacity = Math.max(1, capacity * 4 / 5);
+            this.probationCapacity = Math.max(1, capacity - protectedCapacity);
+        }
+
+        // A second hit moves an entry from probation up to protected
+        synchronized Entry get(long key) {
+            Entry entry = protectedEntries.get(key);
+            if (entry != null) {
+                return entry;
+            }
+            entry = probation.remove(key);
+            if (entry != null) {
+                protectedEntries.put(key, entry);
+                if (protectedEntries.size() > protectedCapacity) {
+                    // The least recently used protected entry gets another chance in probation
+                    Map.Entry<Long, Entry> eldest = removeEldest(protectedEntries);
+                    probation.put(eldest.getKey(), eldest.getValue());
+                    trimProbation();
+                }
+            }
+            return entry;
+        }
+
+        synchronized void put(long key, Entry entry) {
+            if (protectedEntries.containsKey(key)) {
+                protectedEntries.put(key, entry);
+                return;
+            }
+            probation.put(key, entry);
+            trimProbation();
+        }
+
+        synchronized void remove(long key) {
+            if (protectedEntries.remove(key) == null) {
+                probation.remove(key);
+            }
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedEntries.size();
+        }
+
+        private void trimProbation() {
+            while (probation.size() > probationCapacity) {
+                removeEldest(probation);
+            }
+        }
+
+        private static Map.Entry<Long, Entry> removeEldest(LinkedHashMap<Long, Entry> map) {
+            Iterator<Map.Entry<Long, Entry>> eldest = map.entrySet().iterator();
+            Map.Entry<Long, Entry> entry = eldest.next();
+            eldest.remove();
+            return entry;
+        }
+    }
+}
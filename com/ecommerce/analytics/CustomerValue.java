@@ -0,0 +1,25 @@
+package com.ecommerce.analytics;
+
+import com.ecommerce.Money;
+
+// What one customer has spent over all their orders (see OrderReports.topCustomers)
+public final class CustomerValue {
+    private final int customerID;
+    private final int orders;
+    private final long revenueCents;
+
+    CustomerValue(int customerID, int orders, long revenueCents) {
+        this.customerID = customerID;
+        this.orders = orders;
+        this.revenueCents = revenueCents;
+    }
+
+    public int getCustomerID() { return customerID; }
+    public int getOrders() { return orders; }
+    public long getRevenueCents() { return revenueCents; }
+
+    @Override
+    public String toString() {
+        return "Customer #" + customerID + ": " + orders + " orders, $" + Money.format(revenueCents);
+    }
+}
@@ -0,0 +1,198 @@
+package com.ecommerce.analytics;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Ad hoc reports over the whole order history, run in parallel over an OrderSnapshot.
+// Each report splits the snapshot's rows in half again and again (fork/join) until the
+// pieces are small, adds up each piece into its own private totals with plain array
+// writes, and merges the partial totals on the way back up. No piece shares anything it
+// writes, so the work spreads over all cores without locks or atomic updates.
+//
+// Cancelled orders are left out of every report.
+public class OrderReports {
+    private static final int ROWS_PER_TASK = 1 << 14;
+
+    private static final Comparator<CustomerValue> BY_REVENUE = Comparator
+            .comparingLong(CustomerValue::getRevenueCents)
+            .thenComparing(Comparator.comparingInt(CustomerValue::getCustomerID).reversed());
+
+    private final ForkJoinPool pool;
+
+    public OrderReports() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public OrderReports(ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("A fork/join pool is required.");
+        }
+        this.pool = pool;
+    }
+
+    // Revenue per calendar day, in cents, for every day that has any
+    public SortedMap<LocalDate, Long> revenueByDay(OrderSnapshot snapshot) {
+        int days = snapshot.lastDay - snapshot.firstDay + 1;
+        long[] cents = pool.invoke(new RangeTask<>(0, snapshot.size, (from, to) -> {
+            long[] totals = new long[days];
+            for (int i = from; i < to; i++) {
+                if (!snapshot.isCancelled(i)) {
+                    totals[snapshot.epochDays[i] - snapshot.firstDay] += snapshot.totalCents[i];
+                }
+            }
+            return totals;
+        }, OrderReports::addInto));
+        SortedMap<LocalDate, Long> result = new TreeMap<>();
+        for (int day = 0; day < days; day++) {
+            if (cents[day] != 0) {
+                result.put(LocalDate.ofEpochDay(snapshot.firstDay + (long) day), cents[day]);
+            }
+        }
+        return result;
+    }
+
+    // How many orders had each number of units in them: result[n] is the number of orders
+    // with n units, and result[maxUnits] the number with maxUnits or more
+    public long[] basketSizes(OrderSnapshot snapshot, int maxUnits) {
+        if (maxUnits <= 0) {
+            throw new IllegalArgumentException("The largest basket size must be at least 1.");
+        }
+        return pool.invoke(new RangeTask<>(0, snapshot.size, (from, to) -> {
+            long[] counts = new long[maxUnits + 1];
+            int[] offsets = snapshot.lineOffsets;
+            int[] quantities = snapshot.lineQuantities;
+            for (int i = from; i < to; i++) {
+                if (snapshot.isCancelled(i)) {
+                    continue;
+                }
+                long units = 0;
+                for (int line = offsets[i]; line < offsets[i + 1]; line++) {
+                    units += quantities[line];
+                }
+                counts[(int) Math.min(units, maxUnits)]++;
+            }
+            return counts;
+        }, OrderReports::addInto));
+    }
+
+    // Revenue of every line item, in cents (unit price times quantity, summed)
+    public long lineItemRevenueCents(OrderSnapshot snapshot) {
+        return pool.invoke(new RangeTask<>(0, snapshot.size, (from, to) -> {
+            long total = 0;
+            int[] offsets = snapshot.lineOffsets;
+            for (int i = from; i < to; i++) {
+                if (snapshot.isCancelled(i)) {
+                    continue;
+                }
+                for (int line = offsets[i]; line < offsets[i + 1]; line++) {
+                    total += snapshot.lineUnitPriceCents[line] * snapshot.lineQuantities[line];
+                }
+            }
+            return total;
+        }, Long::sum));
+    }
+
+    // The 'limit' customers who have spent the most over their lifetime, biggest first
+    public List<CustomerValue> topCustomers(OrderSnapshot snapshot, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be at least 1.");
+        }
+        PriorityQueue<CustomerValue> best = pool.invoke(new RangeTask<>(0, snapshot.customers.length, (from, to) -> {
+            PriorityQueue<CustomerValue> top = new PriorityQueue<>(limit + 1, BY_REVENUE);
+            for (int c = from; c < to; c++) {
+                CustomerValue value = customerValue(snapshot, c);
+                if (value.getOrders() > 0) {
+                    keepBest(top, value, limit);
+                }
+            }
+            return top;
+        }, (a, b) -> {
+            for (CustomerValue value : b) {
+                keepBest(a, value, limit);
+            }
+            return a;
+        }));
+        List<CustomerValue> result = new ArrayList<>(best);
+        result.sort(Collections.reverseOrder(BY_REVENUE));
+        return result;
+    }
+
+    // What one customer has spent (zero orders if they have none in the snapshot)
+    public CustomerValue lifetimeValue(OrderSnapshot snapshot, int customerID) {
+        int c = Arrays.binarySearch(snapshot.customers, customerID);
+        return c < 0 ? new CustomerValue(customerID, 0, 0) : customerValue(snapshot, c);
+    }
+
+    private static CustomerValue customerValue(OrderSnapshot snapshot, int c) {
+        int orders = 0;
+        long cents = 0;
+        for (int k = snapshot.customerOffsets[c]; k < snapshot.customerOffsets[c + 1]; k++) {
+            int i = snapshot.ordersByCustomer[k];
+            if (!snapshot.isCancelled(i)) {
+                orders++;
+                cents += snapshot.totalCents[i];
+            }
+        }
+        return new CustomerValue(snapshot.customers[c], orders, cents);
+    }
+
+    private static void keepBest(PriorityQueue<CustomerValue> top, CustomerValue value, int limit) {
+        top.add(value);
+        if (top.size() > limit) {
+            top.poll();
+        }
+    }
+
+    private static long[] addInto(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            a[i] += b[i];
+        }
+        return a;
+    }
+
+    private interface Leaf<R> {
+        R compute(int from, int to);
+    }
+
+    private interface Merge<R> {
+        R merge(R left, R right);
+    }
+
+    // Splits rows [from, to) until a piece is small enough to do directly
+    private static final class RangeTask<R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final transient Leaf<R> leaf;
+        private final transient Merge<R> merge;
+
+        RangeTask(int from, int to, Leaf<R> leaf, Merge<R> merge) {
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+            this.merge = merge;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                return leaf.compute(from, to);
+            }
+            int middle = (from + to) >>> 1;
+            RangeTask<R> left = new RangeTask<>(from, middle, leaf, merge);
+            left.fork();
+            R right = new RangeTask<>(middle, to, leaf, merge).compute();
+            return merge.merge(left.join(), right);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.ecommerce.analytics;
+
+import com.ecommerce.orders.Order;
+import com.ecommerce.orders.OrderStatus;
+import com.ecommerce.util.IntIntHashMap;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// A frozen, column-by-column copy of the order history for reports (see OrderReports).
+// Each field of every order sits in its own primitive array (orderIDs[i], totalCents[i],
+// ...), and the lines of all orders are laid end to end in three more arrays, with
+// lineOffsets[i] .. lineOffsets[i + 1] marking order i's lines. Scanning a column is then
+// a walk through one contiguous array, which is what lets a report over a hundred million
+// line items run at memory speed, and split cleanly across cores.
+//
+// Orders are also grouped by customer (customers[c] owns ordersByCustomer[customerOffsets[c]
+// .. customerOffsets[c + 1]]), so per-customer reports never search.
+//
+// Nothing here changes after it is built, so any number of threads can read it at once.
+public final class OrderSnapshot {
+    private static final int MAX_LINES = Integer.MAX_VALUE - 8; // the largest array the JVM reliably allocates
+    private static final int ORDERS_PER_TASK = 1 << 13;
+
+    final int size;
+    final int[] orderIDs;
+    final int[] customerIDs;
+    final int[] epochDays;
+    final byte[] statuses;
+    final long[] totalCents;
+
+    final int lineCount;
+    final int[] lineOffsets;
+    final int[] lineProductIDs;
+    final long[] lineUnitPriceCents;
+    final int[] lineQuantities;
+
+    final int[] customers;        // distinct customer IDs, ascending
+    final int[] customerOffsets;
+    final int[] ordersByCustomer;
+
+    final int firstDay;           // epoch days of the earliest and latest orders (0 and -1 if none)
+    final int lastDay;
+
+    // Takes the arrays as they are: each holds exactly 'size' orders (lineOffsets size + 1,
+    // ending with lineCount) or 'lineCount' lines
+    private OrderSnapshot(int size, int[] orderIDs, int[] customerIDs, int[] epochDays, byte[] statuses,
+                          long[] totalCents, int lineCount, int[] lineOffsets, int[] lineProductIDs,
+                          long[] lineUnitPriceCents, int[] lineQuantities) {
+        this.size = size;
+        this.orderIDs = orderIDs;
+        this.customerIDs = customerIDs;
+        this.epochDays = epochDays;
+        this.statuses = statuses;
+        this.totalCents = totalCents;
+
+        this.lineCount = lineCount;
+        this.lineOffsets = lineOffsets;
+        this.lineProductIDs = lineProductIDs;
+        this.lineUnitPriceCents = lineUnitPriceCents;
+        this.lineQuantities = lineQuantities;
+
+        // Group by customer: a hash map gives each distinct customer a number in one pass,
+        // only the distinct IDs are sorted (so customers[] is ascending), and a counting sort
+        // over those numbers lays the orders out. O(orders + customers log customers).
+        IntIntHashMap seen = new IntIntHashMap(Math.min(size, 1 << 20), -1);
+        int[] firstSeen = new int[size];
+        int[] ranks = new int[size];
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            int rank = seen.get(customerIDs[i]);
+            if (rank < 0) {
+                rank = distinct++;
+                seen.put(customerIDs[i], rank);
+                firstSeen[rank] = customerIDs[i];
+            }
+            ranks[i] = rank;
+        }
+        customers = Arrays.copyOf(firstSeen, distinct);
+        Arrays.sort(customers);
+        int[] sortedRank = new int[distinct]; // first-seen number -> position in customers
+        for (int c = 0; c < distinct; c++) {
+            sortedRank[seen.get(customers[c])] = c;
+        }
+        customerOffsets = new int[distinct + 1];
+        for (int i = 0; i < size; i++) {
+            ranks[i] = sortedRank[ranks[i]];
+            customerOffsets[ranks[i] + 1]++;
+        }
+        for (int c = 0; c < distinct; c++) {
+            customerOffsets[c + 1] += customerOffsets[c];
+        }
+        ordersByCustomer = new int[size];
+        int[] next = Arrays.copyOf(customerOffsets, distinct);
+        for (int i = 0; i < size; i++) {
+            ordersByCustomer[next[ranks[i]]++] = i;
+        }
+
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            first = Math.min(first, epochDays[i]);
+            last = Math.max(last, epochDays[i]);
+        }
+        firstDay = size == 0 ? 0 : first;
+        lastDay = size == 0 ? -1 : last;
+    }
+
+    // The builder's arrays are taken over rather than copied when they're already the right
+    // size, so building a huge snapshot doesn't need twice the memory
+    private static int[] trim(int[] array, int length) {
+        return array.length == length ? array : Arrays.copyOf(array, length);
+    }
+
+    private static long[] trim(long[] array, int length) {
+        return array.length == length ? array : Arrays.copyOf(array, length);
+    }
+
+    // Copies the orders as they stand right now, on the common fork/join pool
+    public static OrderSnapshot of(Collection<Order> orders) {
+        return of(orders, ForkJoinPool.commonPool());
+    }
+
+    // Copies the orders as they stand right now. The copy is two parallel passes over the
+    // orders: the first fills the per-order columns and counts each order's lines, a running
+    // sum of those counts then gives every order the place of its lines, and the second
+    // fills the line columns, each task writing only its own orders' rows.
+    public static OrderSnapshot of(Collection<Order> orders, ForkJoinPool pool) {
+        if (orders == null) {
+            throw new IllegalArgumentException("Order list can't be null.");
+        }
+        if (pool == null) {
+            throw new IllegalArgumentException("A fork/join pool is required.");
+        }
+        Order[] rows = orders.toArray(new Order[0]);
+        int size = rows.length;
+        int[] orderIDs = new int[size];
+        int[] customerIDs = new int[size];
+        int[] epochDays = new int[size];
+        byte[] statuses = new byte[size];
+        long[] totalCents = new long[size];
+        int[] lineOffsets = new int[size + 1];
+        pool.invoke(new RowTask(0, size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Order order = rows[i];
+                orderIDs[i] = order.getOrderID();
+                customerIDs[i] = order.getCustomer().getCustomerID();
+                epochDays[i] = Math.toIntExact(order.getOrderDate().toLocalDate().toEpochDay());
+                statuses[i] = (byte) order.getStatus().ordinal();
+                totalCents[i] = order.getOrderTotalCents();
+                lineOffsets[i + 1] = order.getLineCount();
+            }
+        }));
+        long lines = 0;
+        for (int i = 1; i <= size; i++) {
+            lines += lineOffsets[i];
+            if (lines > MAX_LINES) {
+                throw new IllegalArgumentException("A snapshot can hold at most " + MAX_LINES + " lines.");
+            }
+            lineOffsets[i] = (int) lines;
+        }
+        int lineCount = (int) lines;
+        int[] lineProductIDs = new int[lineCount];
+        long[] lineUnitPriceCents = new long[lineCount];
+        int[] lineQuantities = new int[lineCount];
+        pool.invoke(new RowTask(0, size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Order order = rows[i];
+                int line = lineOffsets[i];
+                for (int j = 0; j < order.getLineCount(); j++, line++) {
+                    lineProductIDs[line] = order.getProductID(j);
+                    lineUnitPriceCents[line] = order.getUnitPriceCents(j);
+                    lineQuantities[line] = order.getQuantity(j);
+                }
+            }
+        }));
+        return new OrderSnapshot(size, orderIDs, customerIDs, epochDays, statuses, totalCents,
+                lineCount, lineOffsets, lineProductIDs, lineUnitPriceCents, lineQuantities);
+    }
+
+    public int size() { return size; }
+    public int lineCount() { return lineCount; }
+    public int customerCount() { return customers.length; }
+
+    boolean isCancelled(int order) {
+        return statuses[order] == OrderStatus.CANCELLED.ordinal();
+    }
+
+    // Builds a snapshot straight from order data (e.g. generated data in a benchmark):
+    // call addOrder, then addLine for each of its lines, then the next addOrder.
+    // A builder builds one snapshot; it can't be used again afterwards.
+    public static final class Builder {
+        private int size;
+        private int[] orderIDs;
+        private int[] customerIDs;
+        private int[] epochDays;
+        private byte[] statuses;
+        private long[] totalCents;
+        private int[] lineOffsets;
+
+        private int lineCount;
+        private int[] lineProductIDs;
+        private long[] lineUnitPriceCents;
+        private int[] lineQuantities;
+        private boolean built;
+
+        public Builder(int expectedOrders, int expectedLines) {
+            if (expectedOrders < 0 || expectedLines < 0) {
+                throw new IllegalArgumentException("Expected sizes can't be negative.");
+            }
+            int orders = Math.max(expectedOrders, 16);
+            int lines = Math.max(expectedLines, 16);
+            orderIDs = new int[orders];
+            customerIDs = new int[orders];
+            epochDays = new int[orders];
+            statuses = new byte[orders];
+            totalCents = new long[orders];
+            lineOffsets = new int[orders + 1];
+            lineProductIDs = new int[lines];
+            lineUnitPriceCents = new long[lines];
+            lineQuantities = new int[lines];
+        }
+
+        public Builder addOrder(int orderID, int customerID, LocalDate orderDay, OrderStatus status, long totalCents) {
+            checkNotBuilt();
+            if (orderDay == null || status == null) {
+                throw new IllegalArgumentException("An order needs a date and a status.");
+            }
+            if (size == orderIDs.length) {
+                int capacity = size << 1;
+                orderIDs = Arrays.copyOf(orderIDs, capacity);
+                customerIDs = Arrays.copyOf(customerIDs, capacity);
+                epochDays = Arrays.copyOf(epochDays, capacity);
+                statuses = Arrays.copyOf(statuses, capacity);
+                this.totalCents = Arrays.copyOf(this.totalCents, capacity);
+                lineOffsets = Arrays.copyOf(lineOffsets, capacity + 1);
+            }
+            orderIDs[size] = orderID;
+            customerIDs[size] = customerID;
+            epochDays[size] = Math.toIntExact(orderDay.toEpochDay());
+            statuses[size] = (byte) status.ordinal();
+            this.totalCents[size] = totalCents;
+            lineOffsets[size] = lineCount;
+            size++;
+            return this;
+        }
+
+        // Adds a line to the order added last
+        public Builder addLine(int productID, long unitPriceCents, int quantity) {
+            checkNotBuilt();
+            if (size == 0) {
+                throw new IllegalArgumentException("Add an order before its lines.");
+            }
+            if (lineCount == lineProductIDs.length) {
+                if (lineCount == MAX_LINES) {
+                    throw new IllegalArgumentException("A snapshot can hold at most " + MAX_LINES + " lines.");
+                }
+                int capacity = (int) Math.min(2L * lineCount, MAX_LINES);
+                lineProductIDs = Arrays.copyOf(lineProductIDs, capacity);
+                lineUnitPriceCents = Arrays.copyOf(lineUnitPriceCents, capacity);
+                lineQuantities = Arrays.copyOf(lineQuantities, capacity);
+            }
+            lineProductIDs[lineCount] = productID;
+            lineUnitPriceCents[lineCount] = unitPriceCents;
+            lineQuantities[lineCount] = quantity;
+            lineCount++;
+            return this;
+        }
+
+        public OrderSnapshot build() {
+            checkNotBuilt();
+            built = true;
+            lineOffsets = trim(lineOffsets, size + 1);
+            lineOffsets[size] = lineCount;
+            return new OrderSnapshot(size, trim(orderIDs, size), trim(customerIDs, size), trim(epochDays, size),
+                    statuses.length == size ? statuses : Arrays.copyOf(statuses, size), trim(totalCents, size),
+                    lineCount, lineOffsets, trim(lineProductIDs, lineCount), trim(lineUnitPriceCents, lineCount),
+                    trim(lineQuantities, lineCount));
+        }
+
+        private void checkNotBuilt() {
+            if (built) {
+                throw new IllegalStateException("This builder has already built its snapshot.");
+            }
+        }
+    }
+
+    private interface Rows {
+        void fill(int from, int to);
+    }
+
+    // Splits orders [from, to) until a piece is small enough to copy directly
+    private static final class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final transient Rows rows;
+
+        RowTask(int from, int to, Rows rows) {
+            this.from = from;
+            this.to = to;
+            this.rows = rows;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ORDERS_PER_TASK) {
+                rows.fill(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RowTask(from, middle, rows), new RowTask(middle, to, rows));
+        }
+    }
+}
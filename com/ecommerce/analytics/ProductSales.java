@@ -0,0 +1,25 @@
+package com.ecommerce.analytics;
+
+import com.ecommerce.Money;
+
+// How much of one product sold over some period (see SalesAnalytics.topSellers)
+public final class ProductSales {
+    private final int productID;
+    private final long units;
+    private final long revenueCents;
+
+    ProductSales(int productID, long units, long revenueCents) {
+        this.productID = productID;
+        this.units = units;
+        this.revenueCents = revenueCents;
+    }
+
+    public int getProductID() { return productID; }
+    public long getUnits() { return units; }
+    public long getRevenueCents() { return revenueCents; }
+
+    @Override
+    public String toString() {
+        return "Product #" + productID + ": " + units + " sold, $" + Money.format(revenueCents);
+    }
+}
@@ -0,0 +1,250 @@
+package com.ecommerce.analytics;
+
+import com.ecommerce.Money;
+import com.ecommerce.orders.Order;
+import com.ecommerce.orders.OrderStatus;
+import com.ecommerce.orders.OrderStatusListener;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Running sales figures, kept up to date as orders are placed and change status, so
+// reports never have to go back through the order history.
+//
+//   - all time: revenue, units and orders, and revenue and units for each product
+//   - orders per status
+//   - sliding windows up to 24 hours: revenue, and the best-selling products
+//
+// Every counter is a LongAdder, so the many threads placing orders at once don't contend
+// on a shared total; recording an order costs a few uncontended adds per line. Totals and
+// per-product figures are read in O(1). Windowed figures come from one-minute buckets
+// kept in a ring, so a window query only touches the products sold in that window
+// (topSellers is O(m log k) for m such products) and old minutes simply get overwritten.
+//
+// Revenue is net of cancellations: cancelling an order takes its lines back out, both from
+// the all-time figures and from the window its order date falls in.
+public class SalesAnalytics implements OrderStatusListener {
+    public static final Duration MAX_WINDOW = Duration.ofHours(24);
+    private static final long BUCKET_MILLIS = 60_000;
+    private static final int BUCKETS = (int) (MAX_WINDOW.toMillis() / BUCKET_MILLIS);
+
+    private final Clock clock;
+    private final LongAdder revenueCents = new LongAdder();
+    private final LongAdder unitsSold = new LongAdder();
+    private final LongAdder ordersPlaced = new LongAdder();
+    private final LongAdder[] ordersByStatus = new LongAdder[OrderStatus.values().length];
+    private final ConcurrentHashMap<Integer, Tally> byProduct = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(BUCKETS);
+
+    public SalesAnalytics() {
+        this(Clock.systemDefaultZone());
+    }
+
+    public SalesAnalytics(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("A clock is required.");
+        }
+        this.clock = clock;
+        for (int i = 0; i < ordersByStatus.length; i++) {
+            ordersByStatus[i] = new LongAdder();
+        }
+    }
+
+    // Counts an order once, when it's placed (or when it's restored at startup). Its later
+    // status changes arrive through statusChanged, so record it before anyone else can
+    // change its status.
+    public void record(Order order) {
+        if (order == null) {
+            throw new IllegalArgumentException("Can't record a null order.");
+        }
+        OrderStatus status = order.getStatus();
+        ordersPlaced.increment();
+        ordersByStatus[status.ordinal()].increment();
+        if (status != OrderStatus.CANCELLED) {
+            addLines(order, 1);
+        }
+    }
+
+    // Moves one count between statuses; the moves add up to the same totals in any order
+    @Override
+    public void statusChanged(Order order, OrderStatus oldStatus, OrderStatus newStatus, long sequence) {
+        ordersByStatus[oldStatus.ordinal()].decrement();
+        ordersByStatus[newStatus.ordinal()].increment();
+        if (newStatus == OrderStatus.CANCELLED) {
+            addLines(order, -1); // Cancelled is final, so this happens at most once per order
+        }
+    }
+
+    public long getRevenueCents() { return revenueCents.sum(); }
+    public long getUnitsSold() { return unitsSold.sum(); }
+    public long getOrderCount() { return ordersPlaced.sum(); }
+
+    public long getOrderCount(OrderStatus status) {
+        if (status == null) {
+            throw new IllegalArgumentException("Order status cannot be empty.");
+        }
+        return ordersByStatus[status.ordinal()].sum();
+    }
+
+    public long getProductRevenueCents(int productID) {
+        Tally tally = byProduct.get(productID);
+        return tally == null ? 0 : tally.revenueCents.sum();
+    }
+
+    public long getProductUnitsSold(int productID) {
+        Tally tally = byProduct.get(productID);
+        return tally == null ? 0 : tally.units.sum();
+    }
+
+    // Revenue from orders placed within the last 'window' (at most MAX_WINDOW), to the minute
+    public long windowRevenueCents(Duration window) {
+        long total = 0;
+        long now = currentMinute();
+        for (long minute = firstMinute(now, window); minute <= now; minute++) {
+            Bucket bucket = existingBucket(minute);
+            if (bucket != null) {
+                total += bucket.revenueCents.sum();
+            }
+        }
+        return total;
+    }
+
+    // The 'limit' products with the most units sold within the last 'window' (at most
+    // MAX_WINDOW), best first; ties go to the higher revenue, then the lower productID
+    public List<ProductSales> topSellers(Duration window, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be at least 1.");
+        }
+        Map<Integer, long[]> sold = new HashMap<>(); // productID -> {units, revenue cents}
+        long now = currentMinute();
+        for (long minute = firstMinute(now, window); minute <= now; minute++) {
+            Bucket bucket = existingBucket(minute);
+            if (bucket == null) {
+                continue;
+            }
+            for (Map.Entry<Integer, Tally> entry : bucket.byProduct.entrySet()) {
+                long[] totals = sold.computeIfAbsent(entry.getKey(), id -> new long[2]);
+                totals[0] += entry.getValue().units.sum();
+                totals[1] += entry.getValue().revenueCents.sum();
+            }
+        }
+
+        // Keep the best 'limit' in a min-heap, so the worst of them is the one to beat
+        PriorityQueue<ProductSales> best = new PriorityQueue<>(limit + 1, SalesAnalytics::compareSales);
+        for (Map.Entry<Integer, long[]> entry : sold.entrySet()) {
+            long[] totals = entry.getValue();
+            if (totals[0] <= 0) {
+                continue; // everything sold in the window was cancelled again
+            }
+            best.add(new ProductSales(entry.getKey(), totals[0], totals[1]));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<ProductSales> result = new ArrayList<>(best);
+        result.sort(Collections.reverseOrder(SalesAnalytics::compareSales));
+        return result;
+    }
+
+    // Orders by units, then revenue, then (reversed) productID: smaller is a worse seller
+    private static int compareSales(ProductSales a, ProductSales b) {
+        if (a.getUnits() != b.getUnits()) {
+            return Long.compare(a.getUnits(), b.getUnits());
+        }
+        if (a.getRevenueCents() != b.getRevenueCents()) {
+            return Long.compare(a.getRevenueCents(), b.getRevenueCents());
+        }
+        return Integer.compare(b.getProductID(), a.getProductID());
+    }
+
+    // Adds (sign 1) or takes back (sign -1) the order's lines
+    private void addLines(Order order, int sign) {
+        long orderMillis = order.getOrderDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Bucket bucket = bucketFor(Math.floorDiv(orderMillis, BUCKET_MILLIS));
+        for (int i = 0; i < order.getLineCount(); i++) {
+            int productID = order.getProductID(i);
+            int quantity = sign * order.getQuantity(i);
+            long cents = Money.multiplyCents(order.getUnitPriceCents(i), quantity); // the price paid
+            revenueCents.add(cents);
+            unitsSold.add(quantity);
+            tally(byProduct, productID).add(quantity, cents);
+            if (bucket != null) {
+                tally(bucket.byProduct, productID).add(quantity, cents);
+                bucket.revenueCents.add(cents);
+            }
+        }
+    }
+
+    // Once a product has a tally this is a plain lock-free read
+    private static Tally tally(ConcurrentHashMap<Integer, Tally> tallies, int productID) {
+        Tally tally = tallies.get(productID);
+        return tally != null ? tally : tallies.computeIfAbsent(productID, id -> new Tally());
+    }
+
+    // The bucket for 'minute', starting a fresh one if its ring slot still holds an older
+    // minute; null if the minute is too old to be in any window
+    private Bucket bucketFor(long minute) {
+        if (minute <= currentMinute() - BUCKETS) {
+            return null;
+        }
+        int slot = (int) Math.floorMod(minute, (long) BUCKETS);
+        while (true) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket != null && bucket.minute >= minute) {
+                return bucket.minute == minute ? bucket : null;
+            }
+            Bucket fresh = new Bucket(minute);
+            if (buckets.compareAndSet(slot, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private Bucket existingBucket(long minute) {
+        Bucket bucket = buckets.get((int) Math.floorMod(minute, (long) BUCKETS));
+        return bucket != null && bucket.minute == minute ? bucket : null;
+    }
+
+    private long currentMinute() {
+        return Math.floorDiv(clock.millis(), BUCKET_MILLIS);
+    }
+
+    private static long firstMinute(long now, Duration window) {
+        if (window == null || window.isNegative() || window.isZero() || window.compareTo(MAX_WINDOW) > 0) {
+            throw new IllegalArgumentException("The window must be longer than zero and at most " + MAX_WINDOW.toHours() + " hours.");
+        }
+        long minutes = Math.max(1, window.toMillis() / BUCKET_MILLIS);
+        return now - minutes + 1;
+    }
+
+    private static final class Tally {
+        final LongAdder units = new LongAdder();
+        final LongAdder revenueCents = new LongAdder();
+
+        void add(long quantity, long cents) {
+            units.add(quantity);
+            revenueCents.add(cents);
+        }
+    }
+
+    // One minute of sales
+    private static final class Bucket {
+        final long minute;
+        final ConcurrentHashMap<Integer, Tally> byProduct = new ConcurrentHashMap<>();
+        final LongAdder revenueCents = new LongAdder();
+
+        Bucket(long minute) {
+            this.minute = minute;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.ecommerce.browse;
+
+import com.ecommerce.Money;
+import com.ecommerce.Product;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+// What a shopper is looking for, e.g. "paint set", under $50, in stock:
+//
+//   ProductFilter.any().matching("paint set").priceUpTo(Money.parse("50")).inStockOnly()
+//
+// Filters are immutable; each method returns a new filter with one more condition.
+// See ProductFilterEngine for running one.
+public final class ProductFilter {
+    private static final ProductFilter ANY = new ProductFilter(null, 0, Long.MAX_VALUE, false);
+
+    private final String text;
+    private final long minPriceCents;
+    private final long maxPriceCents;
+    private final boolean inStockOnly;
+
+    private ProductFilter(String text, long minPriceCents, long maxPriceCents, boolean inStockOnly) {
+        this.text = text;
+        this.minPriceCents = minPriceCents;
+        this.maxPriceCents = maxPriceCents;
+        this.inStockOnly = inStockOnly;
+    }
+
+    // Every product
+    public static ProductFilter any() {
+        return ANY;
+    }
+
+    // Only products whose name or description matches every word (as in search)
+    public ProductFilter matching(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            throw new IllegalArgumentException("Please enter a valid name or keyword to search for.");
+        }
+        return new ProductFilter(text.trim(), minPriceCents, maxPriceCents, inStockOnly);
+    }
+
+    // Only products costing at least 'min'
+    public ProductFilter priceFrom(Money min) {
+        if (min == null || min.isNegative()) {
+            throw new IllegalArgumentException("The lowest price can't be empty or negative.");
+        }
+        return withPrices(min.getCents(), maxPriceCents);
+    }
+
+    // Only products costing at most 'max'
+    public ProductFilter priceUpTo(Money max) {
+        if (max == null || max.isNegative()) {
+            throw new IllegalArgumentException("The highest price can't be empty or negative.");
+        }
+        return withPrices(minPriceCents, max.getCents());
+    }
+
+    public ProductFilter inStockOnly() {
+        return new ProductFilter(text, minPriceCents, maxPriceCents, true);
+    }
+
+    private ProductFilter withPrices(long min, long max) {
+        if (min > max) {
+            throw new IllegalArgumentException("The lowest price can't be above the highest price.");
+        }
+        return new ProductFilter(text, min, max, inStockOnly);
+    }
+
+    public String getText() { return text; }
+    public long getMinPriceCents() { return minPriceCents; }
+    public long getMaxPriceCents() { return maxPriceCents; }
+    public boolean isInStockOnly() { return inStockOnly; }
+
+    // Tells filters apart in page cursors: "f" and a 64-bit FNV-1a hash of every condition.
+    // Letter case and extra spaces in the words don't count, as they don't for the search.
+    String fingerprint() {
+        String words = text == null ? "" : text.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        String conditions = words + '\u0000' + minPriceCents + '\u0000' + maxPriceCents
+                + '\u0000' + inStockOnly;
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : conditions.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return "f" + Long.toHexString(hash);
+    }
+
+    // Checks a product as it stands right now
+    boolean accepts(Product product) {
+        long price = product.getPriceCents();
+        return price >= minPriceCents && price <= maxPriceCents && (!inStockOnly || product.isAvailable());
+    }
+}
@@ -0,0 +1,91 @@
+package com.ecommerce.browse;
+
+import com.ecommerce.search.ProductSearchIndex;
+
+import java.util.Arrays;
+import java.util.NavigableSet;
+
+// Runs a ProductFilter as an intersection of indexes instead of a scan of the catalog.
+// Results come cheapest price first (or dearest first), one page at a time, with the same
+// kind of cursor as ProductListingIndex; a cursor carries a fingerprint of its filter and
+// is turned down by any other filter or listing.
+//
+//   - price range (and in stock): a sub-range of the price index, or of its in-stock twin,
+//     found with one seek; a page walks just that page's keys
+//   - with words to match: the search index intersects its posting lists into the sorted
+//     IDs of every match, and each match is checked against the price range and stock
+//     through the listing index's record of it (one hash lookup), then the survivors are
+//     sorted by price. That's proportional to the number of matches, which the search
+//     has already paid for.
+//
+// Both indexes follow the catalog as a listener, and every product on a page is checked
+// once more as it stands when the page is read, so a price change or a sale racing with a
+// query can't put a product on a page it no longer belongs on.
+public class ProductFilterEngine {
+    private final ProductListingIndex listing;
+    private final ProductSearchIndex search;
+
+    public ProductFilterEngine(ProductListingIndex listing, ProductSearchIndex search) {
+        if (listing == null || search == null) {
+            throw new IllegalArgumentException("The filter engine needs a listing index and a search index.");
+        }
+        this.listing = listing;
+        this.search = search;
+    }
+
+    // Up to 'pageSize' products matching 'filter' after 'cursor' (null for the first page)
+    public ProductPage filter(ProductFilter filter, boolean descending, String cursor, int pageSize) {
+        if (filter == null) {
+            throw new IllegalArgumentException("Filter can't be null.");
+        }
+        if (pageSize <= 0 || pageSize > ProductListingIndex.MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + ProductListingIndex.MAX_PAGE_SIZE + ".");
+        }
+        // A cursor only works with the exact filter that made it
+        String scope = filter.fingerprint();
+        ProductListingIndex.ListingKey after = cursor == null ? null
+                : ProductListingIndex.decodeCursor(cursor, ProductSort.PRICE, descending, scope);
+        Iterable<ProductListingIndex.ListingKey> keys = filter.getText() == null
+                ? priceRange(filter, descending, after)
+                : matches(filter, descending, after);
+        return listing.collect(keys, filter::accepts, pageSize, ProductSort.PRICE, descending, scope);
+    }
+
+    private NavigableSet<ProductListingIndex.ListingKey> priceRange(ProductFilter filter, boolean descending,
+                                                                   ProductListingIndex.ListingKey after) {
+        NavigableSet<ProductListingIndex.ListingKey> range = listing.index(ProductSort.PRICE, filter.isInStockOnly()).subSet(
+                new ProductListingIndex.ListingKey(filter.getMinPriceCents(), null, Integer.MIN_VALUE), true,
+                new ProductListingIndex.ListingKey(filter.getMaxPriceCents(), null, Integer.MAX_VALUE), true);
+        if (descending) {
+            range = range.descendingSet();
+        }
+        return after == null ? range : range.tailSet(after, false);
+    }
+
+    private Iterable<ProductListingIndex.ListingKey> matches(ProductFilter filter, boolean descending,
+                                                            ProductListingIndex.ListingKey after) {
+        int[] productIDs = search.matchingIDs(filter.getText());
+        ProductListingIndex.ListingKey[] keys = new ProductListingIndex.ListingKey[productIDs.length];
+        int count = 0;
+        for (int productID : productIDs) {
+            ProductListingIndex.IndexedProduct indexed = listing.indexed(productID);
+            if (indexed == null || (filter.isInStockOnly() && !indexed.available)) {
+                continue;
+            }
+            ProductListingIndex.ListingKey key = indexed.keys[ProductSort.PRICE.ordinal()];
+            if (key.number < filter.getMinPriceCents() || key.number > filter.getMaxPriceCents()) {
+                continue;
+            }
+            if (after != null) {
+                int order = ProductListingIndex.ListingKey.ORDER.compare(key, after);
+                if (descending ? order >= 0 : order <= 0) {
+                    continue; // on an earlier page
+                }
+            }
+            keys[count++] = key;
+        }
+        keys = Arrays.copyOf(keys, count);
+        Arrays.sort(keys, descending ? ProductListingIndex.ListingKey.ORDER.reversed() : ProductListingIndex.ListingKey.ORDER);
+        return Arrays.asList(keys);
+    }
+}
@@ -0,0 +1,387 @@
+package com.ecommerce.browse;
+
+import com.ecommerce.Product;
+import com.ecommerce.ProductCatalog;
+import com.ecommerce.ProductChange;
+import com.ecommerce.ProductListener;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+
+// The catalog one page at a time, sorted by ID, price, name or stock, optionally only the
+// products that are in stock.
+//
+// Each sort order has its own sorted index (a ConcurrentSkipListSet of keys such as
+// (price, productID)), and ID, price and name also have a second index holding only the
+// products in stock; in-stock by stock is simply the part of the stock index above zero.
+// A page starts from its cursor with one O(log n) seek, then walks 'pageSize' keys, so
+// every page costs the same however big the catalog is.
+//
+// A cursor is the key of the last product on the previous page, not a position, so
+// products being added or removed while someone pages through never shift the rest along:
+// nothing is skipped or shown twice because of them. A product whose price (or name, or
+// stock) changes part way through simply turns up in its new place.
+//
+// It indexes the catalog's current products when it's made; register it with
+// ProductCatalog.addListener and it stays in sync on its own, including stock changes
+// from checkouts. Updates to one product are applied one at a time (in
+// ConcurrentHashMap.compute), and only the indexes whose keys changed are touched.
+//
+// Stock changes come from every checkout line, so they take a cheaper path that
+// allocates nothing and takes no lock in the common case. The in-stock indexes are only
+// touched when a product sells out or comes back. Moving the product in the stock-sorted
+// index is put off: the product is queued (once, however many sales happen meanwhile) and
+// the queue is worked off just before a page sorted by stock is read, so those pages are
+// still in the right order.
+public class ProductListingIndex implements ProductListener {
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final int SORTS = ProductSort.values().length;
+    private static final VarHandle STOCK_QUEUED;
+
+    static {
+        try {
+            STOCK_QUEUED = MethodHandles.lookup().findVarHandle(IndexedProduct.class, "stockQueued", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final ProductCatalog catalog;
+    private final ConcurrentHashMap<Integer, IndexedProduct> indexed = new ConcurrentHashMap<>();
+    private final NavigableSet<ListingKey>[] all = newIndexes();
+    private final NavigableSet<ListingKey>[] inStock = newIndexes();
+    // Products whose stock key is out of date; each is in here at most once (see IndexedProduct.stockQueued)
+    private final ConcurrentLinkedQueue<Product> staleStock = new ConcurrentLinkedQueue<>();
+
+    // Indexes the products already in 'catalog' in one go; then register the index with
+    // ProductCatalog.addListener to follow changes
+    public ProductListingIndex(ProductCatalog catalog) {
+        if (catalog == null) {
+            throw new IllegalArgumentException("Product catalog can't be null.");
+        }
+        this.catalog = catalog;
+        bulkLoad();
+    }
+
+    // Sorting the keys first and adding them in order is several times faster than adding
+    // them one product at a time: each insert lands next to the last one
+    private void bulkLoad() {
+        List<List<ListingKey>> allKeys = new ArrayList<>();
+        List<List<ListingKey>> inStockKeys = new ArrayList<>();
+        for (int i = 0; i < SORTS; i++) {
+            allKeys.add(new ArrayList<>(catalog.size()));
+            inStockKeys.add(new ArrayList<>());
+        }
+        for (Product product : catalog.products()) {
+            IndexedProduct fresh = new IndexedProduct(product);
+            indexed.put(product.getProductID(), fresh);
+            for (ProductSort sort : ProductSort.values()) {
+                allKeys.get(sort.ordinal()).add(fresh.keys[sort.ordinal()]);
+                if (fresh.available && sort != ProductSort.STOCK) {
+                    inStockKeys.get(sort.ordinal()).add(fresh.keys[sort.ordinal()]);
+                }
+            }
+        }
+        for (int i = 0; i < SORTS; i++) {
+            addSorted(all[i], allKeys.get(i));
+            addSorted(inStock[i], inStockKeys.get(i));
+        }
+    }
+
+    private static void addSorted(NavigableSet<ListingKey> index, List<ListingKey> keys) {
+        ListingKey[] sorted = keys.toArray(new ListingKey[0]);
+        keys.clear();
+        Arrays.parallelSort(sorted, ListingKey.ORDER);
+        for (ListingKey key : sorted) {
+            index.add(key);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static NavigableSet<ListingKey>[] newIndexes() {
+        NavigableSet<ListingKey>[] indexes = new NavigableSet[SORTS];
+        for (int i = 0; i < SORTS; i++) {
+            indexes[i] = new ConcurrentSkipListSet<>(ListingKey.ORDER);
+        }
+        return indexes;
+    }
+
+    public int size() {
+        return indexed.size();
+    }
+
+    // Up to 'pageSize' products after 'cursor' (null for the first page). The cursor must
+    // come from a page with the same sort, direction and filter.
+    public ProductPage page(ProductSort sort, boolean descending, boolean inStockOnly, String cursor, int pageSize) {
+        if (sort == null) {
+            throw new IllegalArgumentException("Sort order cannot be empty.");
+        }
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        if (sort == ProductSort.STOCK) {
+            refreshStockKeys();
+        }
+        NavigableSet<ListingKey> index = index(sort, inStockOnly);
+        if (descending) {
+            index = index.descendingSet();
+        }
+        if (cursor != null) {
+            index = index.tailSet(decodeCursor(cursor, sort, descending, listingScope(inStockOnly)), false);
+        }
+        Predicate<Product> accept = inStockOnly ? Product::isAvailable : product -> true;
+        return collect(index, accept, pageSize, sort, descending, listingScope(inStockOnly));
+    }
+
+    // Takes up to 'pageSize' products from 'keys', in order, skipping any that 'accept'
+    // turns down as the product stands right now (it may have changed since it was indexed).
+    // 'scope' names the listing or filter the next page's cursor is only good for.
+    ProductPage collect(Iterable<ListingKey> keys, Predicate<Product> accept, int pageSize,
+                        ProductSort sort, boolean descending, String scope) {
+        List<Product> products = new ArrayList<>(pageSize);
+        ListingKey last = null;
+        Iterator<ListingKey> iterator = keys.iterator();
+        while (iterator.hasNext()) {
+            ListingKey key = iterator.next();
+            if (products.size() == pageSize) {
+                return new ProductPage(products, encodeCursor(last, sort, descending, scope));
+            }
+            Product product = catalog.get(key.productID);
+            if (product == null || !accept.test(product)) {
+                continue; // removed, or changed, a moment ago; its keys are on their way out
+            }
+            products.add(product);
+            last = key;
+        }
+        return new ProductPage(products, null);
+    }
+
+    // What was last indexed for a product, or null if it isn't in the catalog
+    IndexedProduct indexed(int productID) {
+        return indexed.get(productID);
+    }
+
+    NavigableSet<ListingKey> index(ProductSort sort, boolean inStockOnly) {
+        if (!inStockOnly) {
+            return all[sort.ordinal()];
+        }
+        if (sort == ProductSort.STOCK) {
+            // Everything with at least one in stock
+            return all[sort.ordinal()].tailSet(new ListingKey(0, null, Integer.MAX_VALUE), false);
+        }
+        return inStock[sort.ordinal()];
+    }
+
+    @Override
+    public void productAdded(Product product) {
+        update(product); // may replace a product with the same ID
+    }
+
+    @Override
+    public void productRemoved(Product product) {
+        indexed.compute(product.getProductID(), (id, old) -> {
+            if (old != null) {
+                for (ProductSort sort : ProductSort.values()) {
+                    unlink(sort, old);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void productChanged(Product product, ProductChange change) {
+        if (change == ProductChange.STOCK) {
+            stockChanged(product);
+        } else if (change != ProductChange.DESCRIPTION) {
+            update(product);
+        }
+    }
+
+    // On the checkout path: no allocation or lock unless the product just sold out or came
+    // back, or its stock key wasn't queued for a refresh yet
+    private void stockChanged(Product product) {
+        IndexedProduct current = indexed.get(product.getProductID());
+        if (current == null) {
+            return; // removed a moment ago
+        }
+        // Whoever writes the flag checks again afterwards, so a sale or return that
+        // happened while another thread was writing it is never lost
+        while (current.available != product.isAvailable()) {
+            current = indexed.computeIfPresent(product.getProductID(), (id, indexedProduct) -> {
+                setAvailable(indexedProduct, product.isAvailable());
+                return indexedProduct;
+            });
+            if (current == null) {
+                return;
+            }
+        }
+        if (!current.stockQueued && STOCK_QUEUED.compareAndSet(current, false, true)) {
+            staleStock.add(product);
+        }
+    }
+
+    private void setAvailable(IndexedProduct product, boolean available) {
+        if (product.available == available) {
+            return;
+        }
+        for (ProductSort sort : ProductSort.values()) {
+            if (sort == ProductSort.STOCK) {
+                continue; // in-stock by stock is a view of the stock index
+            }
+            if (available) {
+                inStock[sort.ordinal()].add(product.keys[sort.ordinal()]);
+            } else {
+                inStock[sort.ordinal()].remove(product.keys[sort.ordinal()]);
+            }
+        }
+        product.available = available;
+    }
+
+    // Moves every queued product to its current place in the stock index
+    private void refreshStockKeys() {
+        Product product;
+        while ((product = staleStock.poll()) != null) {
+            Product stale = product;
+            indexed.computeIfPresent(stale.getProductID(), (id, indexedProduct) -> {
+                // Cleared before the stock is read, so a sale from now on queues it again
+                indexedProduct.stockQueued = false;
+                ListingKey oldKey = indexedProduct.keys[ProductSort.STOCK.ordinal()];
+                int stock = stale.getStock();
+                if (oldKey.number != stock) {
+                    ListingKey newKey = new ListingKey(stock, null, oldKey.productID);
+                    all[ProductSort.STOCK.ordinal()].add(newKey); // as in update: add first, then drop
+                    all[ProductSort.STOCK.ordinal()].remove(oldKey);
+                    indexedProduct.keys[ProductSort.STOCK.ordinal()] = newKey;
+                }
+                return indexedProduct;
+            });
+        }
+    }
+
+    // Re-reads the product inside compute, so when two changes race the later read wins
+    private void update(Product product) {
+        indexed.compute(product.getProductID(), (id, old) -> {
+            IndexedProduct fresh = new IndexedProduct(product);
+            for (ProductSort sort : ProductSort.values()) {
+                ListingKey oldKey = old == null ? null : old.keys[sort.ordinal()];
+                ListingKey newKey = fresh.keys[sort.ordinal()];
+                boolean keyChanged = oldKey == null || ListingKey.ORDER.compare(oldKey, newKey) != 0;
+                boolean stockChanged = old == null || old.available != fresh.available;
+                if (!keyChanged && !stockChanged) {
+                    continue;
+                }
+                // Add the new key before dropping the old one: a page read at this very moment
+                // may list the product twice, but never loses it
+                all[sort.ordinal()].add(newKey);
+                if (fresh.available && sort != ProductSort.STOCK) {
+                    inStock[sort.ordinal()].add(newKey);
+                }
+                if (old != null) {
+                    if (keyChanged) {
+                        all[sort.ordinal()].remove(oldKey);
+                    }
+                    if (old.available && (keyChanged || !fresh.available)) {
+                        inStock[sort.ordinal()].remove(oldKey);
+                    }
+                }
+            }
+            return fresh;
+        });
+    }
+
+    private void unlink(ProductSort sort, IndexedProduct product) {
+        all[sort.ordinal()].remove(product.keys[sort.ordinal()]);
+        inStock[sort.ordinal()].remove(product.keys[sort.ordinal()]);
+    }
+
+    // The scope of a plain listing's cursors: in stock only or not. ProductFilterEngine
+    // uses a fingerprint of the whole filter instead, so the two never accept each other's.
+    static String listingScope(boolean inStockOnly) {
+        return inStockOnly ? "s" : "x";
+    }
+
+    // Cursors are opaque to callers: sort, direction, scope (the filter) and the last key,
+    // base64-encoded. 'scope' must not contain '|'.
+    static String encodeCursor(ListingKey last, ProductSort sort, boolean descending, String scope) {
+        String text = sort.name() + '|' + (descending ? 'd' : 'a') + '|' + scope + '|'
+                + last.number + '|' + last.productID + '|' + (last.text == null ? "" : last.text);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static ListingKey decodeCursor(String cursor, ProductSort sort, boolean descending, String scope) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8).split("\\|", 6);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("That page cursor isn't valid. Start again from the first page.");
+        }
+        if (parts.length != 6) {
+            throw new IllegalArgumentException("That page cursor isn't valid. Start again from the first page.");
+        }
+        if (!parts[0].equals(sort.name()) || !parts[1].equals(descending ? "d" : "a")
+                || !parts[2].equals(scope)) {
+            throw new IllegalArgumentException("That page cursor belongs to a different sort order or filter.");
+        }
+        try {
+            return new ListingKey(Long.parseLong(parts[3]), sort == ProductSort.NAME ? parts[5] : null,
+                    Integer.parseInt(parts[4]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("That page cursor isn't valid. Start again from the first page.");
+        }
+    }
+
+    // A product's place in each index, as of the last time it was indexed. keys and
+    // available only change inside ConcurrentHashMap.compute for the product; the stock key
+    // may lag behind the product's stock while stockQueued is set.
+    static final class IndexedProduct {
+        final ListingKey[] keys = new ListingKey[SORTS];
+        volatile boolean available;
+        volatile boolean stockQueued;
+
+        IndexedProduct(Product product) {
+            int productID = product.getProductID();
+            int stock = product.getStock();
+            keys[ProductSort.ID.ordinal()] = new ListingKey(productID, null, productID);
+            keys[ProductSort.PRICE.ordinal()] = new ListingKey(product.getPriceCents(), null, productID);
+            keys[ProductSort.NAME.ordinal()] = new ListingKey(0, product.getName().toLowerCase(Locale.ROOT), productID);
+            keys[ProductSort.STOCK.ordinal()] = new ListingKey(stock, null, productID);
+            available = stock > 0;
+        }
+    }
+
+    // (number, text, productID); only name keys have text. The productID breaks ties, so
+    // every key is unique and a cursor names exactly one spot.
+    static final class ListingKey {
+        static final Comparator<ListingKey> ORDER = (a, b) -> {
+            int result = Long.compare(a.number, b.number);
+            if (result == 0 && a.text != null && b.text != null) {
+                result = a.text.compareTo(b.text);
+            }
+            return result != 0 ? result : Integer.compare(a.productID, b.productID);
+        };
+
+        final long number;
+        final String text;
+        final int productID;
+
+        ListingKey(long number, String text, int productID) {
+            this.number = number;
+            this.text = text;
+            this.productID = productID;
+        }
+    }
+}
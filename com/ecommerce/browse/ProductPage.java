@@ -0,0 +1,22 @@
+package com.ecommerce.browse;
+
+import com.ecommerce.Product;
+
+import java.util.Collections;
+import java.util.List;
+
+// One page of a product listing. Pass getNextCursor() back to ProductListingIndex.page
+// (with the same sort and filter) for the page after it; it's null on the last page.
+public final class ProductPage {
+    private final List<Product> products;
+    private final String nextCursor;
+
+    ProductPage(List<Product> products, String nextCursor) {
+        this.products = Collections.unmodifiableList(products);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Product> getProducts() { return products; }
+    public String getNextCursor() { return nextCursor; }
+    public boolean hasNext() { return nextCursor != null; }
+}
@@ -0,0 +1,38 @@
+package com.ecommerce.browse;
+
+import java.util.Locale;
+
+// The orders a product listing can come in (see ProductListingIndex)
+public enum ProductSort {
+    ID("ID"),
+    PRICE("Price"),
+    NAME("Name"),
+    STOCK("Stock");
+
+    private final String displayName;
+
+    ProductSort(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() { return displayName; }
+
+    public static ProductSort parse(String sort) {
+        if (sort == null || sort.trim().isEmpty()) {
+            throw new IllegalArgumentException("Sort order cannot be empty.");
+        }
+        switch (sort.trim().toLowerCase(Locale.ROOT)) {
+            case "id": return ID;
+            case "price": return PRICE;
+            case "name": return NAME;
+            case "stock": return STOCK;
+            default:
+                throw new IllegalArgumentException("Invalid sort order. Valid options are: id, price, name, stock");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,262 @@
+package com.ecommerce.http;
+
+import com.ecommerce.Customer;
+import com.ecommerce.Money;
+import com.ecommerce.Product;
+import com.ecommerce.analytics.CustomerValue;
+import com.ecommerce.analytics.ProductSales;
+import com.ecommerce.analytics.SalesAnalytics;
+import com.ecommerce.browse.ProductPage;
+import com.ecommerce.orders.Order;
+import com.ecommerce.orders.OrderStatus;
+import com.ecommerce.service.CartSnapshot;
+import com.ecommerce.session.Session;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+// Writes the API's responses as JSON. Hand-rolled because the project has no dependencies;
+// money is written as a string ("85.50") so clients never see floating-point rounding.
+final class Json {
+    private Json() { }
+
+    static String product(Product product) {
+        StringBuilder out = new StringBuilder(160);
+        appendProduct(out, product);
+        return out.toString();
+    }
+
+    // 'product' gives each product's JSON (e.g. from a ProductViewCache)
+    static String products(List<Product> products, Function<Product, String> product) {
+        StringBuilder out = new StringBuilder(64 + products.size() * 160);
+        out.append('[');
+        for (int i = 0; i < products.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(product.apply(products.get(i)));
+        }
+        return out.append(']').toString();
+    }
+
+    // {"products":[...],"nextCursor":"..."}, with a null cursor on the last page
+    static String productPage(ProductPage page, Function<Product, String> product) {
+        StringBuilder out = new StringBuilder(96);
+        out.append("{\"products\":").append(products(page.getProducts(), product));
+        out.append(",\"nextCursor\":");
+        if (page.hasNext()) {
+            appendString(out, page.getNextCursor());
+        } else {
+            out.append("null");
+        }
+        return out.append('}').toString();
+    }
+
+    static String customer(Customer customer) {
+        StringBuilder out = new StringBuilder(96);
+        out.append("{\"customerID\":").append(customer.getCustomerID());
+        out.append(",\"name\":");
+        appendString(out, customer.getName());
+        out.append(",\"email\":");
+        appendString(out, customer.getEmail());
+        return out.append('}').toString();
+    }
+
+    static String session(Session session) {
+        StringBuilder out = new StringBuilder(160);
+        out.append("{\"token\":");
+        appendString(out, session.getToken());
+        out.append(",\"customer\":").append(customer(session.getCustomer()));
+        return out.append('}').toString();
+    }
+
+    static String cart(CartSnapshot cart) {
+        StringBuilder out = new StringBuilder(64 + cart.size() * 128);
+        out.append("{\"items\":[");
+        for (int i = 0; i < cart.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            Product product = cart.getProduct(i);
+            out.append("{\"item\":").append(i + 1);
+            out.append(",\"productID\":").append(product.getProductID());
+            out.append(",\"name\":");
+            appendString(out, product.getName());
+            out.append(",\"price\":\"").append(Money.format(product.getPriceCents())).append('"');
+            out.append(",\"quantity\":").append(cart.getQuantity(i));
+            out.append(",\"subtotal\":\"").append(Money.format(cart.getSubtotalCents(i))).append("\"}");
+        }
+        out.append("],\"total\":\"").append(Money.format(cart.getTotalCents())).append("\"}");
+        return out.toString();
+    }
+
+    // Orders keep only product IDs; names come from 'products' (null once a product is no longer sold)
+    static String order(Order order, IntFunction<Product> products) {
+        StringBuilder out = new StringBuilder(256);
+        appendOrder(out, order, products);
+        return out.toString();
+    }
+
+    static String orders(List<Order> orders, IntFunction<Product> products) {
+        StringBuilder out = new StringBuilder(64 + orders.size() * 256);
+        out.append('[');
+        for (int i = 0; i < orders.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendOrder(out, orders.get(i), products);
+        }
+        return out.append(']').toString();
+    }
+
+    static String analytics(SalesAnalytics analytics, Duration window, int limit) {
+        List<ProductSales> topSellers = analytics.topSellers(window, limit);
+        StringBuilder out = new StringBuilder(256 + topSellers.size() * 64);
+        out.append("{\"orders\":").append(analytics.getOrderCount());
+        out.append(",\"unitsSold\":").append(analytics.getUnitsSold());
+        out.append(",\"revenue\":\"").append(Money.format(analytics.getRevenueCents())).append('"');
+        out.append(",\"ordersByStatus\":{");
+        OrderStatus[] statuses = OrderStatus.values();
+        for (int i = 0; i < statuses.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendString(out, statuses[i].getDisplayName());
+            out.append(':').append(analytics.getOrderCount(statuses[i]));
+        }
+        out.append("},\"window\":{\"minutes\":").append(window.toMinutes());
+        out.append(",\"revenue\":\"").append(Money.format(analytics.windowRevenueCents(window))).append('"');
+        out.append(",\"topSellers\":[");
+        for (int i = 0; i < topSellers.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            ProductSales sales = topSellers.get(i);
+            out.append("{\"productID\":").append(sales.getProductID());
+            out.append(",\"units\":").append(sales.getUnits());
+            out.append(",\"revenue\":\"").append(Money.format(sales.getRevenueCents())).append("\"}");
+        }
+        return out.append("]}}").toString();
+    }
+
+    static String productSales(SalesAnalytics analytics, int productID) {
+        return "{\"productID\":" + productID + ",\"unitsSold\":" + analytics.getProductUnitsSold(productID)
+                + ",\"revenue\":\"" + Money.format(analytics.getProductRevenueCents(productID)) + "\"}";
+    }
+
+    static String revenueByDay(SortedMap<LocalDate, Long> revenue) {
+        StringBuilder out = new StringBuilder(16 + revenue.size() * 40);
+        out.append('[');
+        for (Map.Entry<LocalDate, Long> day : revenue.entrySet()) {
+            if (out.length() > 1) {
+                out.append(',');
+            }
+            out.append("{\"date\":\"").append(day.getKey());
+            out.append("\",\"revenue\":\"").append(Money.format(day.getValue())).append("\"}");
+        }
+        return out.append(']').toString();
+    }
+
+    // The last entry counts baskets of that many units or more
+    static String basketSizes(long[] counts) {
+        StringBuilder out = new StringBuilder(16 + counts.length * 32);
+        out.append('[');
+        for (int units = 0; units < counts.length; units++) {
+            if (units > 0) {
+                out.append(',');
+            }
+            out.append("{\"units\":").append(units);
+            if (units == counts.length - 1) {
+                out.append(",\"orMore\":true");
+            }
+            out.append(",\"orders\":").append(counts[units]).append('}');
+        }
+        return out.append(']').toString();
+    }
+
+    static String customerValues(List<CustomerValue> customers) {
+        StringBuilder out = new StringBuilder(16 + customers.size() * 64);
+        out.append('[');
+        for (int i = 0; i < customers.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            CustomerValue value = customers.get(i);
+            out.append("{\"customerID\":").append(value.getCustomerID());
+            out.append(",\"orders\":").append(value.getOrders());
+            out.append(",\"revenue\":\"").append(Money.format(value.getRevenueCents())).append("\"}");
+        }
+        return out.append(']').toString();
+    }
+
+    static String error(String message) {
+        StringBuilder out = new StringBuilder(64);
+        out.append("{\"error\":");
+        appendString(out, message);
+        return out.append('}').toString();
+    }
+
+    private static void appendProduct(StringBuilder out, Product product) {
+        out.append("{\"productID\":").append(product.getProductID());
+        out.append(",\"name\":");
+        appendString(out, product.getName());
+        out.append(",\"price\":\"").append(Money.format(product.getPriceCents())).append('"');
+        out.append(",\"description\":");
+        appendString(out, product.getDescription());
+        out.append(",\"stock\":").append(product.getStock());
+        out.append('}');
+    }
+
+    private static void appendOrder(StringBuilder out, Order order, IntFunction<Product> products) {
+        out.append("{\"orderID\":").append(order.getOrderID());
+        out.append(",\"customerID\":").append(order.getCustomer().getCustomerID());
+        out.append(",\"status\":");
+        appendString(out, order.getStatus().getDisplayName());
+        out.append(",\"orderDate\":");
+        appendString(out, order.getOrderDate().toString());
+        out.append(",\"items\":[");
+        for (int i = 0; i < order.getLineCount(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            Product product = products.apply(order.getProductID(i));
+            out.append("{\"productID\":").append(order.getProductID(i));
+            out.append(",\"name\":");
+            if (product != null) {
+                appendString(out, product.getName());
+            } else {
+                out.append("null");
+            }
+            out.append(",\"price\":\"").append(Money.format(order.getUnitPriceCents(i))).append('"');
+            out.append(",\"quantity\":").append(order.getQuantity(i));
+            out.append(",\"subtotal\":\"").append(Money.format(order.getLineTotalCents(i))).append("\"}");
+        }
+        out.append("],\"total\":\"").append(Money.format(order.getOrderTotalCents())).append("\"}");
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,505 @@
+package com.ecommerce.http;
+
+import com.ecommerce.Customer;
+import com.ecommerce.Money;
+import com.ecommerce.Product;
+import com.ecommerce.ProductViewCache;
+import com.ecommerce.browse.ProductFilter;
+import com.ecommerce.browse.ProductPage;
+import com.ecommerce.browse.ProductSort;
+import com.ecommerce.orders.Order;
+import com.ecommerce.orders.OrderStatus;
+import com.ecommerce.service.StoreService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Maps HTTP requests onto StoreService. Parameters come from the query string or from a
+// form-encoded body (application/x-www-form-urlencoded); responses are JSON.
+//
+//   GET    /products                          one page of products; sort (id, price, name, stock),
+//                                             order (asc, desc), inStock (true/false), limit
+//                                             (default 50), cursor (nextCursor of the page before)
+//   GET    /products/{id}                     one product
+//   GET    /search?q=...&limit=...            search names and descriptions
+//   GET    /filter                            one page of products by price; any of q (words to
+//                                             match), minPrice, maxPrice, inStock, plus order,
+//                                             limit (default 50) and cursor as for /products
+//   POST   /customers           name, email   register (each email address once)
+//   GET    /customers?email=...               find a customer by email address (to log in)
+//   GET    /customers/{id}                    one customer
+//   POST   /sessions            email         log in; returns a token and the customer. There
+//                                             are no passwords: the email address is enough.
+//   GET    /sessions/{token}                  the logged-in customer
+//   DELETE /sessions/{token}                  log out
+//   GET    /sessions/{token}/cart             the customer's cart
+//   POST   /sessions/{token}/cart productID, quantity
+//   PUT    /sessions/{token}/cart/{item}      quantity (items are numbered from 1, as on screen)
+//   DELETE /sessions/{token}/cart/{item}      remove one item
+//   DELETE /sessions/{token}/cart             clear the cart
+//   POST   /sessions/{token}/checkout         place the order
+//   GET    /orders                            latest orders, newest first; narrow with
+//                                             customerID, status, from/to (ISO date-times), limit
+//   GET    /orders/{id}                       one order
+//   POST   /orders/{id}/status  status        change an order's status
+//   GET    /analytics                         sales totals, orders per status and top sellers;
+//                                             windowMinutes (default 60, up to a day), limit
+//   GET    /analytics/products/{id}           one product's units sold and revenue
+//   GET    /reports/revenue-by-day            revenue per day over the whole order history
+//   GET    /reports/basket-sizes              orders by number of units; maxUnits (default 20)
+//   GET    /reports/top-customers             biggest spenders; limit (default 10)
+//   GET    /metrics                           call counts, failures and latency percentiles in
+//                                             the Prometheus text format (not JSON)
+//
+// Bad requests get 400, unknown things 404, and failures to save 503, each with {"error": "..."}.
+class StorefrontHandler implements HttpHandler {
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int DEFAULT_ORDER_LIMIT = 100;
+    private static final int DEFAULT_PRODUCT_PAGE_SIZE = 50;
+    private static final int DEFAULT_WINDOW_MINUTES = 60;
+    private static final int DEFAULT_TOP_SELLER_LIMIT = 10;
+    private static final int DEFAULT_MAX_BASKET_UNITS = 20;
+    private static final int DEFAULT_TOP_CUSTOMER_LIMIT = 10;
+
+    private final StoreService store;
+    private final ProductViewCache viewCache;
+    private final ProductViewCache.View productJson;
+
+    StorefrontHandler(StoreService store) {
+        this.store = store;
+        this.viewCache = store.getViewCache();
+        this.productJson = viewCache.view(Json::product);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            String[] path = splitPath(exchange.getRequestURI().getRawPath());
+            Map<String, String> params = readParams(exchange);
+            route(exchange, exchange.getRequestMethod(), path, params);
+        } catch (NotFound e) {
+            send(exchange, 404, Json.error(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, Json.error(e.getMessage()));
+        } catch (IllegalStateException e) {
+            send(exchange, 503, Json.error(e.getMessage()));
+        } catch (RuntimeException e) {
+            send(exchange, 500, Json.error("An unexpected error occurred."));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange, String method, String[] path, Map<String, String> params) throws IOException {
+        if (path.length == 0) {
+            throw new NotFound("Nothing here. Try /products.");
+        }
+        switch (path[0]) {
+            case "products":
+                if (path.length == 1 && method.equals("GET")) {
+                    send(exchange, 200, Json.productPage(productPage(params), this::productJson));
+                    return;
+                }
+                if (path.length == 2 && method.equals("GET")) {
+                    send(exchange, 200, productJson(product(path[1])));
+                    return;
+                }
+                break;
+            case "search":
+                if (path.length == 1 && method.equals("GET")) {
+                    int limit = params.containsKey("limit") ? intParam(params, "limit") : StoreService.DEFAULT_SEARCH_LIMIT;
+                    if (limit <= 0) {
+                        throw new IllegalArgumentException("'limit' must be at least 1.");
+                    }
+                    send(exchange, 200, Json.products(store.searchProducts(params.get("q"), limit), this::productJson));
+                    return;
+                }
+                break;
+            case "filter":
+                if (path.length == 1 && method.equals("GET")) {
+                    send(exchange, 200, Json.productPage(filterProducts(params), this::productJson));
+                    return;
+                }
+                break;
+            case "customers":
+                routeCustomers(exchange, method, path, params);
+                return;
+            case "sessions":
+                routeSessions(exchange, method, path, params);
+                return;
+            case "orders":
+                if (path.length == 1 && method.equals("GET")) {
+                    send(exchange, 200, Json.orders(findOrders(params), store::productForDisplay));
+                    return;
+                }
+                if (path.length == 2 && method.equals("GET")) {
+                    send(exchange, 200, Json.order(order(path[1]), store::productForDisplay));
+                    return;
+                }
+                if (path.length == 3 && path[2].equals("status") && method.equals("POST")) {
+                    Order order = store.updateOrderStatus(order(path[1]).getOrderID(), OrderStatus.parse(requiredParam(params, "status")));
+                    send(exchange, 200, Json.order(order, store::productForDisplay));
+                    return;
+                }
+                break;
+            case "analytics":
+                if (path.length == 1 && method.equals("GET")) {
+                    int minutes = params.containsKey("windowMinutes") ? intParam(params, "windowMinutes") : DEFAULT_WINDOW_MINUTES;
+                    int limit = params.containsKey("limit") ? intParam(params, "limit") : DEFAULT_TOP_SELLER_LIMIT;
+                    if (minutes <= 0) {
+                        throw new IllegalArgumentException("'windowMinutes' must be at least 1.");
+                    }
+                    send(exchange, 200, Json.analytics(store.getAnalytics(), Duration.ofMinutes(minutes), limit));
+                    return;
+                }
+                if (path.length == 3 && path[1].equals("products") && method.equals("GET")) {
+                    send(exchange, 200, Json.productSales(store.getAnalytics(), product(path[2]).getProductID()));
+                    return;
+                }
+                break;
+            case "metrics":
+                if (path.length == 1 && method.equals("GET")) {
+                    send(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", store.metricsText());
+                    return;
+                }
+                break;
+            case "reports":
+                if (path.length == 2 && method.equals("GET")) {
+                    routeReport(exchange, path[1], params);
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        throw new NotFound("No " + method + " " + String.join("/", path) + " in this API.");
+    }
+
+    private ProductPage productPage(Map<String, String> params) {
+        ProductSort sort = params.containsKey("sort") ? ProductSort.parse(params.get("sort")) : ProductSort.ID;
+        int limit = params.containsKey("limit") ? intParam(params, "limit") : DEFAULT_PRODUCT_PAGE_SIZE;
+        return store.productPage(sort, descending(params), booleanParam(params, "inStock"), params.get("cursor"), limit);
+    }
+
+    private ProductPage filterProducts(Map<String, String> params) {
+        ProductFilter filter = ProductFilter.any();
+        if (params.containsKey("q")) {
+            filter = filter.matching(params.get("q"));
+        }
+        if (params.containsKey("minPrice")) {
+            filter = filter.priceFrom(Money.parse(params.get("minPrice")));
+        }
+        if (params.containsKey("maxPrice")) {
+            filter = filter.priceUpTo(Money.parse(params.get("maxPrice")));
+        }
+        if (booleanParam(params, "inStock")) {
+            filter = filter.inStockOnly();
+        }
+        int limit = params.containsKey("limit") ? intParam(params, "limit") : DEFAULT_PRODUCT_PAGE_SIZE;
+        return store.filterProducts(filter, descending(params), params.get("cursor"), limit);
+    }
+
+    private static boolean descending(Map<String, String> params) {
+        String order = params.getOrDefault("order", "asc").trim().toLowerCase(Locale.ROOT);
+        if (!order.equals("asc") && !order.equals("desc")) {
+            throw new IllegalArgumentException("'order' must be asc or desc.");
+        }
+        return order.equals("desc");
+    }
+
+    // A product's JSON, formatted again only after the product changes
+    private String productJson(Product product) {
+        return viewCache.render(product, productJson);
+    }
+
+    private void routeReport(HttpExchange exchange, String report, Map<String, String> params) throws IOException {
+        switch (report) {
+            case "revenue-by-day":
+                send(exchange, 200, Json.revenueByDay(store.revenueByDay()));
+                return;
+            case "basket-sizes":
+                int maxUnits = params.containsKey("maxUnits") ? intParam(params, "maxUnits") : DEFAULT_MAX_BASKET_UNITS;
+                send(exchange, 200, Json.basketSizes(store.basketSizes(maxUnits)));
+                return;
+            case "top-customers":
+                int limit = params.containsKey("limit") ? intParam(params, "limit") : DEFAULT_TOP_CUSTOMER_LIMIT;
+                send(exchange, 200, Json.customerValues(store.topCustomers(limit)));
+                return;
+            default:
+                throw new NotFound("No report called '" + report + "'. Try revenue-by-day, basket-sizes or top-customers.");
+        }
+    }
+
+    private void routeCustomers(HttpExchange exchange, String method, String[] path, Map<String, String> params) throws IOException {
+        if (path.length == 1 && method.equals("POST")) {
+            Customer customer = store.registerCustomer(requiredParam(params, "name"), requiredParam(params, "email"));
+            send(exchange, 201, Json.customer(customer));
+            return;
+        }
+        if (path.length == 1 && method.equals("GET")) {
+            Customer customer = store.findCustomerByEmail(requiredParam(params, "email"));
+            if (customer == null) {
+                throw new NotFound("No customer with that email address.");
+            }
+            send(exchange, 200, Json.customer(customer));
+            return;
+        }
+        if (path.length < 2) {
+            throw new NotFound("No " + method + " /customers in this API.");
+        }
+        Customer customer = customer(path[1]);
+        if (path.length == 2 && method.equals("GET")) {
+            send(exchange, 200, Json.customer(customer));
+            return;
+        }
+        // Carts and checkout need the session token, so knowing an ID isn't enough to shop as someone
+        throw new NotFound("No " + method + " " + String.join("/", path) + " in this API. Log in at /sessions and use /sessions/{token} instead.");
+    }
+
+    private void routeSessions(HttpExchange exchange, String method, String[] path, Map<String, String> params) throws IOException {
+        if (path.length == 1 && method.equals("POST")) {
+            Customer customer = store.findCustomerByEmail(requiredParam(params, "email"));
+            if (customer == null) {
+                throw new NotFound("No customer with that email address.");
+            }
+            send(exchange, 201, Json.session(store.startSession(customer)));
+            return;
+        }
+        if (path.length < 2) {
+            throw new NotFound("No " + method + " /sessions in this API.");
+        }
+        Customer customer = store.resumeSession(path[1]);
+        if (customer == null) {
+            throw new NotFound("That session has expired or doesn't exist. Please log in again.");
+        }
+        if (path.length == 2 && method.equals("GET")) {
+            send(exchange, 200, Json.customer(customer));
+            return;
+        }
+        if (path.length == 2 && method.equals("DELETE")) {
+            store.endSession(path[1]);
+            send(exchange, 200, Json.customer(customer));
+            return;
+        }
+        routeShopper(exchange, method, path, params, customer);
+    }
+
+    // The cart and checkout routes under /sessions/{token}
+    private void routeShopper(HttpExchange exchange, String method, String[] path, Map<String, String> params,
+                              Customer customer) throws IOException {
+        if (path.length >= 3 && path[2].equals("cart")) {
+            if (path.length == 3) {
+                switch (method) {
+                    case "GET":
+                        break;
+                    case "POST":
+                        store.addToCart(customer, intParam(params, "productID"), intParam(params, "quantity"));
+                        break;
+                    case "DELETE":
+                        store.clearCart(customer);
+                        break;
+                    default:
+                        throw new NotFound("No " + method + " on a cart in this API.");
+                }
+                send(exchange, 200, Json.cart(store.viewCart(customer)));
+                return;
+            }
+            if (path.length == 4) {
+                int index = parseInt(path[3], "item") - 1;
+                switch (method) {
+                    case "PUT":
+                        store.updateCartQuantity(customer, index, intParam(params, "quantity"));
+                        break;
+                    case "DELETE":
+                        store.removeFromCart(customer, index);
+                        break;
+                    default:
+                        throw new NotFound("No " + method + " on a cart item in this API.");
+                }
+                send(exchange, 200, Json.cart(store.viewCart(customer)));
+                return;
+            }
+        }
+        if (path.length == 3 && path[2].equals("checkout") && method.equals("POST")) {
+            send(exchange, 201, Json.order(store.checkout(customer), store::productForDisplay));
+            return;
+        }
+        throw new NotFound("No " + method + " " + String.join("/", path) + " in this API.");
+    }
+
+    // Uses the narrowest index the parameters allow, then applies the rest as filters
+    private List<Order> findOrders(Map<String, String> params) {
+        int limit = params.containsKey("limit") ? intParam(params, "limit") : DEFAULT_ORDER_LIMIT;
+        if (limit <= 0) {
+            throw new IllegalArgumentException("'limit' must be at least 1.");
+        }
+        OrderStatus status = params.containsKey("status") ? OrderStatus.parse(params.get("status")) : null;
+        LocalDateTime from = dateParam(params, "from");
+        LocalDateTime to = dateParam(params, "to");
+        List<Order> found;
+        if (params.containsKey("customerID")) {
+            found = store.customerOrders(intParam(params, "customerID"), status);
+        } else if (from != null || to != null) {
+            found = store.ordersBetween(from, to);
+        } else if (status != null) {
+            return store.ordersWithStatus(status, limit);
+        } else {
+            return store.latestOrders(limit);
+        }
+        List<Order> result = new ArrayList<>();
+        for (Order order : found) {
+            if (result.size() == limit) {
+                break;
+            }
+            boolean statusMatches = status == null || order.getStatus() == status;
+            boolean afterFrom = from == null || !order.getOrderDate().isBefore(from);
+            boolean beforeTo = to == null || order.getOrderDate().isBefore(to);
+            if (statusMatches && afterFrom && beforeTo) {
+                result.add(order);
+            }
+        }
+        return result;
+    }
+
+    private Product product(String id) {
+        Product product = store.findProduct(parseInt(id, "product ID"));
+        if (product == null) {
+            throw new NotFound("Product not found with ID " + id + ".");
+        }
+        return product;
+    }
+
+    private Customer customer(String id) {
+        Customer customer = store.findCustomer(parseInt(id, "customer ID"));
+        if (customer == null) {
+            throw new NotFound("Customer not found with ID " + id + ".");
+        }
+        return customer;
+    }
+
+    private Order order(String id) {
+        Order order = store.findOrder(parseInt(id, "order ID"));
+        if (order == null) {
+            throw new NotFound("Order with ID " + id + " not found.");
+        }
+        return order;
+    }
+
+    private static String[] splitPath(String rawPath) {
+        String trimmed = rawPath.replaceAll("^/+|/+$", "");
+        if (trimmed.isEmpty()) {
+            return new String[0];
+        }
+        String[] parts = trimmed.split("/+");
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = URLDecoder.decode(parts[i], StandardCharsets.UTF_8);
+        }
+        return parts;
+    }
+
+    // Query string parameters, plus form fields from the body (the body wins)
+    private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] bytes = body.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("Request body is too large.");
+            }
+            if (bytes.length > 0) {
+                parseForm(new String(bytes, StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void parseForm(String form, Map<String, String> params) {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String requiredParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing '" + name + "'.");
+        }
+        return value;
+    }
+
+    private static int intParam(Map<String, String> params, String name) {
+        return parseInt(requiredParam(params, name), "'" + name + "'");
+    }
+
+    private static boolean booleanParam(Map<String, String> params, String name) {
+        String value = params.getOrDefault(name, "false").trim().toLowerCase(Locale.ROOT);
+        if (!value.equals("true") && !value.equals("false")) {
+            throw new IllegalArgumentException("'" + name + "' must be true or false, not '" + params.get(name) + "'.");
+        }
+        return value.equals("true");
+    }
+
+    private static LocalDateTime dateParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("'" + name + "' must be a date and time like 2024-05-01T09:30, not '" + value + "'.");
+        }
+    }
+
+    private static int parseInt(String value, String what) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Please use a number for the " + what + ", not '" + value + "'.");
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        send(exchange, status, "application/json; charset=utf-8", json);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Turns into a 404 instead of a 400
+    private static class NotFound extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        NotFound(String message) {
+            super(message);
+        }
+    }
+}
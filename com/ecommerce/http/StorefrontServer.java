@@ -0,0 +1,89 @@
+package com.ecommerce.http;
+
+import com.ecommerce.service.StoreService;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The storefront's HTTP API (see StorefrontHandler for the routes), on the JDK's built-in server.
+//
+// The server itself accepts connections on one thread; each request then runs on its own
+// virtual thread when the JDK has them (21+), so tens of thousands of shoppers waiting on
+// checkouts cost almost nothing. On older JDKs it falls back to a fixed pool of ordinary
+// threads, sized by -Decommerce.http.threads (default 200).
+public class StorefrontServer {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_POOL_THREADS = 200;
+    private static final int ACCEPT_BACKLOG = 4096; // the default (50) refuses connections under load
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    public StorefrontServer(StoreService store, int port) throws IOException {
+        if (store == null) {
+            throw new IllegalArgumentException("The server needs a store to serve.");
+        }
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("Port must be between 0 and 65535.");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(port), ACCEPT_BACKLOG);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : newPoolExecutor(Integer.getInteger("ecommerce.http.threads", DEFAULT_POOL_THREADS));
+        server.createContext("/", new StorefrontHandler(store));
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // Stops taking requests, waits up to 'delaySeconds' for the ones in progress, then stops
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The port actually in use (useful when 0 was asked for)
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    // Looked up reflectively so the project still compiles and runs on JDKs without virtual threads
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null; // not there, or a preview feature that isn't switched on
+        }
+    }
+
+    private static ExecutorService newPoolExecutor(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The HTTP thread count must be at least 1.");
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "http-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
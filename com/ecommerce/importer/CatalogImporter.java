@@ -0,0 +1,387 @@
+package com.ecommerce.importer;
+
+import com.ecommerce.Product;
+import com.ecommerce.ProductCatalog;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Loads products from a CSV or JSON-lines file into the catalog, adding new ones and
+// replacing ones whose productID is already there.
+//
+//   CSV:         productID,name,price,description,stock   (an optional header line first)
+//   JSON lines:  {"productID":201,"name":"Easel","price":150.00,"description":"...","stock":3}
+//
+// The file is never held in memory. It moves through three stages:
+//   1. a reader thread fills fixed-size byte buffers from a FileChannel, cutting each one
+//      at its last line break (the partial line moves on to the next buffer)
+//   2. worker threads turn each buffer into Products, applying Product's validation rules
+//      and noting the rows that fail them
+//   3. the calling thread hands each buffer's products to the sink as one batch, in file
+//      order, so a product listed twice ends up as its last row says
+// The queue between the stages is bounded, so only a few buffers are ever in flight and
+// memory stays the same whatever the file size. Bad rows are reported to the
+// FailureListener and the import carries on.
+public class CatalogImporter {
+    public static final int DEFAULT_CHUNK_BYTES = 1 << 20;
+    private static final int MIN_CHUNK_BYTES = 4096;
+
+    public enum Format {
+        CSV,
+        JSON_LINES;
+
+        // By extension: .csv, or .jsonl / .ndjson / .json
+        public static Format forFile(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+                return JSON_LINES;
+            }
+            throw new IllegalArgumentException("Can't tell the format of " + file + "; use a .csv or .jsonl file.");
+        }
+    }
+
+    // Told about every row that couldn't be imported, in line order, on the thread that
+    // called importFile
+    public interface FailureListener {
+        void rowFailed(long lineNumber, String reason);
+    }
+
+    // Receives the valid products, one batch per buffer, in file order
+    public interface BatchSink {
+        void upsert(List<Product> batch);
+    }
+
+    // What an import did, once it has finished
+    public static final class Summary {
+        private final long lines;
+        private final long imported;
+        private final long failed;
+
+        Summary(long lines, long imported, long failed) {
+            this.lines = lines;
+            this.imported = imported;
+            this.failed = failed;
+        }
+
+        public long getLines() { return lines; }        // including blank lines and the header
+        public long getImported() { return imported; }  // rows added or updated
+        public long getFailed() { return failed; }
+
+        @Override
+        public String toString() {
+            return lines + " lines: " + imported + " products imported, " + failed + " failed";
+        }
+    }
+
+    private final BatchSink sink;
+    private final int workers;
+    private final int chunkBytes;
+
+    public CatalogImporter(ProductCatalog catalog) {
+        this(catalog::putAll, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_BYTES);
+    }
+
+    // 'chunkBytes' is also the longest line that can be imported
+    public CatalogImporter(BatchSink sink, int workers, int chunkBytes) {
+        if (sink == null) {
+            throw new IllegalArgumentException("A sink for the imported products is required.");
+        }
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Workers must be at least 1.");
+        }
+        if (chunkBytes < MIN_CHUNK_BYTES) {
+            throw new IllegalArgumentException("Chunks must be at least " + MIN_CHUNK_BYTES + " bytes.");
+        }
+        this.sink = sink;
+        this.workers = workers;
+        this.chunkBytes = chunkBytes;
+    }
+
+    public Summary importFile(Path file, FailureListener failures) throws IOException {
+        return importFile(file, Format.forFile(file), failures);
+    }
+
+    // Imports every row and returns once all the valid ones have gone to the sink
+    public Summary importFile(Path file, Format format, FailureListener failures) throws IOException {
+        if (file == null || format == null || failures == null) {
+            throw new IllegalArgumentException("A file, its format and a failure listener are required.");
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService parsers = Executors.newFixedThreadPool(workers, task -> {
+            Thread thread = new Thread(task, "catalog-import-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        BlockingQueue<CompletableFuture<ParsedChunk>> parsed = new ArrayBlockingQueue<>(2 * workers);
+        CompletableFuture<ParsedChunk> end = CompletableFuture.completedFuture(null);
+        ChunkReader chunkReader = new ChunkReader(channel, format, parsers, parsed, end);
+        Thread reader = new Thread(chunkReader, "catalog-import-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long lines = 0;
+        long imported = 0;
+        long failed = 0;
+        boolean finished = false;
+        try {
+            CompletableFuture<ParsedChunk> next;
+            while ((next = parsed.take()) != end) {
+                ParsedChunk chunk = join(next);
+                for (RowError error : chunk.errors) {
+                    failed++;
+                    failures.rowFailed(lines + error.line, error.reason);
+                }
+                if (!chunk.products.isEmpty()) {
+                    sink.upsert(chunk.products);
+                    imported += chunk.products.size();
+                }
+                lines += chunk.lines;
+            }
+            finished = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while importing " + file + ".");
+        } finally {
+            if (!finished) {
+                chunkReader.stopped = true;
+                reader.interrupt();
+                parsed.clear(); // unblocks the reader if it's waiting for room
+            }
+            parsers.shutdownNow();
+            joinUninterruptibly(reader);
+            channel.close();
+        }
+        return new Summary(lines, imported, failed);
+    }
+
+    private static ParsedChunk join(CompletableFuture<ParsedChunk> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // One buffer's worth of rows: line numbers in it are counted from 1 at the buffer's start
+    private static final class ParsedChunk {
+        final List<Product> products;
+        final List<RowError> errors;
+        final int lines;
+
+        ParsedChunk(List<Product> products, List<RowError> errors, int lines) {
+            this.products = products;
+            this.errors = errors;
+            this.lines = lines;
+        }
+    }
+
+    private static final class RowError {
+        final int line;
+        final String reason;
+
+        RowError(int line, String reason) {
+            this.line = line;
+            this.reason = reason;
+        }
+    }
+
+    // Stage 1: cuts the file into buffers of whole lines and queues a parse task for each
+    private final class ChunkReader implements Runnable {
+        private final FileChannel channel;
+        private final Format format;
+        private final ExecutorService parsers;
+        private final BlockingQueue<CompletableFuture<ParsedChunk>> parsed;
+        private final CompletableFuture<ParsedChunk> end;
+        volatile boolean stopped;
+
+        ChunkReader(FileChannel channel, Format format, ExecutorService parsers,
+                    BlockingQueue<CompletableFuture<ParsedChunk>> parsed, CompletableFuture<ParsedChunk> end) {
+            this.channel = channel;
+            this.format = format;
+            this.parsers = parsers;
+            this.parsed = parsed;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            try {
+                readChunks();
+                parsed.put(end);
+            } catch (IOException e) {
+                queueFailure(e);
+            } catch (InterruptedException e) {
+                // stopped by importFile, which no longer reads the queue
+            } catch (RuntimeException e) {
+                queueFailure(e);
+            }
+        }
+
+        private void queueFailure(Exception e) {
+            CompletableFuture<ParsedChunk> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            try {
+                parsed.put(failed);
+                parsed.put(end);
+            } catch (InterruptedException stopped) {
+                // importFile gave up already
+            }
+        }
+
+        private void readChunks() throws IOException, InterruptedException {
+            byte[] buffer = new byte[chunkBytes];
+            int filled = 0;
+            boolean first = true;
+            boolean skipping = false; // in the middle of a line too long to import
+            boolean eof = false;
+            while (!eof && !stopped) {
+                ByteBuffer target = ByteBuffer.wrap(buffer, filled, buffer.length - filled);
+                while (target.hasRemaining()) {
+                    if (channel.read(target) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                filled = target.position();
+
+                int start = 0;
+                if (skipping) {
+                    int lineBreak = indexOf(buffer, 0, filled);
+                    if (lineBreak < 0) {
+                        filled = 0;
+                        continue;
+                    }
+                    start = lineBreak + 1;
+                    skipping = false;
+                }
+                int cut = eof ? filled : lastIndexOf(buffer, start, filled) + 1;
+                if (cut <= start) {
+                    if (eof) {
+                        break;
+                    }
+                    if (start > 0) { // the rest of a skipped line went first; read on
+                        System.arraycopy(buffer, start, buffer, 0, filled - start);
+                        filled -= start;
+                        continue;
+                    }
+                    // A single line fills the whole buffer: report it and skip to its end
+                    List<RowError> errors = new ArrayList<>(1);
+                    errors.add(new RowError(1, "Line is longer than " + chunkBytes + " bytes."));
+                    parsed.put(CompletableFuture.completedFuture(new ParsedChunk(new ArrayList<>(0), errors, 1)));
+                    first = false;
+                    skipping = true;
+                    filled = 0;
+                    continue;
+                }
+
+                byte[] next = new byte[chunkBytes];
+                System.arraycopy(buffer, cut, next, 0, filled - cut);
+                byte[] chunk = buffer;
+                int chunkStart = start;
+                boolean firstChunk = first;
+                parsed.put(CompletableFuture.supplyAsync(() -> parse(chunk, chunkStart, cut, firstChunk), parsers));
+                first = false;
+                buffer = next;
+                filled -= cut;
+            }
+        }
+
+        // Stage 2: runs on the worker threads
+        private ParsedChunk parse(byte[] bytes, int start, int end, boolean firstChunk) {
+            List<Product> products = new ArrayList<>();
+            List<RowError> errors = new ArrayList<>(0);
+            int lines = 0;
+            int position = start;
+            if (firstChunk && end - position >= 3 && (bytes[position] & 0xFF) == 0xEF
+                    && (bytes[position + 1] & 0xFF) == 0xBB && (bytes[position + 2] & 0xFF) == 0xBF) {
+                position += 3; // UTF-8 byte order mark
+            }
+            while (position < end) {
+                int lineBreak = indexOf(bytes, position, end);
+                int lineEnd = lineBreak < 0 ? end : lineBreak;
+                int textEnd = lineEnd > position && bytes[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+                String line = new String(bytes, position, textEnd - position, StandardCharsets.UTF_8);
+                position = lineEnd + 1;
+                lines++;
+                if (line.trim().isEmpty() || (firstChunk && lines == 1 && isHeader(line))) {
+                    continue;
+                }
+                try {
+                    products.add(format == Format.CSV ? ProductRowParser.parseCsv(line) : ProductRowParser.parseJson(line));
+                } catch (IllegalArgumentException e) {
+                    errors.add(new RowError(lines, e.getMessage()));
+                }
+            }
+            return new ParsedChunk(products, errors, lines);
+        }
+
+        // A CSV header like "productID,name,...": starts with a letter where the ID should be
+        private boolean isHeader(String line) {
+            if (format != Format.CSV) {
+                return false;
+            }
+            String text = line.trim();
+            char c = text.charAt(0) == '"' && text.length() > 1 ? text.charAt(1) : text.charAt(0);
+            return Character.isLetter(c);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] bytes, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,219 @@
+package com.ecommerce.importer;
+
+import com.ecommerce.Money;
+import com.ecommerce.Product;
+
+// Turns one line of an import file into a Product. The Product constructor applies the
+// usual validation rules, so an imported product is held to the same rules as any other.
+// Every problem is an IllegalArgumentException whose message says what's wrong with the row.
+final class ProductRowParser {
+    private static final int CSV_COLUMNS = 5;
+
+    private ProductRowParser() { }
+
+    // productID,name,price,description,stock
+    // Fields may be quoted ("Easel, wooden"), with "" for a quote inside a quoted field.
+    static Product parseCsv(String line) {
+        String[] fields = new String[CSV_COLUMNS];
+        int count = 0;
+        int i = 0;
+        int length = line.length();
+        while (true) {
+            if (count == CSV_COLUMNS) {
+                throw new IllegalArgumentException("Too many columns; expected productID,name,price,description,stock.");
+            }
+            if (i < length && line.charAt(i) == '"') {
+                StringBuilder field = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        throw new IllegalArgumentException("A quoted field isn't closed.");
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < length && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+                while (i < length && line.charAt(i) == ' ') {
+                    i++;
+                }
+                if (i < length && line.charAt(i) != ',') {
+                    throw new IllegalArgumentException("Unexpected text after a quoted field.");
+                }
+                fields[count++] = field.toString();
+            } else {
+                int comma = line.indexOf(',', i);
+                int end = comma < 0 ? length : comma;
+                fields[count++] = line.substring(i, end); // most fields: no copying into a builder
+                i = end;
+            }
+            if (i >= length) {
+                break;
+            }
+            i++; // the comma
+        }
+        if (count != CSV_COLUMNS) {
+            throw new IllegalArgumentException("Expected 5 columns (productID,name,price,description,stock), found " + count + ".");
+        }
+        return product(fields[0], fields[1], fields[2], fields[3], fields[4]);
+    }
+
+    // {"productID":201,"name":"Easel","price":150.00,"description":"...","stock":3}
+    // One flat object per line; price and the numbers may also be given as strings.
+    // Unknown keys are ignored.
+    static Product parseJson(String line) {
+        JsonCursor json = new JsonCursor(line);
+        String productID = null;
+        String name = null;
+        String price = null;
+        String description = null;
+        String stock = null;
+        json.expect('{');
+        if (!json.tryConsume('}')) {
+            do {
+                String key = json.readString();
+                json.expect(':');
+                String value = json.readValue();
+                switch (key) {
+                    case "productID": productID = value; break;
+                    case "name": name = value; break;
+                    case "price": price = value; break;
+                    case "description": description = value; break;
+                    case "stock": stock = value; break;
+                    default: break;
+                }
+            } while (json.tryConsume(','));
+            json.expect('}');
+        }
+        json.expectEnd();
+        return product(productID, name, price, description, stock);
+    }
+
+    private static Product product(String productID, String name, String price, String description, String stock) {
+        return new Product(number(productID, "productID"), name, Money.parse(required(price, "price")),
+                description, number(stock, "stock"));
+    }
+
+    private static int number(String text, String field) {
+        String value = required(text, field).trim();
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("'" + value + "' is not a valid " + field + ".");
+        }
+    }
+
+    private static String required(String value, String field) {
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing " + field + ".");
+        }
+        return value;
+    }
+
+    // Just enough JSON for one flat object: string, number, true/false and null values
+    private static final class JsonCursor {
+        private final String text;
+        private int position;
+
+        JsonCursor(String text) {
+            this.text = text;
+        }
+
+        void expect(char c) {
+            skipSpaces();
+            if (position >= text.length() || text.charAt(position) != c) {
+                throw new IllegalArgumentException("Not a valid JSON object: expected '" + c + "' at column " + (position + 1) + ".");
+            }
+            position++;
+        }
+
+        boolean tryConsume(char c) {
+            skipSpaces();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void expectEnd() {
+            skipSpaces();
+            if (position != text.length()) {
+                throw new IllegalArgumentException("Unexpected text after the JSON object at column " + (position + 1) + ".");
+            }
+        }
+
+        // A value as text (numbers and literals as written), or null for JSON null
+        String readValue() {
+            skipSpaces();
+            if (position < text.length() && text.charAt(position) == '"') {
+                return readString();
+            }
+            int start = position;
+            while (position < text.length() && ",}] \t".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String value = text.substring(start, position);
+            if (value.isEmpty() || value.charAt(0) == '{' || value.charAt(0) == '[') {
+                throw new IllegalArgumentException("Only strings, numbers, true, false and null are supported as values (column " + (start + 1) + ").");
+            }
+            return value.equals("null") ? null : value;
+        }
+
+        String readString() {
+            expect('"');
+            StringBuilder result = new StringBuilder();
+            while (true) {
+                if (position >= text.length()) {
+                    throw new IllegalArgumentException("A JSON string isn't closed.");
+                }
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return result.toString();
+                }
+                if (c != '\\') {
+                    result.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    throw new IllegalArgumentException("A JSON string ends in the middle of an escape.");
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case '"': case '\\': case '/': result.append(escaped); break;
+                    case 'b': result.append('\b'); break;
+                    case 'f': result.append('\f'); break;
+                    case 'n': result.append('\n'); break;
+                    case 'r': result.append('\r'); break;
+                    case 't': result.append('\t'); break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw new IllegalArgumentException("A \\u escape needs four hex digits.");
+                        }
+                        try {
+                            result.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("A \\u escape needs four hex digits.");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown escape \\" + escaped + " in a JSON string.");
+                }
+            }
+        }
+
+        private void skipSpaces() {
+            while (position < text.length() && (text.charAt(position) == ' ' || text.charAt(position) == '\t')) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.ecommerce.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts how long something took, in nanoseconds, in the style of an HDR histogram:
+// durations are sorted into buckets whose width grows with the duration, eight buckets
+// for every doubling. Any duration from a nanosecond to centuries lands in one of 488
+// buckets, and a bucket is never more than 12.5% wide, so percentiles read back from it
+// are within 12.5% of the truth.
+//
+// record() takes no lock and allocates nothing: it picks the bucket with a few bit
+// operations and increments an AtomicLongArray slot, so it can sit on the hottest paths
+// and be called from any number of threads. The counts are kept in several stripes
+// (about one per processor) and each thread counts in the stripe its identity hashes to,
+// so threads timing the same fast operation on different cores don't all fight over one
+// slot. snapshot() adds the stripes up; records that happen meanwhile may or may not be in it.
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final int MAX_STRIPES = 16;
+    private static final int STRIPES = Math.min(MAX_STRIPES,
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    // Counts one duration; negative ones (a clock going backwards) count as zero
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int stripe = (System.identityHashCode(Thread.currentThread()) * 0x9E3779B9 >>> 16) & (STRIPES - 1);
+        counts.incrementAndGet(stripe * BUCKETS + bucketOf(nanos));
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < STRIPES * BUCKETS; i++) {
+            long n = counts.get(i);
+            copy[i % BUCKETS] += n;
+            count += n;
+        }
+        return new Snapshot(copy, count, totalNanos.sum(), maxNanos.get());
+    }
+
+    // Durations below SUB_BUCKETS nanoseconds get a bucket each; above that, the top
+    // SUB_BUCKET_BITS + 1 bits of the duration pick the bucket
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (nanos >>> shift) - SUB_BUCKETS;
+    }
+
+    // The longest duration that falls into 'bucket'
+    static long highestIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long first = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        long width = 1L << shift;
+        return first > Long.MAX_VALUE - width ? Long.MAX_VALUE : first + width - 1;
+    }
+
+    // The counts at one moment
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() { return count; }
+        public long getTotalNanos() { return totalNanos; }
+        public long getMaxNanos() { return maxNanos; }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        // The duration 'quantile' (0.5 for the median, 0.99 for the 99th percentile) of the
+        // recorded ones were at most; 0 if nothing was recorded
+        public long valueAtQuantile(double quantile) {
+            if (quantile < 0 || quantile > 1 || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException("A quantile must be between 0 and 1.");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestIn(i), maxNanos);
+                }
+            }
+            return maxNanos; // records arrived while the snapshot was taken
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.ecommerce.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+// How often the store's busiest operations run, how often they fail and how long they
+// take. StoreService times each call:
+//
+//   long started = System.nanoTime();
+//   boolean ok = false;
+//   try { ...; ok = true; } finally { metrics.record(Operation.SEARCH, started, ok); }
+//
+// Recording takes no lock and allocates nothing (see LatencyHistogram), so it costs a
+// couple of clock reads and atomic increments per call. Failed calls are timed too and
+// also counted separately.
+//
+// appendPrometheus() writes everything in the Prometheus text format (the API serves it at
+// GET /metrics) and appendTable() as a table for the console.
+public final class StoreMetrics {
+    // Quantiles shown for every operation
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    public enum Operation {
+        PRODUCT_LOOKUP("product_lookup"),
+        SEARCH("search"),
+        ADD_TO_CART("add_to_cart"),
+        CHECKOUT("checkout"),
+        STATUS_UPDATE("status_update");
+
+        private final String metricName;
+
+        Operation(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() { return metricName; }
+    }
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final LongAdder[] failures = new LongAdder[Operation.values().length];
+
+    public StoreMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            failures[i] = new LongAdder();
+        }
+    }
+
+    // Records a call that began at 'startedNanos' (System.nanoTime()) and ends now
+    public void record(Operation operation, long startedNanos, boolean succeeded) {
+        latencies[operation.ordinal()].record(System.nanoTime() - startedNanos);
+        if (!succeeded) {
+            failures[operation.ordinal()].increment();
+        }
+    }
+
+    public LatencyHistogram.Snapshot latency(Operation operation) {
+        return latencies[operation.ordinal()].snapshot();
+    }
+
+    public long getFailures(Operation operation) {
+        return failures[operation.ordinal()].sum();
+    }
+
+    // Calls, failures and a summary of durations (in seconds, as Prometheus expects) for
+    // every operation
+    public void appendPrometheus(StringBuilder text) {
+        text.append("# HELP ecommerce_operation_seconds How long store operations take.\n");
+        text.append("# TYPE ecommerce_operation_seconds summary\n");
+        LatencyHistogram.Snapshot[] snapshots = new LatencyHistogram.Snapshot[latencies.length];
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram.Snapshot snapshot = latency(operation);
+            snapshots[operation.ordinal()] = snapshot;
+            String label = "operation=\"" + operation.getMetricName() + "\"";
+            for (double quantile : QUANTILES) {
+                text.append("ecommerce_operation_seconds{").append(label).append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(seconds(snapshot.valueAtQuantile(quantile))).append('\n');
+            }
+            text.append("ecommerce_operation_seconds_sum{").append(label).append("} ").append(seconds(snapshot.getTotalNanos())).append('\n');
+            text.append("ecommerce_operation_seconds_count{").append(label).append("} ").append(snapshot.getCount()).append('\n');
+        }
+        text.append("# HELP ecommerce_operation_max_seconds The longest each store operation has taken.\n");
+        text.append("# TYPE ecommerce_operation_max_seconds gauge\n");
+        for (Operation operation : Operation.values()) {
+            text.append("ecommerce_operation_max_seconds{operation=\"").append(operation.getMetricName()).append("\"} ")
+                    .append(seconds(snapshots[operation.ordinal()].getMaxNanos())).append('\n');
+        }
+        text.append("# HELP ecommerce_operation_failures_total Store operations that ended in an error.\n");
+        text.append("# TYPE ecommerce_operation_failures_total counter\n");
+        for (Operation operation : Operation.values()) {
+            text.append("ecommerce_operation_failures_total{operation=\"").append(operation.getMetricName()).append("\"} ")
+                    .append(getFailures(operation)).append('\n');
+        }
+    }
+
+    // One line per operation: calls, failures, percentiles and the longest call
+    public void appendTable(StringBuilder text) {
+        text.append(String.format(Locale.ROOT, "%-16s %10s %8s %9s %9s %9s %9s %9s%n",
+                "Operation", "Calls", "Failed", "p50", "p90", "p99", "p99.9", "Max"));
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram.Snapshot snapshot = latency(operation);
+            text.append(String.format(Locale.ROOT, "%-16s %10d %8d %9s %9s %9s %9s %9s%n",
+                    operation.getMetricName(), snapshot.getCount(), getFailures(operation),
+                    duration(snapshot.valueAtQuantile(0.5)), duration(snapshot.valueAtQuantile(0.9)),
+                    duration(snapshot.valueAtQuantile(0.99)), duration(snapshot.valueAtQuantile(0.999)),
+                    duration(snapshot.getMaxNanos())));
+        }
+    }
+
+    // A Prometheus metric without labels, with its help and type lines
+    public static void appendSample(StringBuilder text, String name, String type, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    // e.g. 850ns, 12.3µs, 4.56ms, 1.20s
+    private static String duration(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + "ns";
+        }
+        if (nanos < 1_000_000) {
+            return String.format(Locale.ROOT, "%.1fµs", nanos / 1e3);
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format(Locale.ROOT, "%.2fms", nanos / 1e6);
+        }
+        return String.format(Locale.ROOT, "%.2fs", nanos / 1e9);
+    }
+}
@@ -0,0 +1,95 @@
+package com.ecommerce.orders;
+
+import com.ecommerce.Customer;
+import com.ecommerce.Product;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Turns a customer's cart into an order, all or nothing.
+// Stock for every line is reserved first; if any line can't be reserved, the lines
+// already reserved are released again and no order is created. Reservations are
+// lock-free compare-and-set operations (see Product.tryReserve), so checkouts never
+// block each other and can't deadlock. Lines are always reserved in productID order,
+// so two carts competing for the same products meet on the same product first and
+// one of them backs off cleanly instead of each holding half of what the other needs.
+// Safe to share between threads; each customer's cart must only be used by one at a time.
+public class CheckoutEngine {
+    private final AtomicInteger nextOrderID;
+
+    public CheckoutEngine(int firstOrderID) {
+        if (firstOrderID <= 0) {
+            throw new IllegalArgumentException("First order ID must be a positive number.");
+        }
+        this.nextOrderID = new AtomicInteger(firstOrderID);
+    }
+
+    // Order ID the next successful checkout will get
+    public int peekNextOrderID() {
+        return nextOrderID.get();
+    }
+
+    // Makes sure later order IDs start after one that already exists (e.g. after a restart)
+    public void advancePast(int orderID) {
+        nextOrderID.accumulateAndGet(orderID + 1, Math::max);
+    }
+
+    // Reserves stock for the whole cart, creates a confirmed order and empties the cart.
+    // Throws IllegalArgumentException, with nothing changed, if the cart is empty or any
+    // product doesn't have enough stock.
+    public Order checkout(Customer customer) {
+        if (customer == null) {
+            throw new IllegalArgumentException("Order must have a valid customer. System error - please contact support.");
+        }
+        if (customer.isCartEmpty()) {
+            throw new IllegalArgumentException("Cannot create order from empty cart. Please add items to cart first.");
+        }
+
+        int[] lineOrder = linesByProductID(customer);
+        reserveAll(customer, lineOrder);
+
+        Order order;
+        try {
+            order = new Order(nextOrderID.getAndIncrement(), customer);
+            order.setStatus(OrderStatus.CONFIRMED);
+        } catch (RuntimeException e) {
+            releaseAll(customer, lineOrder, lineOrder.length);
+            throw e;
+        }
+        customer.clearCart();
+        return order;
+    }
+
+    // Cart line indexes sorted by productID (ID in the high bits, index in the low bits)
+    private static int[] linesByProductID(Customer customer) {
+        long[] keys = new long[customer.getCartSize()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ((long) customer.getCartProduct(i).getProductID() << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] lineOrder = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            lineOrder[i] = (int) keys[i];
+        }
+        return lineOrder;
+    }
+
+    private static void reserveAll(Customer customer, int[] lineOrder) {
+        for (int i = 0; i < lineOrder.length; i++) {
+            int line = lineOrder[i];
+            Product product = customer.getCartProduct(line);
+            if (!product.tryReserve(customer.getCartQuantity(line))) {
+                releaseAll(customer, lineOrder, i);
+                throw new IllegalArgumentException("Not enough stock for " + product.getName() + ". Only " + product.getStock() + " available.");
+            }
+        }
+    }
+
+    // Gives back the first 'count' reservations, newest first
+    private static void releaseAll(Customer customer, int[] lineOrder, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            int line = lineOrder[i];
+            customer.getCartProduct(line).release(customer.getCartQuantity(line));
+        }
+    }
+}
@@ -1,140 +1,297 @@
 package com.ecommerce.orders;
 
 import com.ecommerce.Customer;
+import com.ecommerce.Money;
 import com.ecommerce.Product;
-import java.util.ArrayList;
-import java.util.List;
+import com.ecommerce.ProductCatalog;
+import com.ecommerce.output.OutputSink;
+import com.ecommerce.output.StoreEvent;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
+// A placed order. Everything but the status is fixed when the order is made: the lines
+// are copied into three plain arrays (productID, unit price paid, quantity), the price
+// being the one at the moment of purchase, and the total is added up once. Later price
+// changes, or the product leaving the catalog, never change an order, and since nothing
+// but the (volatile) status is ever written again, any number of threads can read orders
+// without locks.
+//
+// The status shares one word with a sequence number that goes up by one with every change,
+// and a change is a single compare-and-set of that word, so no lock is ever taken. The
+// status listener is called after the change, with no lock held: two threads changing the
+// same order may reach it in either order, and the sequence number tells which change came
+// last (the order journal saves it, and replay keeps the highest).
 public class Order {
-    private int orderID;
-    private Customer customer;
-    private List<Product> products;
-    private List<Integer> quantities;
-    private double orderTotal;
-    private String status;
-    private LocalDateTime orderDate;
-    
-    public Order() {
-        this.orderID = 0;
-        this.customer = null;
-        this.products = new ArrayList<>();
-        this.quantities = new ArrayList<>();
-        this.orderTotal = 0.0;
-        this.status = "Pending";
-        this.orderDate = LocalDateTime.now();
+    // state = sequence << STATUS_BITS | status ordinal
+    private static final int STATUS_BITS = 8;
+    private static final long STATUS_MASK = (1L << STATUS_BITS) - 1;
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(Order.class, "state", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
     }
+
+
+    private final int orderID;
+    private final Customer customer;
+    private final LocalDateTime orderDate;
+    // Line i is lineQuantities[i] x product lineProductIDs[i] at lineUnitPriceCents[i] each, in cart order
+    private final int[] lineProductIDs;
+    private final long[] lineUnitPriceCents;
+    private final int[] lineQuantities;
+    private final long totalCents;
+    private volatile long state;
+    private volatile OrderStatusListener statusListener;
     
+    // Takes the customer's cart as it is now; the cart itself isn't changed
     public Order(int orderID, Customer customer) {
-        setOrderID(orderID);
-        setCustomer(customer);
-        this.products = new ArrayList<>();
-        this.quantities = new ArrayList<>();
-        this.orderTotal = 0.0;
-        this.status = "Pending";
-        this.orderDate = LocalDateTime.now();
-        copyFromCustomerCart();
+        this(orderID, customer, LocalDateTime.now(), OrderStatus.PENDING, cartProductIDs(customer),
+                cartUnitPrices(customer), cartQuantities(customer));
+    }
+    
+    private Order(int orderID, Customer customer, LocalDateTime orderDate, OrderStatus status,
+                  int[] productIDs, long[] unitPriceCents, int[] quantities) {
+        if (orderID <= 0) {
+            throw new IllegalArgumentException("Order ID must be a positive number. System error - please contact support.");
+        }
+        if (customer == null) {
+            throw new IllegalArgumentException("Order must have a valid customer. System error - please contact support.");
+        }
+        this.orderID = orderID;
+        this.customer = customer;
+        this.orderDate = orderDate;
+        this.state = state(0, status);
+        this.lineProductIDs = productIDs;
+        this.lineUnitPriceCents = unitPriceCents;
+        this.lineQuantities = quantities;
+        long total = 0;
+        for (int i = 0; i < productIDs.length; i++) {
+            total = Money.addCents(total, Money.multiplyCents(unitPriceCents[i], quantities[i]));
+        }
+        this.totalCents = total;
     }
     
     // Getters
     public int getOrderID() { return orderID; }
     public Customer getCustomer() { return customer; }
-    public List<Product> getProducts() { return products; }
-    public List<Integer> getQuantities() { return quantities; }
-    public double getOrderTotal() { return orderTotal; }
-    public String getStatus() { return status; }
+    public Money getOrderTotal() { return Money.ofCents(totalCents); }
+    public long getOrderTotalCents() { return totalCents; }
+    public OrderStatus getStatus() { return statusOf(state); }
+    // How many times the status has changed; a later change always has a higher number
+    public long getStatusSequence() { return sequenceOf(state); }
     public LocalDateTime getOrderDate() { return orderDate; }
     
-    // Setters with validation
-    public void setOrderID(int orderID) {
-        if (orderID <= 0) {
-            throw new IllegalArgumentException("Order ID must be a positive number. System error - please contact support.");
+    // Order lines, by line number (0 to getLineCount() - 1, in the order they were in the cart)
+    public int getLineCount() { return lineProductIDs.length; }
+    public int getProductID(int line) { return lineProductIDs[line]; }
+    public int getQuantity(int line) { return lineQuantities[line]; }
+    
+    // What one unit cost when the order was placed
+    public long getUnitPriceCents(int line) { return lineUnitPriceCents[line]; }
+    
+    public long getLineTotalCents(int line) {
+        return Money.multiplyCents(lineUnitPriceCents[line], lineQuantities[line]);
+    }
+    
+    public void setStatus(String status) {
+        setStatus(OrderStatus.parse(status));
+    }
+    
+    // Moves the order to 'target' if its current status allows it (see OrderStatus).
+    // Concurrent updates are applied one after the other, and each one checks the transition
+    // against the status the one before it left. Setting the current status does nothing.
+    public void setStatus(OrderStatus target) {
+        if (target == null) {
+            throw new IllegalArgumentException("Order status cannot be empty.");
+        }
+        while (true) {
+            long current = state;
+            OrderStatus from = statusOf(current);
+            if (from == target) {
+                return;
+            }
+            checkTransition(from, target);
+            long next = state(sequenceOf(current) + 1, target);
+            if (STATE.compareAndSet(this, current, next)) {
+                statusChanged(from, target, sequenceOf(next));
+                return;
+            }
         }
-        this.orderID = orderID;
     }
     
-    public void setCustomer(Customer customer) {
-        if (customer == null) {
-            throw new IllegalArgumentException("Order must have a valid customer. System error - please contact support.");
+    // Moves the order from 'expected' to 'target' only if 'expected' is still its status.
+    // Returns false (and changes nothing) if another update got there first.
+    public boolean compareAndSetStatus(OrderStatus expected, OrderStatus target) {
+        if (expected == null || target == null) {
+            throw new IllegalArgumentException("Order status cannot be empty.");
+        }
+        checkTransition(expected, target);
+        while (true) {
+            long current = state;
+            if (statusOf(current) != expected) {
+                return false;
+            }
+            if (expected == target) {
+                return true;
+            }
+            long next = state(sequenceOf(current) + 1, target);
+            if (STATE.compareAndSet(this, current, next)) {
+                statusChanged(expected, target, sequenceOf(next));
+                return true;
+            }
         }
-        this.customer = customer;
     }
     
-    public void setStatus(String status) {
-        if (status == null || status.trim().isEmpty()) {
+    // Sets whatever status was saved, without checking the transition. Only for replaying
+    // history (e.g. the order journal), which may predate the transition rules. A change
+    // saved with a sequence number no higher than the order's is older than what the order
+    // already has and is ignored (returns false); 0 means the change was saved without one
+    // and follows whatever came before it.
+    public boolean restoreStatus(OrderStatus status, long sequence) {
+        if (status == null) {
             throw new IllegalArgumentException("Order status cannot be empty.");
         }
-        String[] validStatuses = {"Pending", "Confirmed", "Processing", "Shipped", "Delivered", "Cancelled"};
-        boolean isValid = false;
-        for (String validStatus : validStatuses) {
-            if (validStatus.equalsIgnoreCase(status.trim())) {
-                isValid = true;
-                break;
+        if (sequence < 0) {
+            throw new IllegalArgumentException("Status sequence can't be negative.");
+        }
+        while (true) {
+            long current = state;
+            long currentSequence = sequenceOf(current);
+            if (sequence != 0 && sequence <= currentSequence) {
+                return false;
+            }
+            long next = state(sequence != 0 ? sequence : currentSequence + 1, status);
+            if (STATE.compareAndSet(this, current, next)) {
+                OrderStatus old = statusOf(current);
+                if (old != status) {
+                    statusChanged(old, status, sequenceOf(next));
+                }
+                return true;
             }
         }
-        if (!isValid) {
-            throw new IllegalArgumentException("Invalid order status. Valid options are: Pending, Confirmed, Processing, Shipped, Delivered, Cancelled");
+    }
+    
+    private static long state(long sequence, OrderStatus status) {
+        return sequence << STATUS_BITS | status.ordinal();
+    }
+    
+    private static OrderStatus statusOf(long state) {
+        return STATUSES[(int) (state & STATUS_MASK)];
+    }
+    
+    private static long sequenceOf(long state) {
+        return state >>> STATUS_BITS;
+    }
+    
+    private void checkTransition(OrderStatus from, OrderStatus to) {
+        if (!from.canMoveTo(to)) {
+            throw new IllegalArgumentException("Order #" + orderID + " is " + from + " and can't be changed to " + to + ".");
         }
-        this.status = status.trim();
     }
     
-    private void copyFromCustomerCart() {
+    private void statusChanged(OrderStatus oldStatus, OrderStatus newStatus, long sequence) {
+        OrderStatusListener listener = statusListener;
+        if (listener != null) {
+            listener.statusChanged(this, oldStatus, newStatus, sequence);
+        }
+    }
+    
+    // Registers the one listener told about status changes (e.g. the order journal), or null for none
+    public void setStatusListener(OrderStatusListener statusListener) {
+        this.statusListener = statusListener;
+    }
+    
+    // Rebuilds an order that was placed earlier (e.g. when replaying the order journal),
+    // from its lines as they were saved. Unlike the normal constructor this doesn't touch
+    // the customer's cart. The order keeps the arrays (replaying millions of orders
+    // shouldn't copy each one twice), so they must not be changed afterwards.
+    public static Order restore(int orderID, Customer customer, LocalDateTime orderDate, OrderStatus status,
+                                int[] productIDs, long[] unitPriceCents, int[] quantities) {
+        if (orderDate == null || status == null) {
+            throw new IllegalArgumentException("Order date and status are required to restore an order.");
+        }
+        if (productIDs == null || unitPriceCents == null || quantities == null
+                || productIDs.length != quantities.length || productIDs.length != unitPriceCents.length) {
+            throw new IllegalArgumentException("Every restored order line needs a product, a price and a quantity.");
+        }
+        return new Order(orderID, customer, orderDate, status, productIDs, unitPriceCents, quantities);
+    }
+    
+    private static int[] cartProductIDs(Customer customer) {
+        if (customer == null) {
+            throw new IllegalArgumentException("Order must have a valid customer. System error - please contact support.");
+        }
         if (customer.isCartEmpty()) {
             throw new IllegalArgumentException("Cannot create order from empty cart. Please add items to cart first.");
         }
-        
-        List<Product> cart = customer.getShoppingCart();
-        List<Integer> cartQuantities = customer.getQuantities();
-        
-        for (int i = 0; i < cart.size(); i++) {
-            products.add(cart.get(i));
-            quantities.add(cartQuantities.get(i));
+        int[] productIDs = new int[customer.getCartSize()];
+        for (int i = 0; i < productIDs.length; i++) {
+            productIDs[i] = customer.getCartProduct(i).getProductID();
         }
-        
-        calculateTotal();
+        return productIDs;
+    }
+    
+    private static long[] cartUnitPrices(Customer customer) {
+        long[] prices = new long[customer.getCartSize()];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = customer.getCartProduct(i).getPriceCents();
+        }
+        return prices;
     }
     
-    private void calculateTotal() {
-        orderTotal = 0.0;
-        for (int i = 0; i < products.size(); i++) {
-            orderTotal += products.get(i).getPrice() * quantities.get(i);
+    private static int[] cartQuantities(Customer customer) {
+        int[] quantities = new int[customer.getCartSize()];
+        for (int i = 0; i < quantities.length; i++) {
+            quantities[i] = customer.getCartQuantity(i);
         }
+        return quantities;
     }
     
-    public void updateStatus(String newStatus) {
+    // Like setStatus, and tells 'events' about it
+    public void updateStatus(String newStatus, OutputSink events) {
         try {
             setStatus(newStatus);
-            System.out.println("Order #" + orderID + " status updated to: " + newStatus);
+            events.emit(StoreEvent.info("orders", "Order #" + orderID + " status updated to: " + getStatus()));
         } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("Could not update order status: " + e.getMessage());
         }
     }
     
-    public void displayOrderSummary() {
+    // Shows the summary, all in one write. Product names come from 'catalog' (orders only
+    // keep IDs); prices are the ones paid.
+    public void displayOrderSummary(ProductCatalog catalog, OutputSink out) {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd, yyyy 'at' hh:mm a");
         
-        System.out.println("\n=== ORDER SUMMARY ===");
-        System.out.println("Order #: " + orderID);
-        System.out.println("Customer: " + customer.getName());
-        System.out.println("Email: " + customer.getEmail());
-        System.out.println("Order Date: " + orderDate.format(formatter));
-        System.out.println("Status: " + status);
-        System.out.println("\nItems Ordered:");
+        StringBuilder text = new StringBuilder(256 + lineProductIDs.length * 48);
+        text.append("\n=== ORDER SUMMARY ===\n");
+        text.append("Order #: ").append(orderID).append('\n');
+        text.append("Customer: ").append(customer.getName()).append('\n');
+        text.append("Email: ").append(customer.getEmail()).append('\n');
+        text.append("Order Date: ").append(orderDate.format(formatter)).append('\n');
+        text.append("Status: ").append(getStatus()).append('\n');
+        text.append("\nItems Ordered:\n");
         
-        for (int i = 0; i < products.size(); i++) {
-            Product product = products.get(i);
-            int qty = quantities.get(i);
-            double subtotal = product.getPrice() * qty;
-            System.out.printf("  %s x%d = $%.2f\n", product.getName(), qty, subtotal);
+        for (int i = 0; i < lineProductIDs.length; i++) {
+            Product product = catalog.get(lineProductIDs[i]);
+            String name = product != null ? product.getName() : "Product #" + lineProductIDs[i] + " (no longer sold)";
+            text.append("  ").append(name).append(" x").append(lineQuantities[i])
+                    .append(" = $").append(Money.format(getLineTotalCents(i))).append('\n');
         }
         
-        System.out.printf("\nOrder Total: $%.2f\n", orderTotal);
-        System.out.println("=====================");
+        text.append("\nOrder Total: $").append(Money.format(totalCents)).append('\n');
+        text.append("=====================\n");
+        out.write(text.toString());
     }
     
     @Override
     public String toString() {
-        return "Order #" + orderID + " - " + customer.getName() + " - $" + String.format("%.2f", orderTotal) + " (" + status + ")";
+        return "Order #" + orderID + " - " + customer.getName() + " - $" + Money.format(totalCents) + " (" + getStatus() + ")";
     }
 }
@@ -0,0 +1,432 @@
+package com.ecommerce.orders;
+
+import com.ecommerce.util.IntIntHashMap;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Every order, indexed for the lookups the store needs.
+// Orders sit in a dense array in the order they were added, and an int-keyed map points
+// each orderID at its slot (O(1), nothing boxed). Alongside that:
+//   - by customer: each customer's slots, oldest first, so "this customer's orders" only
+//     touches that customer's orders however many there are in total
+//   - by status: one bit set over the slots per status, so changing a status is O(1) and
+//     a status filter costs one bit test
+//   - by date: the slots sorted by order date, for range queries and "latest N"
+// The repository registers itself as each order's status listener, so setStatus keeps the
+// status index in sync; its own listeners (e.g. the journal) are told about every change.
+// Bulk updates (see applyStatusChanges) move their orders in the status index a whole batch
+// at a time, so many threads updating at once don't take the write lock once per order.
+// Orders are never removed. Safe to use from many threads at once.
+public class OrderRepository {
+    private static final int STATUS_COUNT = OrderStatus.values().length;
+    private static final int NOT_FOUND = -1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<OrderStatusListener> listeners = new CopyOnWriteArrayList<>();
+    private final OrderStatusListener statusForwarder = this::statusChanged;
+    // Orders whose status changed inside applyStatusChanges on this thread, not yet re-indexed
+    private final ThreadLocal<List<Order>> pendingReindex = new ThreadLocal<>();
+    // Goes up after every add and status change (see version())
+    private final AtomicLong version = new AtomicLong();
+
+    private final IntIntHashMap slotsByID;
+    private Order[] orders;
+    private long[] dateKeys;      // by slot, see dateKey()
+    private byte[] statusCodes;   // by slot, the OrderStatus ordinal
+    private int size;
+
+    private final BitSet[] slotsByStatus = new BitSet[STATUS_COUNT];
+    private final int[] statusCounts = new int[STATUS_COUNT];
+
+    private final IntIntHashMap customerLists; // customerID -> index into customerSlots
+    private int[][] customerSlots = new int[16][];
+    private int[] customerSizes = new int[16];
+    private int customerCount;
+
+    private int[] slotsByDate; // first 'size' entries are slots, oldest order first
+
+    public OrderRepository() {
+        this(16);
+    }
+
+    public OrderRepository(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected number of orders can't be negative.");
+        }
+        int capacity = Math.max(expectedSize, 16);
+        this.slotsByID = new IntIntHashMap(expectedSize, NOT_FOUND);
+        this.customerLists = new IntIntHashMap(16, NOT_FOUND);
+        this.orders = new Order[capacity];
+        this.dateKeys = new long[capacity];
+        this.statusCodes = new byte[capacity];
+        this.slotsByDate = new int[capacity];
+        for (int i = 0; i < STATUS_COUNT; i++) {
+            slotsByStatus[i] = new BitSet();
+        }
+    }
+
+    // Listeners hear about every status change of every order in the repository
+    public void addListener(OrderStatusListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener can't be null.");
+        }
+        listeners.add(listener);
+    }
+
+    public void removeListener(OrderStatusListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Adds an order; throws IllegalArgumentException if one with the same ID is already here
+    public void add(Order order) {
+        if (order == null) {
+            throw new IllegalArgumentException("Can't add a null order.");
+        }
+        // Listen first: a status change from now on either lands before the order is
+        // indexed (and the index below reads the new status) or after (and moves it).
+        // Only changes to orders already indexed are passed on to the listeners.
+        order.setStatusListener(statusForwarder);
+        lock.writeLock().lock();
+        try {
+            int existing = slotsByID.get(order.getOrderID());
+            if (existing != NOT_FOUND) {
+                if (orders[existing] != order) {
+                    order.setStatusListener(null); // turned away, so its changes aren't ours to index or pass on
+                }
+                throw new IllegalArgumentException("Order #" + order.getOrderID() + " is already stored.");
+            }
+            if (size == orders.length) {
+                grow();
+            }
+            int slot = size++;
+            orders[slot] = order;
+            slotsByID.put(order.getOrderID(), slot);
+
+            int code = order.getStatus().ordinal();
+            statusCodes[slot] = (byte) code;
+            slotsByStatus[code].set(slot);
+            statusCounts[code]++;
+
+            addToCustomer(order.getCustomer().getCustomerID(), slot);
+            addToDateIndex(slot, dateKey(order.getOrderDate()));
+            version.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Goes up whenever an order is added or changes status, so anything built from the
+    // orders at one version (e.g. a report snapshot) is still current while it reads the same
+    public long version() {
+        return version.get();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Looks up 'count' orders at once, under one lock: into[i] is the order with ID
+    // orderIDs[i], or null if there is none
+    public void get(int[] orderIDs, int count, Order[] into) {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                int slot = slotsByID.get(orderIDs[i]);
+                into[i] = slot == NOT_FOUND ? null : orders[slot];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Runs 'changes' (status changes to orders in this repository, made on this thread),
+    // then moves every order it changed in the status index under one acquisition of the
+    // write lock instead of one per change. Listeners still hear about each change as it
+    // happens; only the status queries (findByStatus, countByStatus, findByCustomer with a
+    // status) may lag behind until 'changes' returns.
+    public void applyStatusChanges(Runnable changes) {
+        if (pendingReindex.get() != null) {
+            changes.run(); // already inside a batch
+            return;
+        }
+        List<Order> changed = new ArrayList<>();
+        pendingReindex.set(changed);
+        try {
+            changes.run();
+        } finally {
+            pendingReindex.remove();
+            if (!changed.isEmpty()) {
+                lock.writeLock().lock();
+                try {
+                    for (Order order : changed) {
+                        reindex(order);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    // Finds an order by its ID, returns null if there is no such order
+    public Order get(int orderID) {
+        lock.readLock().lock();
+        try {
+            int slot = slotsByID.get(orderID);
+            return slot == NOT_FOUND ? null : orders[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Every order, in the order they were added
+    public List<Order> all() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(Arrays.asList(orders).subList(0, size));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // A customer's orders, oldest first
+    public List<Order> findByCustomer(int customerID) {
+        return findByCustomer(customerID, null);
+    }
+
+    // A customer's orders with the given status (or any status if null), oldest first
+    public List<Order> findByCustomer(int customerID, OrderStatus status) {
+        int code = status == null ? NOT_FOUND : status.ordinal();
+        lock.readLock().lock();
+        try {
+            int list = customerLists.get(customerID);
+            if (list == NOT_FOUND) {
+                return new ArrayList<>();
+            }
+            int[] slots = customerSlots[list];
+            int count = customerSizes[list];
+            List<Order> result = new ArrayList<>(code == NOT_FOUND ? count : Math.min(count, 16));
+            for (int i = 0; i < count; i++) {
+                if (code == NOT_FOUND || statusCodes[slots[i]] == code) {
+                    result.add(orders[slots[i]]);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Up to 'limit' orders with the given status, in the order they were added (oldest first)
+    public List<Order> findByStatus(OrderStatus status, int limit) {
+        int code = checkStatus(status).ordinal();
+        checkLimit(limit);
+        lock.readLock().lock();
+        try {
+            BitSet slots = slotsByStatus[code];
+            List<Order> result = new ArrayList<>(Math.min(limit, statusCounts[code]));
+            for (int slot = slots.nextSetBit(0); slot >= 0 && result.size() < limit; slot = slots.nextSetBit(slot + 1)) {
+                result.add(orders[slot]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int countByStatus(OrderStatus status) {
+        int code = checkStatus(status).ordinal();
+        lock.readLock().lock();
+        try {
+            return statusCounts[code];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Orders placed from 'from' (inclusive) up to 'to' (exclusive), oldest first.
+    // Either end may be null for "no limit".
+    public List<Order> findByDate(LocalDateTime from, LocalDateTime to) {
+        lock.readLock().lock();
+        try {
+            int start = from == null ? 0 : firstOnOrAfter(dateKey(from));
+            int end = to == null ? size : firstOnOrAfter(dateKey(to));
+            List<Order> result = new ArrayList<>(Math.max(end - start, 0));
+            for (int i = start; i < end; i++) {
+                result.add(orders[slotsByDate[i]]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The 'limit' most recent orders, newest first
+    public List<Order> latest(int limit) {
+        checkLimit(limit);
+        lock.readLock().lock();
+        try {
+            List<Order> result = new ArrayList<>(Math.min(limit, size));
+            for (int i = size - 1; i >= 0 && result.size() < limit; i--) {
+                result.add(orders[slotsByDate[i]]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Moves the order to its new status's index (now, or at the end of the batch this
+    // thread is in), then tells the listeners. Reindexing follows the order's current
+    // status rather than 'newStatus', so changes arriving out of order still leave it
+    // under the right one.
+    private void statusChanged(Order order, OrderStatus oldStatus, OrderStatus newStatus, long sequence) {
+        List<Order> batch = pendingReindex.get();
+        if (batch != null) {
+            batch.add(order);
+        } else {
+            boolean stored;
+            lock.writeLock().lock();
+            try {
+                stored = reindex(order);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (!stored) {
+                return; // isn't indexed yet
+            }
+        }
+        version.incrementAndGet();
+        for (OrderStatusListener listener : listeners) {
+            listener.statusChanged(order, oldStatus, newStatus, sequence);
+        }
+    }
+
+    // Holding the write lock: puts the order under its current status in the index. The
+    // index always follows the order's current status, so two changes racing each other
+    // can't leave it pointing at a status the order no longer has. False if the order
+    // isn't in the repository.
+    private boolean reindex(Order order) {
+        int slot = slotsByID.get(order.getOrderID());
+        if (slot == NOT_FOUND || orders[slot] != order) {
+            return false;
+        }
+        int oldCode = statusCodes[slot];
+        int newCode = order.getStatus().ordinal();
+        if (oldCode != newCode) {
+            slotsByStatus[oldCode].clear(slot);
+            statusCounts[oldCode]--;
+            slotsByStatus[newCode].set(slot);
+            statusCounts[newCode]++;
+            statusCodes[slot] = (byte) newCode;
+        }
+        return true;
+    }
+
+    private void addToCustomer(int customerID, int slot) {
+        int list = customerLists.get(customerID);
+        if (list == NOT_FOUND) {
+            if (customerCount == customerSlots.length) {
+                customerSlots = Arrays.copyOf(customerSlots, customerCount << 1);
+                customerSizes = Arrays.copyOf(customerSizes, customerCount << 1);
+            }
+            list = customerCount++;
+            customerSlots[list] = new int[4];
+            customerLists.put(customerID, list);
+        }
+        int count = customerSizes[list];
+        if (count == customerSlots[list].length) {
+            customerSlots[list] = Arrays.copyOf(customerSlots[list], count << 1);
+        }
+        customerSlots[list][count] = slot;
+        customerSizes[list] = count + 1;
+    }
+
+    // Orders nearly always arrive in date order, so this is almost always an append
+    private void addToDateIndex(int slot, long key) {
+        dateKeys[slot] = key;
+        int position = size - 1;
+        if (position > 0 && dateKeys[slotsByDate[position - 1]] > key) {
+            position = firstAfter(key, position);
+            System.arraycopy(slotsByDate, position, slotsByDate, position + 1, size - 1 - position);
+        }
+        slotsByDate[position] = slot;
+    }
+
+    // First position in the date index whose order is on or after 'key'
+    private int firstOnOrAfter(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dateKeys[slotsByDate[mid]] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First position (below 'limit') whose order is after 'key', so equal dates keep arrival order
+    private int firstAfter(long key, int limit) {
+        int low = 0;
+        int high = limit;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dateKeys[slotsByDate[mid]] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void grow() {
+        int capacity = orders.length << 1;
+        orders = Arrays.copyOf(orders, capacity);
+        dateKeys = Arrays.copyOf(dateKeys, capacity);
+        statusCodes = Arrays.copyOf(statusCodes, capacity);
+        slotsByDate = Arrays.copyOf(slotsByDate, capacity);
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be at least 1.");
+        }
+    }
+
+    private static OrderStatus checkStatus(OrderStatus status) {
+        if (status == null) {
+            throw new IllegalArgumentException("Order status cannot be empty.");
+        }
+        return status;
+    }
+
+    // Orders dates by their wall-clock reading; only the ordering matters here.
+    // Nanoseconds fit a long until the year 2262; dates beyond either end are clamped.
+    private static long dateKey(LocalDateTime date) {
+        long seconds = date.toEpochSecond(ZoneOffset.UTC);
+        if (seconds >= Long.MAX_VALUE / 1_000_000_000L) {
+            return Long.MAX_VALUE;
+        }
+        if (seconds <= Long.MIN_VALUE / 1_000_000_000L) {
+            return Long.MIN_VALUE;
+        }
+        return seconds * 1_000_000_000L + date.getNano();
+    }
+}
@@ -0,0 +1,92 @@
+package com.ecommerce.orders;
+
+import java.util.Locale;
+
+// The stages an order goes through, and which stage may follow which:
+//
+//   Pending    -> Confirmed, Cancelled
+//   Confirmed  -> Processing, Shipped, Cancelled
+//   Processing -> Shipped, Cancelled
+//   Shipped    -> Delivered
+//   Delivered and Cancelled are final.
+//
+// Each status keeps the statuses it may move to as one bit per ordinal, so checking a
+// transition is a single bit test. "Moving" to the status an order already has is always
+// allowed and changes nothing.
+public enum OrderStatus {
+    PENDING("Pending"),
+    CONFIRMED("Confirmed"),
+    PROCESSING("Processing"),
+    SHIPPED("Shipped"),
+    DELIVERED("Delivered"),
+    CANCELLED("Cancelled");
+
+    private static final OrderStatus[] VALUES = values();
+
+    static {
+        PENDING.allow(CONFIRMED, CANCELLED);
+        CONFIRMED.allow(PROCESSING, SHIPPED, CANCELLED);
+        PROCESSING.allow(SHIPPED, CANCELLED);
+        SHIPPED.allow(DELIVERED);
+    }
+
+    private final String displayName;
+    private int next; // bit i set: may move to VALUES[i]
+
+    OrderStatus(String displayName) {
+        this.displayName = displayName;
+    }
+
+    private void allow(OrderStatus... targets) {
+        for (OrderStatus target : targets) {
+            next |= 1 << target.ordinal();
+        }
+    }
+
+    public String getDisplayName() { return displayName; }
+
+    public boolean canMoveTo(OrderStatus target) {
+        return target == this || (next & (1 << target.ordinal())) != 0;
+    }
+
+    public boolean isFinal() {
+        return next == 0;
+    }
+
+    // The statuses this one may move to, in the order they are declared
+    public OrderStatus[] nextStatuses() {
+        OrderStatus[] result = new OrderStatus[Integer.bitCount(next)];
+        int count = 0;
+        for (int bits = next; bits != 0; bits &= bits - 1) {
+            result[count++] = VALUES[Integer.numberOfTrailingZeros(bits)];
+        }
+        return result;
+    }
+
+    // Accepts display names in any case ("shipped", "Shipped", "SHIPPED")
+    public static OrderStatus parse(String status) {
+        if (status == null || status.trim().isEmpty()) {
+            throw new IllegalArgumentException("Order status cannot be empty.");
+        }
+        switch (status.trim().toLowerCase(Locale.ROOT)) {
+            case "pending": return PENDING;
+            case "confirmed": return CONFIRMED;
+            case "processing": return PROCESSING;
+            case "shipped": return SHIPPED;
+            case "delivered": return DELIVERED;
+            case "cancelled": return CANCELLED;
+            default:
+                throw new IllegalArgumentException("Invalid order status. Valid options are: Pending, Confirmed, Processing, Shipped, Delivered, Cancelled");
+        }
+    }
+
+    // The status with the given ordinal, e.g. one kept in a byte array
+    public static OrderStatus ofOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
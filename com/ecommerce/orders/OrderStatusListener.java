@@ -0,0 +1,9 @@
+package com.ecommerce.orders;
+
+// Gets told whenever an order's status changes (see Order.setStatusListener).
+// Calls come after the change, with no lock held, so two changes to the same order can
+// arrive in either order; 'sequence' (Order.getStatusSequence right after this change) is
+// higher for the later one.
+public interface OrderStatusListener {
+    void statusChanged(Order order, OrderStatus oldStatus, OrderStatus newStatus, long sequence);
+}
@@ -0,0 +1,319 @@
+package com.ecommerce.orders;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// Applies a fulfillment status feed (e.g. the warehouse's shipped/delivered notices) to
+// the orders in a repository. A feed is a text file with one update per line:
+//
+//   orderID,status        e.g.  1042,Shipped
+//
+// Blank lines and lines starting with '#' are skipped, and so is a header line at the top.
+//
+// The file is streamed, never loaded: the reading thread parses lines and hands each update
+// to one of several workers, chosen by orderID. All updates for one order therefore go to
+// the same worker and are applied in file order, while different orders are updated in
+// parallel. Updates travel in small batches through bounded queues, so when the workers
+// fall behind the reader waits for them, and memory stays the same whatever the file size.
+// A worker looks up a batch's orders, and moves them in the repository's status index, with
+// one lock acquisition each per batch rather than per line.
+//
+// A bad line (unparseable, unknown order, a transition the order's status doesn't allow)
+// is reported to the FailureListener and the rest of the feed carries on.
+public class StatusFeedProcessor {
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    private static final int QUEUED_BATCHES_PER_WORKER = 4;
+
+    // Told about every line that couldn't be applied. Called from several threads at once,
+    // not necessarily in line order.
+    public interface FailureListener {
+        void lineFailed(long lineNumber, String reason);
+    }
+
+    // What a run did, once it has finished
+    public static final class Summary {
+        private final long lines;
+        private final long applied;
+        private final long unchanged;
+        private final long failed;
+
+        Summary(long lines, long applied, long unchanged, long failed) {
+            this.lines = lines;
+            this.applied = applied;
+            this.unchanged = unchanged;
+            this.failed = failed;
+        }
+
+        public long getLines() { return lines; }          // lines read, including skipped ones
+        public long getApplied() { return applied; }      // updates that changed an order's status
+        public long getUnchanged() { return unchanged; }  // updates to the status the order already had
+        public long getFailed() { return failed; }
+
+        @Override
+        public String toString() {
+            return lines + " lines: " + applied + " applied, " + unchanged + " unchanged, " + failed + " failed";
+        }
+    }
+
+    private final OrderRepository orders;
+    private final int workers;
+    private final int batchSize;
+
+    public StatusFeedProcessor(OrderRepository orders) {
+        this(orders, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+    }
+
+    public StatusFeedProcessor(OrderRepository orders, int workers, int batchSize) {
+        if (orders == null) {
+            throw new IllegalArgumentException("An order repository is required.");
+        }
+        if (workers <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Workers and batch size must be at least 1.");
+        }
+        this.orders = orders;
+        this.workers = workers;
+        this.batchSize = batchSize;
+    }
+
+    // Applies every update in 'feed' and returns once all of them have been tried
+    public Summary process(Path feed, FailureListener failures) throws IOException {
+        if (feed == null || failures == null) {
+            throw new IllegalArgumentException("A feed file and a failure listener are required.");
+        }
+        Run run = new Run(failures);
+        Worker[] pool = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            pool[i] = new Worker(run);
+            pool[i].thread = new Thread(pool[i], "status-feed-" + i);
+            pool[i].thread.setDaemon(true);
+            pool[i].thread.start();
+        }
+
+        long lineNumber = 0;
+        boolean interrupted = false;
+        try (BufferedReader reader = Files.newBufferedReader(feed, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null && run.error.get() == null) {
+                lineNumber++;
+                String text = line.trim();
+                if (text.isEmpty() || text.charAt(0) == '#') {
+                    continue;
+                }
+                int comma = text.indexOf(',');
+                int orderID;
+                OrderStatus status;
+                try {
+                    if (comma < 0) {
+                        throw new IllegalArgumentException("Expected 'orderID,status'.");
+                    }
+                    orderID = parseOrderID(text.substring(0, comma).trim());
+                    status = OrderStatus.parse(text.substring(comma + 1));
+                } catch (IllegalArgumentException e) {
+                    if (lineNumber == 1 && isHeader(text, comma)) {
+                        continue;
+                    }
+                    run.fail(lineNumber, e.getMessage());
+                    continue;
+                }
+                Worker worker = pool[Math.floorMod(orderID * 0x9E3779B9, workers)];
+                worker.add(lineNumber, orderID, status);
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            // Hand over what's left and wait for every worker, even if reading failed part way
+            for (Worker worker : pool) {
+                worker.finish();
+            }
+            for (Worker worker : pool) {
+                try {
+                    worker.thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    worker.thread.interrupt();
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        RuntimeException error = run.error.get();
+        if (error != null) {
+            throw error;
+        }
+        if (interrupted) {
+            throw new IllegalStateException("Interrupted while applying " + feed + ".");
+        }
+        return new Summary(lineNumber, run.applied.sum(), run.unchanged.sum(), run.failed.sum());
+    }
+
+    private static int parseOrderID(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("'" + text + "' is not an order ID.");
+        }
+    }
+
+    // A first line like "orderID,status": no number where the order ID should be
+    private static boolean isHeader(String text, int comma) {
+        return comma > 0 && !Character.isDigit(text.charAt(0));
+    }
+
+    // State shared by the reader and the workers of one process() call
+    private static final class Run {
+        final FailureListener failures;
+        final LongAdder applied = new LongAdder();
+        final LongAdder unchanged = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final AtomicReference<RuntimeException> error = new AtomicReference<>(); // stops the run
+
+        Run(FailureListener failures) {
+            this.failures = failures;
+        }
+
+        void fail(long lineNumber, String reason) {
+            failed.increment();
+            failures.lineFailed(lineNumber, reason);
+        }
+    }
+
+    // Updates for one worker, as parallel arrays so a batch is three allocations
+    private static final class Batch {
+        final long[] lineNumbers;
+        final int[] orderIDs;
+        final OrderStatus[] statuses;
+        int size;
+
+        Batch(int capacity) {
+            lineNumbers = new long[capacity];
+            orderIDs = new int[capacity];
+            statuses = new OrderStatus[capacity];
+        }
+    }
+
+    private static final Batch END = new Batch(0);
+
+    private final class Worker implements Runnable {
+        private final Run run;
+        private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES_PER_WORKER);
+        private Batch filling = new Batch(batchSize); // only touched by the reader
+        private Order[] found = new Order[0];          // only touched by the worker
+        private Thread thread;
+
+        Worker(Run run) {
+            this.run = run;
+        }
+
+        // Reader side: blocks while this worker's queue is full
+        void add(long lineNumber, int orderID, OrderStatus status) throws InterruptedException {
+            Batch batch = filling;
+            batch.lineNumbers[batch.size] = lineNumber;
+            batch.orderIDs[batch.size] = orderID;
+            batch.statuses[batch.size] = status;
+            if (++batch.size == batchSize) {
+                queue.put(batch);
+                filling = new Batch(batchSize);
+            }
+        }
+
+        void finish() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (filling.size > 0) {
+                        queue.put(filling);
+                        filling = new Batch(0);
+                    }
+                    queue.put(END);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true; // the worker must still be told to stop
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Batch batch;
+                while ((batch = queue.take()) != END) {
+                    if (run.error.get() == null) {
+                        apply(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // Not a bad line but something broken (e.g. a listener failing): stop the run,
+                // but keep the queue draining so the reader can't block on it forever
+                run.error.compareAndSet(null, e);
+                drain();
+            }
+        }
+
+        private void drain() {
+            try {
+                while (queue.take() != END) {
+                    // discard
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // One read lock to find the batch's orders and one write lock to re-index them
+        // (see OrderRepository.applyStatusChanges), however many lines the batch has
+        private void apply(Batch batch) {
+            if (found.length < batch.size) {
+                found = new Order[batch.size];
+            }
+            orders.get(batch.orderIDs, batch.size, found);
+            orders.applyStatusChanges(() -> applyLines(batch));
+            Arrays.fill(found, 0, batch.size, null);
+        }
+
+        private void applyLines(Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                Order order = found[i];
+                if (order == null) {
+                    run.fail(batch.lineNumbers[i], "Order #" + batch.orderIDs[i] + " not found.");
+                    continue;
+                }
+                OrderStatus target = batch.statuses[i];
+                OrderStatus current = order.getStatus();
+                if (current == target) {
+                    run.unchanged.increment();
+                    continue;
+                }
+                try {
+                    // Loses only to a change made outside the feed; then re-check against that
+                    while (!order.compareAndSetStatus(current, target)) {
+                        current = order.getStatus();
+                        if (current == target) {
+                            break;
+                        }
+                    }
+                    if (current == target) {
+                        run.unchanged.increment();
+                    } else {
+                        run.applied.increment();
+                    }
+                } catch (IllegalArgumentException e) {
+                    run.fail(batch.lineNumbers[i], e.getMessage());
+                }
+            }
+        }
+    }
+}
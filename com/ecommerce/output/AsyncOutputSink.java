@@ -0,0 +1,239 @@
+package com.ecommerce.output;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// An OutputSink that never makes the caller wait for the terminal.
+// write() only puts the text into a bounded ring buffer (an ArrayBlockingQueue); one
+// background thread takes whatever has piled up, up to MAX_BATCH pieces at a time, and
+// hands it to the PrintStream as a single string with a single flush. Threads printing at
+// the same time only meet briefly at the queue, instead of taking turns on every
+// System.out call and its system call.
+//
+// When the buffer is full the OverflowPolicy decides: BLOCK makes the writer wait for
+// space (nothing is ever lost; right for the console menu), DROP throws the text away and
+// carries on (right for busy servers, where a slow terminal must not slow down requests).
+// Dropped text is counted and reported in the output itself.
+//
+// flush() waits until everything written before it is out, so call it before waiting for
+// input; otherwise a prompt may still be in the buffer. Text written after close() goes
+// straight to the stream, and so does text under BLOCK if the writer thread has died.
+public class AsyncOutputSink implements OutputSink, Closeable {
+    public static final int DEFAULT_CAPACITY = 8192;
+    private static final int MAX_BATCH = 1024;
+    private static final Object SHUTDOWN = new Object();
+
+    public enum OverflowPolicy {
+        BLOCK, DROP;
+
+        public static OverflowPolicy parse(String policy) {
+            if (policy == null || policy.trim().isEmpty()) {
+                throw new IllegalArgumentException("Output policy cannot be empty.");
+            }
+            switch (policy.trim().toLowerCase(Locale.ROOT)) {
+                case "block": return BLOCK;
+                case "drop": return DROP;
+                default:
+                    throw new IllegalArgumentException("Invalid output policy '" + policy + "'. Valid options are: block, drop");
+            }
+        }
+    }
+
+    private final PrintStream target;
+    private final OverflowPolicy policy;
+    private final BlockingQueue<Object> queue; // text, flush requests (CountDownLatch) and SHUTDOWN
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+    private long droppedReported; // the writer thread, then writeLeftovers once it has stopped
+
+    public AsyncOutputSink(PrintStream target) {
+        this(target, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
+    public AsyncOutputSink(PrintStream target, int capacity, OverflowPolicy policy) {
+        if (target == null || policy == null) {
+            throw new IllegalArgumentException("Output needs a stream and an overflow policy.");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Output buffer capacity must be positive.");
+        }
+        this.target = target;
+        this.policy = policy;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::runWriter, "output-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void write(String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        if (closed) {
+            target.print(text);
+            return;
+        }
+        boolean queued;
+        if (policy == OverflowPolicy.DROP) {
+            queued = queue.offer(text);
+            if (!queued) {
+                dropped.increment();
+            }
+        } else {
+            try {
+                queued = enqueue(text);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.increment();
+                return;
+            }
+            if (!queued) {
+                target.print(text); // the writer thread is gone
+            }
+        }
+        if (queued && closed && !writer.isAlive()) {
+            // close() may have taken its last look at the queue before this text arrived
+            writeLeftovers();
+        }
+    }
+
+    // A flush request waits for space even under DROP; it must not get lost
+    @Override
+    public void flush() {
+        if (closed || Thread.currentThread() == writer) {
+            target.flush();
+            return;
+        }
+        CountDownLatch written = new CountDownLatch(1);
+        try {
+            if (!enqueue(written)) {
+                target.flush();
+                return;
+            }
+            while (!written.await(100, TimeUnit.MILLISECONDS)) {
+                if (!writer.isAlive()) {
+                    target.flush(); // closed while we were queuing
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Pieces of text thrown away because the buffer was full (DROP only)
+    @Override
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public OverflowPolicy getPolicy() { return policy; }
+
+    // Writes out everything still in the buffer and stops the background thread
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // Doesn't wait on a full queue whose writer thread has died
+            enqueue(SHUTDOWN);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeLeftovers();
+    }
+
+    // Puts 'item' on the queue, waiting for space as long as the writer thread is alive to
+    // make some; false if it isn't
+    private boolean enqueue(Object item) throws InterruptedException {
+        while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            if (!writer.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Once the writer thread has stopped: writes whatever is still queued, on the calling
+    // thread. A write() that checked 'closed' just before close() can queue text after the
+    // writer's last drain; close() and such a write() both end up here, so none is lost.
+    private void writeLeftovers() {
+        synchronized (queue) {
+            List<Object> rest = new ArrayList<>();
+            queue.drainTo(rest);
+            StringBuilder text = new StringBuilder();
+            for (Object item : rest) {
+                if (item instanceof String) {
+                    text.append((String) item);
+                } else if (item instanceof CountDownLatch) {
+                    ((CountDownLatch) item).countDown();
+                }
+            }
+            writeOut(text);
+        }
+    }
+
+    private void runWriter() {
+        List<Object> batch = new ArrayList<>(MAX_BATCH);
+        StringBuilder text = new StringBuilder(8192);
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            for (Object item : batch) {
+                if (item instanceof String) {
+                    text.append((String) item);
+                } else if (item instanceof CountDownLatch) {
+                    writeOut(text);
+                    ((CountDownLatch) item).countDown();
+                } else if (item == SHUTDOWN) {
+                    running = false;
+                }
+            }
+            batch.clear();
+            if (!running) {
+                // Anything that slipped in while closing
+                queue.drainTo(batch);
+                for (Object item : batch) {
+                    if (item instanceof String) {
+                        text.append((String) item);
+                    } else if (item instanceof CountDownLatch) {
+                        ((CountDownLatch) item).countDown();
+                    }
+                }
+            }
+            writeOut(text);
+        }
+    }
+
+    private void writeOut(StringBuilder text) {
+        long lost = dropped.sum() - droppedReported;
+        droppedReported += lost;
+        if (lost > 0) {
+            text.append("(").append(lost).append(lost == 1 ? " message" : " messages")
+                    .append(" of output dropped: the output buffer was full)\n");
+        }
+        if (text.length() > 0) {
+            target.print(text);
+            text.setLength(0);
+        }
+        target.flush();
+    }
+}
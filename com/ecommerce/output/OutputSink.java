@@ -0,0 +1,43 @@
+package com.ecommerce.output;
+
+import java.io.PrintStream;
+
+// Where text for the person using the store goes: the console menu's screens, order
+// summaries, and StoreEvents. Domain classes write to a sink they are given instead of
+// to System.out, so the console can decide how output reaches the terminal (see
+// AsyncOutputSink) and other callers can send it elsewhere.
+public interface OutputSink {
+    // Writes 'text' exactly as given; include the line breaks
+    void write(String text);
+
+    // Returns once everything written so far has reached its destination
+    void flush();
+
+    // Text thrown away because it couldn't be written fast enough; 0 for sinks that never drop
+    default long getDroppedCount() {
+        return 0;
+    }
+
+    // Shows an event on a line of its own
+    default void emit(StoreEvent event) {
+        write(event.format() + "\n");
+    }
+
+    // Writes straight to 'stream' on the calling thread, for tools and tests
+    static OutputSink direct(PrintStream stream) {
+        if (stream == null) {
+            throw new IllegalArgumentException("Output stream can't be null.");
+        }
+        return new OutputSink() {
+            @Override
+            public void write(String text) {
+                stream.print(text);
+            }
+
+            @Override
+            public void flush() {
+                stream.flush();
+            }
+        };
+    }
+}
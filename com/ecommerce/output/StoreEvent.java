@@ -0,0 +1,48 @@
+package com.ecommerce.output;
+
+// Something the store wants whoever runs it to know about, e.g. an order changing status
+// or a cart that couldn't be saved. Classes outside the user interface report events
+// like this to an OutputSink instead of printing, and the sink decides how and where
+// they are shown.
+public final class StoreEvent {
+    public enum Level { INFO, WARNING }
+
+    private final long timeMillis;
+    private final Level level;
+    private final String source;
+    private final String message;
+
+    private StoreEvent(Level level, String source, String message) {
+        if (source == null || message == null) {
+            throw new IllegalArgumentException("An event needs a source and a message.");
+        }
+        this.timeMillis = System.currentTimeMillis();
+        this.level = level;
+        this.source = source;
+        this.message = message;
+    }
+
+    // 'source' names the part of the store it came from, e.g. "orders" or "sessions"
+    public static StoreEvent info(String source, String message) {
+        return new StoreEvent(Level.INFO, source, message);
+    }
+
+    public static StoreEvent warning(String source, String message) {
+        return new StoreEvent(Level.WARNING, source, message);
+    }
+
+    public long getTimeMillis() { return timeMillis; }
+    public Level getLevel() { return level; }
+    public String getSource() { return source; }
+    public String getMessage() { return message; }
+
+    // One line, as the console shows it
+    public String format() {
+        return level == Level.WARNING ? "⚠️ " + message : message;
+    }
+
+    @Override
+    public String toString() {
+        return level + " [" + source + "] " + message;
+    }
+}
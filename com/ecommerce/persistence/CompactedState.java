@@ -0,0 +1,103 @@
+package com.ecommerce.persistence;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The store's state folded down to one entry per product, customer and order.
+// Built by replaying a snapshot plus the journal segments after it; stock reductions
+// and status changes are applied to the entries instead of being kept as history.
+final class CompactedState implements JournalHandler {
+    final Map<Integer, ProductEntry> products = new LinkedHashMap<>();
+    final Map<Integer, CustomerEntry> customers = new LinkedHashMap<>();
+    final Map<Integer, OrderEntry> orders = new LinkedHashMap<>();
+
+    static final class ProductEntry {
+        final int productID;
+        final String name;
+        final long priceCents;
+        final String description;
+        int stock;
+
+        ProductEntry(int productID, String name, long priceCents, String description, int stock) {
+            this.productID = productID;
+            this.name = name;
+            this.priceCents = priceCents;
+            this.description = description;
+            this.stock = stock;
+        }
+    }
+
+    static final class CustomerEntry {
+        final int customerID;
+        final String name;
+        final String email;
+
+        CustomerEntry(int customerID, String name, String email) {
+            this.customerID = customerID;
+            this.name = name;
+            this.email = email;
+        }
+    }
+
+    static final class OrderEntry {
+        final int orderID;
+        final int customerID;
+        final long createdAtMillis;
+        String status;
+        long statusSequence;
+        final int[] productIDs;
+        final long[] unitPriceCents;
+        final int[] quantities;
+
+        OrderEntry(int orderID, int customerID, long createdAtMillis, String status,
+                   int[] productIDs, long[] unitPriceCents, int[] quantities) {
+            this.orderID = orderID;
+            this.customerID = customerID;
+            this.createdAtMillis = createdAtMillis;
+            this.status = status;
+            this.productIDs = productIDs;
+            this.unitPriceCents = unitPriceCents;
+            this.quantities = quantities;
+        }
+    }
+
+    @Override
+    public void productUpserted(int productID, String name, long priceCents, String description, int stock) {
+        products.put(productID, new ProductEntry(productID, name, priceCents, description, stock));
+    }
+
+    @Override
+    public void customerRegistered(int customerID, String name, String email) {
+        customers.put(customerID, new CustomerEntry(customerID, name, email));
+    }
+
+    @Override
+    public void orderCreated(int orderID, int customerID, long createdAtMillis, String status,
+                             int[] productIDs, long[] unitPriceCents, int[] quantities) {
+        orders.put(orderID, new OrderEntry(orderID, customerID, createdAtMillis, status,
+                productIDs, unitPriceCents, quantities));
+    }
+
+    @Override
+    public void statusChanged(int orderID, String status, long sequence) {
+        OrderEntry order = orders.get(orderID);
+        if (order == null) {
+            return;
+        }
+        if (sequence == 0) {
+            order.status = status;
+            order.statusSequence++;
+        } else if (sequence > order.statusSequence) {
+            order.status = status;
+            order.statusSequence = sequence;
+        }
+    }
+
+    @Override
+    public void stockReduced(int productID, int quantity) {
+        ProductEntry product = products.get(productID);
+        if (product != null) {
+            product.stock = Math.max(0, product.stock - quantity);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.ecommerce.persistence;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+// Binary layout of journal records.
+// Every record is framed as [int length][byte type][payload][int crc32], where length
+// covers type + payload and the CRC is taken over the same bytes. A frame that is cut
+// short or fails its CRC marks the end of the usable journal (e.g. a crash mid-write).
+final class JournalFormat {
+    static final byte CUSTOMER_REGISTERED = 1;
+    static final byte ORDER_CREATED = 2;
+    static final byte STATUS_CHANGED = 3;
+    static final byte STOCK_REDUCED = 4;
+    static final byte PRODUCT_UPSERTED = 5;
+    // STATUS_CHANGED plus the order's status sequence; the plain one is only read back
+    static final byte STATUS_SEQUENCED = 6;
+
+    static final int LENGTH_SIZE = 4;
+    static final int CRC_SIZE = 4;
+    static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    // decodeFrames result when a frame is damaged and nothing after it can be trusted
+    static final int CORRUPT = -1;
+
+    private JournalFormat() { }
+
+    static ByteBuffer productUpserted(int productID, String name, long priceCents, String description, int stock) {
+        byte[] nameBytes = utf8(name);
+        byte[] descriptionBytes = utf8(description);
+        ByteBuffer frame = begin(PRODUCT_UPSERTED, 4 + 4 + nameBytes.length + 8 + 4 + descriptionBytes.length + 4);
+        frame.putInt(productID);
+        putBytes(frame, nameBytes);
+        frame.putLong(priceCents);
+        putBytes(frame, descriptionBytes);
+        frame.putInt(stock);
+        return finish(frame);
+    }
+
+    static ByteBuffer customerRegistered(int customerID, String name, String email) {
+        byte[] nameBytes = utf8(name);
+        byte[] emailBytes = utf8(email);
+        ByteBuffer frame = begin(CUSTOMER_REGISTERED, 4 + 4 + nameBytes.length + 4 + emailBytes.length);
+        frame.putInt(customerID);
+        putBytes(frame, nameBytes);
+        putBytes(frame, emailBytes);
+        return finish(frame);
+    }
+
+    static ByteBuffer orderCreated(int orderID, int customerID, long createdAtMillis, String status,
+                                   int[] productIDs, long[] unitPriceCents, int[] quantities) {
+        byte[] statusBytes = utf8(status);
+        int lines = productIDs.length;
+        ByteBuffer frame = begin(ORDER_CREATED, 4 + 4 + 8 + 4 + statusBytes.length + 4 + lines * (4 + 8 + 4));
+        frame.putInt(orderID);
+        frame.putInt(customerID);
+        frame.putLong(createdAtMillis);
+        putBytes(frame, statusBytes);
+        frame.putInt(lines);
+        for (int i = 0; i < lines; i++) {
+            frame.putInt(productIDs[i]);
+            frame.putLong(unitPriceCents[i]);
+            frame.putInt(quantities[i]);
+        }
+        return finish(frame);
+    }
+
+    static ByteBuffer statusChanged(int orderID, String status, long sequence) {
+        byte[] statusBytes = utf8(status);
+        ByteBuffer frame = begin(STATUS_SEQUENCED, 4 + 8 + 4 + statusBytes.length);
+        frame.putInt(orderID);
+        frame.putLong(sequence);
+        putBytes(frame, statusBytes);
+        return finish(frame);
+    }
+
+    static ByteBuffer stockReduced(int productID, int quantity) {
+        ByteBuffer frame = begin(STOCK_REDUCED, 4 + 4);
+        frame.putInt(productID);
+        frame.putInt(quantity);
+        return finish(frame);
+    }
+
+    // Decodes every whole frame from the buffer's position onwards and hands it to the handler.
+    // The position ends up just after the last good frame. Returns CORRUPT if a damaged frame
+    // was found, otherwise the total size the next (incomplete) frame needs to be read.
+    static int decodeFrames(ByteBuffer buffer, JournalHandler handler) {
+        while (true) {
+            int start = buffer.position();
+            if (buffer.remaining() < LENGTH_SIZE) {
+                return LENGTH_SIZE;
+            }
+            int length = buffer.getInt(start);
+            if (length < 1 || length > MAX_RECORD_SIZE) {
+                return CORRUPT;
+            }
+            int frameSize = LENGTH_SIZE + length + CRC_SIZE;
+            if (buffer.remaining() < frameSize) {
+                return frameSize;
+            }
+
+            ByteBuffer body = buffer.duplicate();
+            body.position(start + LENGTH_SIZE).limit(start + LENGTH_SIZE + length);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(start + LENGTH_SIZE + length)) {
+                return CORRUPT;
+            }
+
+            Runnable record;
+            try {
+                record = decode(body, handler);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                return CORRUPT;
+            }
+            buffer.position(start + frameSize);
+            if (record != null) {
+                record.run();
+            }
+        }
+    }
+
+    // Reads one record body and returns the handler call it stands for (null for unknown types)
+    private static Runnable decode(ByteBuffer body, JournalHandler handler) {
+        byte type = body.get();
+        switch (type) {
+            case PRODUCT_UPSERTED: {
+                int productID = body.getInt();
+                String name = getString(body);
+                long priceCents = body.getLong();
+                String description = getString(body);
+                int stock = body.getInt();
+                return () -> handler.productUpserted(productID, name, priceCents, description, stock);
+            }
+            case CUSTOMER_REGISTERED: {
+                int customerID = body.getInt();
+                String name = getString(body);
+                String email = getString(body);
+                return () -> handler.customerRegistered(customerID, name, email);
+            }
+            case ORDER_CREATED: {
+                int orderID = body.getInt();
+                int customerID = body.getInt();
+                long createdAtMillis = body.getLong();
+                String status = getString(body);
+                int lines = body.getInt();
+                if (lines < 0 || lines > body.remaining() / (4 + 8 + 4)) {
+                    throw new IllegalArgumentException("Bad line count " + lines);
+                }
+                int[] productIDs = new int[lines];
+                long[] unitPriceCents = new long[lines];
+                int[] quantities = new int[lines];
+                for (int i = 0; i < lines; i++) {
+                    productIDs[i] = body.getInt();
+                    unitPriceCents[i] = body.getLong();
+                    quantities[i] = body.getInt();
+                }
+                return () -> handler.orderCreated(orderID, customerID, createdAtMillis, status,
+                        productIDs, unitPriceCents, quantities);
+            }
+            case STATUS_CHANGED: {
+                int orderID = body.getInt();
+                String status = getString(body);
+                return () -> handler.statusChanged(orderID, status, 0); // written before sequences
+            }
+            case STATUS_SEQUENCED: {
+                int orderID = body.getInt();
+                long sequence = body.getLong();
+                String status = getString(body);
+                return () -> handler.statusChanged(orderID, status, sequence);
+            }
+            case STOCK_REDUCED: {
+                int productID = body.getInt();
+                int quantity = body.getInt();
+                return () -> handler.stockReduced(productID, quantity);
+            }
+            default:
+                return null; // written by a newer version; skip it
+        }
+    }
+
+    private static ByteBuffer begin(byte type, int payloadSize) {
+        int length = 1 + payloadSize;
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_SIZE + length + CRC_SIZE);
+        frame.putInt(length);
+        frame.put(type);
+        return frame;
+    }
+
+    private static ByteBuffer finish(ByteBuffer frame) {
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), LENGTH_SIZE, frame.position() - LENGTH_SIZE);
+        frame.putInt((int) crc.getValue());
+        frame.flip();
+        return frame;
+    }
+
+    private static byte[] utf8(String text) {
+        return (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer frame, byte[] bytes) {
+        frame.putInt(bytes.length);
+        frame.put(bytes);
+    }
+
+    private static String getString(ByteBuffer body) {
+        int length = body.getInt();
+        if (length < 0 || length > body.remaining()) {
+            throw new IllegalArgumentException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
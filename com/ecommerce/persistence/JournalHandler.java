@@ -0,0 +1,22 @@
+package com.ecommerce.persistence;
+
+// Receives the records read back from the journal, in the order they were written.
+// Replaying them rebuilds the store's state after a restart.
+public interface JournalHandler {
+    // A product was added to the catalog, or its details were replaced
+    void productUpserted(int productID, String name, long priceCents, String description, int stock);
+
+    void customerRegistered(int customerID, String name, String email);
+
+    // One call per placed order; the three arrays hold the order lines side by side
+    void orderCreated(int orderID, int customerID, long createdAtMillis, String status,
+                      int[] productIDs, long[] unitPriceCents, int[] quantities);
+
+    // 'sequence' is the order's status sequence after the change (see Order.getStatusSequence).
+    // Changes to one order can be written out of order; one whose sequence isn't higher than
+    // the last applied is older and must be ignored. 0 means the record has no sequence
+    // (older journals), and it follows whatever came before it.
+    void statusChanged(int orderID, String status, long sequence);
+
+    void stockReduced(int productID, int quantity);
+}
@@ -0,0 +1,475 @@
+package com.ecommerce.persistence;
+
+import com.ecommerce.Customer;
+import com.ecommerce.Product;
+import com.ecommerce.orders.Order;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Append-only journal of everything that changes the store:
+// products being loaded, customers registering, orders being placed (with the stock they
+// took) and status changes.
+//
+// Records are appended through a FileChannel to numbered segment files in one directory.
+// Writes use group commit: callers hand their records to a background thread and get a
+// future back; the thread writes everything that has queued up in one go and calls force()
+// once for the whole batch, so many checkouts share a single disk sync. A future completes
+// only after its records are on disk.
+//
+// When a segment fills up a new one is started. Every few segments (and on compact()) a
+// second background thread folds the latest snapshot plus the finished segments into a new
+// snapshot and deletes what it replaced. It only reads files nobody writes to any more, so
+// checkouts never wait for it. On startup the latest snapshot is memory-mapped and replayed,
+// followed by just the segments written after it.
+public class OrderJournal implements Closeable {
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final int SEGMENTS_PER_SNAPSHOT = 4;
+
+    private static final int QUEUE_CAPACITY = 65536;
+    private static final int MAX_BATCH = 4096;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    private final Path directory;
+    private final long segmentSize;
+    private final BlockingQueue<PendingWrite> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private final ExecutorService compactor;
+    private final Thread flusher;
+    private boolean closed; // guarded by closeLock
+    private volatile IOException failure;
+
+    // Only the flusher thread touches these after open()
+    private FileChannel channel;
+    private long segmentNumber;
+    // Snapshot N holds everything from segments numbered below N (0 = no snapshot yet).
+    // Only the compactor thread changes it after open().
+    private volatile long snapshotNumber;
+
+    // Records from one caller, written together and acknowledged together.
+    // A write with 'compact' set also asks for a snapshot once it's on disk.
+    private static final class PendingWrite {
+        final ByteBuffer[] frames;
+        final CompletableFuture<Void> done;
+        final boolean compact;
+
+        PendingWrite(ByteBuffer[] frames, CompletableFuture<Void> done, boolean compact) {
+            this.frames = frames;
+            this.done = done;
+            this.compact = compact;
+        }
+    }
+
+    private static final PendingWrite SHUTDOWN = new PendingWrite(new ByteBuffer[0], null, false);
+
+    private OrderJournal(Path directory, long segmentSize, FileChannel channel, long segmentNumber, long snapshotNumber) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.channel = channel;
+        this.segmentNumber = segmentNumber;
+        this.snapshotNumber = snapshotNumber;
+        this.compactor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "order-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher = new Thread(this::runFlusher, "order-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public static OrderJournal open(Path directory, JournalHandler handler) throws IOException {
+        return open(directory, handler, DEFAULT_SEGMENT_SIZE);
+    }
+
+    // Replays the latest snapshot and every segment after it into the handler, cuts off a
+    // torn record left at the end by a crash (if any), and opens the last segment for appending.
+    // Creates the directory if needed.
+    public static OrderJournal open(Path directory, JournalHandler handler, long segmentSize) throws IOException {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive.");
+        }
+        Files.createDirectories(directory);
+        List<Long> snapshots = new ArrayList<>();
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file); // a snapshot that never finished
+                } else if (isNumbered(name, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+                    snapshots.add(number(name, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX));
+                } else if (isNumbered(name, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                    segments.add(number(name, SEGMENT_PREFIX, SEGMENT_SUFFIX));
+                }
+            }
+        }
+        Collections.sort(snapshots);
+        Collections.sort(segments);
+
+        long snapshotNumber = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+        if (snapshotNumber > 0) {
+            SnapshotFile.load(snapshotPath(directory, snapshotNumber), handler);
+        }
+        List<Long> live = new ArrayList<>();
+        for (long segment : segments) {
+            if (segment >= snapshotNumber) {
+                live.add(segment);
+            }
+        }
+        deleteCoveredFiles(directory, snapshotNumber); // left behind if a compaction was cut short
+
+        for (int i = 0; i < live.size() - 1; i++) {
+            try (FileChannel sealed = FileChannel.open(segmentPath(directory, live.get(i)), StandardOpenOption.READ)) {
+                if (replay(sealed, handler) != sealed.size()) {
+                    throw new IOException("Journal segment " + segmentPath(directory, live.get(i)) + " is damaged.");
+                }
+            }
+        }
+
+        long current = live.isEmpty() ? Math.max(snapshotNumber, 1) : live.get(live.size() - 1);
+        FileChannel channel = FileChannel.open(segmentPath(directory, current), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long validEnd = replay(channel, handler);
+            if (validEnd < channel.size()) {
+                channel.truncate(validEnd);
+                channel.force(true);
+            }
+            channel.position(validEnd);
+            return new OrderJournal(directory, segmentSize, channel, current, snapshotNumber);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Reads a segment from the start; returns where the last good record ends
+    private static long replay(FileChannel channel, JournalHandler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long bufferStart = 0; // file offset of buffer index 0
+        channel.position(0);
+        while (true) {
+            int read = channel.read(buffer);
+            buffer.flip();
+            int needed = JournalFormat.decodeFrames(buffer, handler);
+            long validEnd = bufferStart + buffer.position();
+            if (needed == JournalFormat.CORRUPT || read < 0) {
+                return validEnd;
+            }
+            bufferStart = validEnd;
+            buffer.compact();
+            if (needed > buffer.capacity()) {
+                ByteBuffer bigger = ByteBuffer.allocate(needed);
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+        }
+    }
+
+    public CompletableFuture<Void> recordProductUpserted(Product product) {
+        return submit(false, JournalFormat.productUpserted(product.getProductID(), product.getName(),
+                product.getPriceCents(), product.getDescription(), product.getStock()));
+    }
+
+    // Writes many products as a single unit (e.g. one batch of a bulk import)
+    public CompletableFuture<Void> recordProductsUpserted(Collection<Product> products) {
+        ByteBuffer[] frames = new ByteBuffer[products.size()];
+        int next = 0;
+        for (Product product : products) {
+            frames[next++] = JournalFormat.productUpserted(product.getProductID(), product.getName(),
+                    product.getPriceCents(), product.getDescription(), product.getStock());
+        }
+        return submit(false, frames);
+    }
+
+    public CompletableFuture<Void> recordCustomerRegistered(Customer customer) {
+        return submit(false, JournalFormat.customerRegistered(customer.getCustomerID(), customer.getName(), customer.getEmail()));
+    }
+
+    // Writes the order and one stock-reduction record per line, as a single unit
+    public CompletableFuture<Void> recordOrderPlaced(Order order) {
+        int lines = order.getLineCount();
+        int[] productIDs = new int[lines];
+        long[] unitPriceCents = new long[lines];
+        int[] lineQuantities = new int[lines];
+        ByteBuffer[] frames = new ByteBuffer[1 + lines];
+        for (int i = 0; i < lines; i++) {
+            productIDs[i] = order.getProductID(i);
+            unitPriceCents[i] = order.getUnitPriceCents(i);
+            lineQuantities[i] = order.getQuantity(i);
+            frames[1 + i] = JournalFormat.stockReduced(productIDs[i], lineQuantities[i]);
+        }
+        long createdAtMillis = order.getOrderDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        frames[0] = JournalFormat.orderCreated(order.getOrderID(), order.getCustomer().getCustomerID(),
+                createdAtMillis, order.getStatus().getDisplayName(), productIDs, unitPriceCents, lineQuantities);
+        return submit(false, frames);
+    }
+
+    // 'sequence' is the order's status sequence after the change; replay keeps the highest
+    public CompletableFuture<Void> recordStatusChanged(int orderID, String status, long sequence) {
+        return submit(false, JournalFormat.statusChanged(orderID, status, sequence));
+    }
+
+    // Completes once everything queued before it is on disk
+    public CompletableFuture<Void> sync() {
+        return submit(false);
+    }
+
+    // Starts a new segment and folds everything before it into a fresh snapshot.
+    // The future completes once the snapshot is written and the old files are gone.
+    public CompletableFuture<Void> compact() {
+        return submit(true);
+    }
+
+    private CompletableFuture<Void> submit(boolean compact, ByteBuffer... frames) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        IOException failed = failure;
+        if (failed != null) {
+            done.completeExceptionally(failed);
+            return done;
+        }
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The order journal is closed.");
+            }
+            queue.put(new PendingWrite(frames, done, compact));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            done.completeExceptionally(e);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return done;
+    }
+
+    private void runFlusher() {
+        List<PendingWrite> batch = new ArrayList<>(MAX_BATCH);
+        boolean running = true;
+        while (running) {
+            batch.clear();
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue; // only close() stops the flusher, by queueing SHUTDOWN
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            // Nothing can be queued after SHUTDOWN, so it's always the last one
+            if (batch.get(batch.size() - 1) == SHUTDOWN) {
+                batch.remove(batch.size() - 1);
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> batch) {
+        List<CompletableFuture<Void>> compactRequests = new ArrayList<>();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            int count = 0;
+            for (PendingWrite write : batch) {
+                count += write.frames.length;
+            }
+            ByteBuffer[] frames = new ByteBuffer[count];
+            int next = 0;
+            for (PendingWrite write : batch) {
+                for (ByteBuffer frame : write.frames) {
+                    frames[next++] = frame;
+                }
+            }
+            int first = 0;
+            while (first < count) {
+                channel.write(frames, first, count - first);
+                while (first < count && !frames[first].hasRemaining()) {
+                    first++;
+                }
+            }
+            channel.force(false); // one sync for the whole batch
+            for (PendingWrite write : batch) {
+                if (write.compact) {
+                    compactRequests.add(write.done);
+                } else {
+                    write.done.complete(null);
+                }
+            }
+            if (!compactRequests.isEmpty() || channel.size() >= segmentSize) {
+                startNextSegment(compactRequests);
+            }
+        } catch (IOException e) {
+            failure = e; // the file may now have a torn record; refuse further writes
+            for (PendingWrite write : batch) {
+                write.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Seals the current segment and opens the next one. Runs on the flusher thread.
+    private void startNextSegment(List<CompletableFuture<Void>> compactRequests) throws IOException {
+        FileChannel next = FileChannel.open(segmentPath(directory, segmentNumber + 1), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.close();
+        channel = next;
+        segmentNumber++;
+
+        long sealedBelow = segmentNumber;
+        boolean due = !compactRequests.isEmpty() || sealedBelow - Math.max(snapshotNumber, 1) >= SEGMENTS_PER_SNAPSHOT;
+        if (due) {
+            CompletableFuture<Void> snapshot = CompletableFuture.runAsync(() -> compactBelow(sealedBelow), compactor);
+            for (CompletableFuture<Void> request : compactRequests) {
+                snapshot.whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        request.complete(null);
+                    } else {
+                        request.completeExceptionally(error);
+                    }
+                });
+            }
+        }
+    }
+
+    // Writes snapshot 'sealedBelow' from the current snapshot plus all sealed segments,
+    // then deletes the files it replaces. Runs on the compactor thread.
+    private void compactBelow(long sealedBelow) {
+        long base = snapshotNumber;
+        if (sealedBelow <= base) {
+            return; // an earlier request already covered these segments
+        }
+        try {
+            CompactedState state = new CompactedState();
+            if (base > 0) {
+                SnapshotFile.load(snapshotPath(directory, base), state);
+            }
+            for (long segment = Math.max(base, 1); segment < sealedBelow; segment++) {
+                Path file = segmentPath(directory, segment);
+                if (!Files.exists(file)) {
+                    continue;
+                }
+                try (FileChannel sealed = FileChannel.open(file, StandardOpenOption.READ)) {
+                    replay(sealed, state);
+                }
+            }
+            SnapshotFile.write(snapshotPath(directory, sealedBelow), state);
+            snapshotNumber = sealedBelow;
+            deleteCoveredFiles(directory, sealedBelow);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write a journal snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    // Deletes older snapshots and the segments a snapshot already holds
+    private static void deleteCoveredFiles(Path directory, long snapshotNumber) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                boolean oldSnapshot = isNumbered(name, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)
+                        && number(name, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) < snapshotNumber;
+                boolean coveredSegment = isNumbered(name, SEGMENT_PREFIX, SEGMENT_SUFFIX)
+                        && number(name, SEGMENT_PREFIX, SEGMENT_SUFFIX) < snapshotNumber;
+                if (oldSnapshot || coveredSegment) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static Path segmentPath(Path directory, long number) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static Path snapshotPath(Path directory, long number) {
+        return directory.resolve(String.format("%s%06d%s", SNAPSHOT_PREFIX, number, SNAPSHOT_SUFFIX));
+    }
+
+    private static boolean isNumbered(String name, String prefix, String suffix) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix) || name.length() == prefix.length() + suffix.length()) {
+            return false;
+        }
+        for (int i = prefix.length(); i < name.length() - suffix.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long number(String name, String prefix, String suffix) {
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    // Waits for everything already submitted to reach the disk (and for a running
+    // snapshot to finish), then closes the files
+    @Override
+    public void close() throws IOException {
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        boolean interrupted = false;
+        boolean queued = false;
+        while (!queued) {
+            try {
+                queue.put(SHUTDOWN);
+                queued = true;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        while (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        compactor.shutdown();
+        while (true) {
+            try {
+                if (compactor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,87 @@
+package com.ecommerce.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Reads and writes snapshot files.
+// A snapshot uses the same record frames as the journal, but holds only the folded state:
+// one product record (with its current stock) per product, then the customers, then one
+// order record (with its latest status) per order. Snapshots are written to a temporary
+// file and renamed into place once they're safely on disk, so a snapshot that exists is
+// always complete.
+final class SnapshotFile {
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final long MAX_MAP_WINDOW = 1L << 30;
+
+    private SnapshotFile() { }
+
+    static void write(Path target, CompactedState state) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            for (CompactedState.ProductEntry p : state.products.values()) {
+                put(channel, buffer, JournalFormat.productUpserted(p.productID, p.name, p.priceCents, p.description, p.stock));
+            }
+            for (CompactedState.CustomerEntry c : state.customers.values()) {
+                put(channel, buffer, JournalFormat.customerRegistered(c.customerID, c.name, c.email));
+            }
+            for (CompactedState.OrderEntry o : state.orders.values()) {
+                put(channel, buffer, JournalFormat.orderCreated(o.orderID, o.customerID, o.createdAtMillis, o.status,
+                        o.productIDs, o.unitPriceCents, o.quantities));
+                if (o.statusSequence > 0) {
+                    // Keeps the sequence, so a stale change in a later segment still loses
+                    put(channel, buffer, JournalFormat.statusChanged(o.orderID, o.status, o.statusSequence));
+                }
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Memory-maps the snapshot (a window at a time for very large files) and replays it
+    static void load(Path file, JournalHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long window = Math.min(size - position, MAX_MAP_WINDOW);
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+                int needed = JournalFormat.decodeFrames(map, handler);
+                boolean lastWindow = position + window == size;
+                if (needed == JournalFormat.CORRUPT || map.position() == 0 || (lastWindow && map.hasRemaining())) {
+                    throw new IOException("Snapshot " + file + " is damaged at offset " + (position + map.position()) + ".");
+                }
+                position += map.position(); // the next window starts at the first frame this one cut off
+            }
+        }
+    }
+
+    private static void put(FileChannel channel, ByteBuffer buffer, ByteBuffer frame) throws IOException {
+        if (frame.remaining() > buffer.remaining()) {
+            drain(channel, buffer);
+        }
+        if (frame.remaining() > buffer.capacity()) {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            return;
+        }
+        buffer.put(frame);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,82 @@
+package com.ecommerce.search;
+
+import java.util.Arrays;
+
+// Sorted, duplicate-free list of productIDs for one term or n-gram.
+// Kept sorted so lists can be intersected with a linear merge.
+class PostingList {
+    private int[] ids = new int[4];
+    private int size;
+
+    int size() { return size; }
+    boolean isEmpty() { return size == 0; }
+    int get(int index) { return ids[index]; }
+
+    void add(int productID) {
+        int pos = Arrays.binarySearch(ids, 0, size, productID);
+        if (pos >= 0) {
+            return; // already listed
+        }
+        int insertAt = -pos - 1;
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size << 1);
+        }
+        System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+        ids[insertAt] = productID;
+        size++;
+    }
+
+    void remove(int productID) {
+        int pos = Arrays.binarySearch(ids, 0, size, productID);
+        if (pos < 0) {
+            return;
+        }
+        System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+        size--;
+    }
+
+    // Keeps only the IDs in candidates[0..count) that also appear in this list.
+    // Returns how many are left; they stay sorted at the front of candidates.
+    int retainIn(int[] candidates, int count) {
+        if (count * 16 < size) {
+            return retainBySearch(candidates, count); // few candidates, long list
+        }
+        int kept = 0;
+        int i = 0;
+        int j = 0;
+        while (i < count && j < size) {
+            int a = candidates[i];
+            int b = ids[j];
+            if (a == b) {
+                candidates[kept++] = a;
+                i++;
+                j++;
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return kept;
+    }
+
+    // Looks each candidate up instead of walking the whole list: O(count * log(size))
+    private int retainBySearch(int[] candidates, int count) {
+        int kept = 0;
+        int from = 0;
+        for (int i = 0; i < count && from < size; i++) {
+            int pos = Arrays.binarySearch(ids, from, size, candidates[i]);
+            if (pos >= 0) {
+                candidates[kept++] = candidates[i];
+                from = pos + 1;
+            } else {
+                from = -pos - 1;
+            }
+        }
+        return kept;
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+}
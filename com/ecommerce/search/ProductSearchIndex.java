@@ -0,0 +1,323 @@
+package com.ecommerce.search;
+
+import com.ecommerce.Product;
+import com.ecommerce.ProductChange;
+import com.ecommerce.ProductListener;
+import com.ecommerce.util.IntIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Full-text search over product names and descriptions.
+// Text is split into lowercase word tokens. Every token is indexed by its 3-character
+// n-grams (so "crylic" finds "acrylic") and by its first one and two characters
+// (so short queries like "pe" still find "pens"). A query looks up the posting lists
+// for its n-grams, intersects them, checks the few candidates that are left and
+// keeps the best-scoring ones. Name matches rank above description matches.
+// Register it with ProductCatalog.addListener and it stays in sync on its own,
+// including when setName or setDescription is called on a product.
+public class ProductSearchIndex implements ProductListener {
+    private static final int GRAM_LENGTH = 3;
+    private static final int NOT_FOUND = -1;
+
+    // How much a single query word is worth, depending on where and how it matched
+    private static final int NAME_EXACT = 8;
+    private static final int NAME_PREFIX = 6;
+    private static final int NAME_SUBSTRING = 4;
+    private static final int DESCRIPTION_EXACT = 3;
+    private static final int DESCRIPTION_PREFIX = 2;
+    private static final int DESCRIPTION_SUBSTRING = 1;
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final IntIntHashMap slotsByID = new IntIntHashMap(64, NOT_FOUND);
+    private IndexedProduct[] indexed = new IndexedProduct[64];
+    private int size;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // What we remember about each product so it can be scored and un-indexed later
+    private static class IndexedProduct {
+        final Product product;
+        final String[] nameTokens;
+        final String[] descriptionTokens;
+
+        IndexedProduct(Product product) {
+            this.product = product;
+            this.nameTokens = tokenize(product.getName());
+            this.descriptionTokens = tokenize(product.getDescription());
+        }
+    }
+
+    // Result entry used while picking the top matches
+    private static class Match {
+        final Product product;
+        final int score;
+
+        Match(Product product, int score) {
+            this.product = product;
+            this.score = score;
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void productAdded(Product product) {
+        index(product);
+    }
+
+    @Override
+    public void productRemoved(Product product) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(product.getProductID());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void productChanged(Product product, ProductChange change) {
+        if (change == ProductChange.NAME || change == ProductChange.DESCRIPTION) {
+            index(product);
+        }
+    }
+
+    // Adds a product, or re-indexes it if it's already there
+    public void index(Product product) {
+        if (product == null) {
+            throw new IllegalArgumentException("Can't index a null product.");
+        }
+        IndexedProduct entry = new IndexedProduct(product);
+        lock.writeLock().lock();
+        try {
+            removeLocked(product.getProductID());
+            if (size == indexed.length) {
+                indexed = Arrays.copyOf(indexed, size << 1);
+            }
+            indexed[size] = entry;
+            slotsByID.put(product.getProductID(), size);
+            size++;
+            updatePostings(entry, true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Returns up to 'limit' products matching every word of the query, best matches first
+    public List<Product> search(String query, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Search limit must be at least 1.");
+        }
+        String[] terms = tokenize(query);
+        if (terms.length == 0) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            int[] candidates = candidatesFor(terms);
+            if (candidates.length == 0) {
+                return Collections.emptyList();
+            }
+
+            // Min-heap holding the best 'limit' matches seen so far (worst one on top)
+            PriorityQueue<Match> best = new PriorityQueue<>(Math.min(limit, candidates.length) + 1,
+                    (a, b) -> a.score != b.score
+                            ? Integer.compare(a.score, b.score)
+                            : Integer.compare(b.product.getProductID(), a.product.getProductID()));
+            for (int productID : candidates) {
+                IndexedProduct entry = indexed[slotsByID.get(productID)];
+                int score = score(terms, entry);
+                if (score == 0) {
+                    continue; // n-grams matched but the word itself didn't
+                }
+                best.add(new Match(entry.product, score));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+
+            Product[] results = new Product[best.size()];
+            for (int i = results.length - 1; i >= 0; i--) {
+                results[i] = best.poll().product;
+            }
+            return Arrays.asList(results);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The IDs of every product matching every word of the query, in ascending order, for
+    // combining with other indexes (see com.ecommerce.browse.ProductFilterEngine)
+    public int[] matchingIDs(String query) {
+        String[] terms = tokenize(query);
+        if (terms.length == 0) {
+            return new int[0];
+        }
+        lock.readLock().lock();
+        try {
+            int[] candidates = candidatesFor(terms);
+            int count = 0;
+            for (int productID : candidates) {
+                if (score(terms, indexed[slotsByID.get(productID)]) != 0) {
+                    candidates[count++] = productID; // the candidates are already sorted
+                }
+            }
+            return Arrays.copyOf(candidates, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Intersects the posting lists of every query word, smallest list first
+    private int[] candidatesFor(String[] terms) {
+        List<PostingList> lists = new ArrayList<>();
+        for (String term : terms) {
+            for (String key : keysFor(term)) {
+                PostingList list = postings.get(key);
+                if (list == null) {
+                    return new int[0]; // some part of the query appears nowhere
+                }
+                lists.add(list);
+            }
+        }
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        int[] candidates = lists.get(0).toArray();
+        int count = candidates.length;
+        for (int i = 1; i < lists.size() && count > 0; i++) {
+            count = lists.get(i).retainIn(candidates, count);
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    private static int score(String[] terms, IndexedProduct entry) {
+        int total = 0;
+        for (String term : terms) {
+            int termScore = Math.max(
+                    bestMatch(term, entry.nameTokens, NAME_EXACT, NAME_PREFIX, NAME_SUBSTRING),
+                    bestMatch(term, entry.descriptionTokens, DESCRIPTION_EXACT, DESCRIPTION_PREFIX, DESCRIPTION_SUBSTRING));
+            if (termScore == 0) {
+                return 0; // every word has to match somewhere
+            }
+            total += termScore;
+        }
+        return total;
+    }
+
+    private static int bestMatch(String term, String[] tokens, int exact, int prefix, int substring) {
+        int best = 0;
+        for (String token : tokens) {
+            if (token.equals(term)) {
+                return exact;
+            }
+            if (token.startsWith(term)) {
+                best = Math.max(best, prefix);
+            } else if (term.length() >= GRAM_LENGTH && token.contains(term)) {
+                best = Math.max(best, substring);
+            }
+        }
+        return best;
+    }
+
+    private void removeLocked(int productID) {
+        int slot = slotsByID.remove(productID);
+        if (slot == NOT_FOUND) {
+            return;
+        }
+        updatePostings(indexed[slot], false);
+        int last = --size;
+        if (slot != last) {
+            indexed[slot] = indexed[last];
+            slotsByID.put(indexed[slot].product.getProductID(), slot);
+        }
+        indexed[last] = null;
+    }
+
+    private void updatePostings(IndexedProduct entry, boolean add) {
+        int productID = entry.product.getProductID();
+        for (String[] tokens : new String[][] { entry.nameTokens, entry.descriptionTokens }) {
+            for (String token : tokens) {
+                for (String key : indexKeysFor(token)) {
+                    if (add) {
+                        postings.computeIfAbsent(key, k -> new PostingList()).add(productID);
+                    } else {
+                        PostingList list = postings.get(key);
+                        if (list != null) {
+                            list.remove(productID);
+                            if (list.isEmpty()) {
+                                postings.remove(key);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Keys a stored token is filed under: its short prefixes and all of its n-grams
+    private static List<String> indexKeysFor(String token) {
+        List<String> keys = new ArrayList<>(token.length() + 1);
+        keys.add(prefixKey(token, 1));
+        if (token.length() >= 2) {
+            keys.add(prefixKey(token, 2));
+        }
+        for (int i = 0; i + GRAM_LENGTH <= token.length(); i++) {
+            keys.add(token.substring(i, i + GRAM_LENGTH));
+        }
+        return keys;
+    }
+
+    // Keys a query word is looked up by: its n-grams, or its prefix if it's too short for one
+    private static List<String> keysFor(String term) {
+        if (term.length() < GRAM_LENGTH) {
+            return Collections.singletonList(prefixKey(term, term.length()));
+        }
+        List<String> keys = new ArrayList<>(term.length());
+        for (int i = 0; i + GRAM_LENGTH <= term.length(); i++) {
+            keys.add(term.substring(i, i + GRAM_LENGTH));
+        }
+        return keys;
+    }
+
+    private static String prefixKey(String token, int length) {
+        return "^" + token.substring(0, length); // '^' can't appear inside a token
+    }
+
+    // Splits text into distinct lowercase words made of letters and digits
+    static String[] tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return new String[0];
+        }
+        Set<String> tokens = new LinkedHashSet<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                current.append(Character.toLowerCase(c));
+            } else if (current.length() > 0) {
+                tokens.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens.toArray(new String[0]);
+    }
+}
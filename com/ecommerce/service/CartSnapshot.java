@@ -0,0 +1,29 @@
+package com.ecommerce.service;
+
+import com.ecommerce.Money;
+import com.ecommerce.Product;
+
+// A copy of a customer's cart taken at one moment, safe to read without holding any lock.
+// Lines keep the cart's display order; 'index' arguments are 0-based.
+public final class CartSnapshot {
+    private final Product[] products;
+    private final int[] quantities;
+    private final long totalCents;
+
+    CartSnapshot(Product[] products, int[] quantities, long totalCents) {
+        this.products = products;
+        this.quantities = quantities;
+        this.totalCents = totalCents;
+    }
+
+    public int size() { return products.length; }
+    public boolean isEmpty() { return products.length == 0; }
+    public Product getProduct(int index) { return products[index]; }
+    public int getQuantity(int index) { return quantities[index]; }
+    public long getTotalCents() { return totalCents; }
+    public Money getTotal() { return Money.ofCents(totalCents); }
+
+    public long getSubtotalCents(int index) {
+        return Money.multiplyCents(products[index].getPriceCents(), quantities[index]);
+    }
+}
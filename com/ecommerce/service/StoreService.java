@@ -0,0 +1,640 @@
+package com.ecommerce.service;
+
+import com.ecommerce.Customer;
+import com.ecommerce.CustomerDirectory;
+import com.ecommerce.browse.ProductFilter;
+import com.ecommerce.browse.ProductFilterEngine;
+import com.ecommerce.browse.ProductListingIndex;
+import com.ecommerce.browse.ProductPage;
+import com.ecommerce.browse.ProductSort;
+import com.ecommerce.analytics.CustomerValue;
+import com.ecommerce.analytics.OrderReports;
+import com.ecommerce.analytics.OrderSnapshot;
+import com.ecommerce.analytics.SalesAnalytics;
+import com.ecommerce.Money;
+import com.ecommerce.Product;
+import com.ecommerce.ProductCatalog;
+import com.ecommerce.ProductViewCache;
+import com.ecommerce.importer.CatalogImporter;
+import com.ecommerce.metrics.StoreMetrics;
+import com.ecommerce.metrics.StoreMetrics.Operation;
+import com.ecommerce.orders.CheckoutEngine;
+import com.ecommerce.orders.Order;
+import com.ecommerce.orders.OrderRepository;
+import com.ecommerce.orders.OrderStatus;
+import com.ecommerce.orders.StatusFeedProcessor;
+import com.ecommerce.output.OutputSink;
+import com.ecommerce.output.StoreEvent;
+import com.ecommerce.persistence.JournalHandler;
+import com.ecommerce.persistence.OrderJournal;
+import com.ecommerce.search.ProductSearchIndex;
+import com.ecommerce.session.CartStore;
+import com.ecommerce.session.Session;
+import com.ecommerce.session.SessionManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
+
+// Everything the store can do, with no user interface attached: browsing, search,
+// customers, carts, checkout and orders. The console menu and the HTTP API are both
+// thin clients of this class.
+//
+// Safe to use from many threads at once. A customer's cart is locked while it is read
+// or changed, so two requests for the same shopper can't corrupt it; different shoppers
+// never wait for each other. Catalog imports can run while shoppers browse: product
+// writes take turns on the catalog's lock and lookups never wait for them (see
+// ProductCatalog). Carts of shoppers who have been idle for a while are put
+// aside in the journal directory and brought back the next time they're used (see
+// SessionManager). Mistakes by the caller (unknown IDs, bad quantities, not
+// enough stock) throw IllegalArgumentException; failing to save to the journal throws
+// IllegalStateException.
+//
+// Product lookups, searches, adding to carts, checkouts and status changes are timed
+// (see StoreMetrics); metricsText() and metricsTable() show the results.
+public class StoreService implements Closeable {
+    public static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int FIRST_CUSTOMER_ID = 1001;
+    private static final int FIRST_ORDER_ID = 1001;
+    private static final String CART_DIRECTORY = "carts";
+
+    private final ProductCatalog catalog;
+    private final ProductSearchIndex searchIndex = new ProductSearchIndex();
+    private final ProductListingIndex listingIndex;
+    private final ProductFilterEngine filterEngine;
+    private final ProductViewCache viewCache = new ProductViewCache();
+    private final ProductViewCache.View detailsView = viewCache.view(Product::details);
+    private final CheckoutEngine checkoutEngine = new CheckoutEngine(FIRST_ORDER_ID);
+    private final CustomerDirectory customers = new CustomerDirectory(FIRST_CUSTOMER_ID);
+    private final OrderRepository orders = new OrderRepository();
+    private final SalesAnalytics analytics = new SalesAnalytics();
+    private final OrderReports reports = new OrderReports();
+    // Keeps each product's journal records in the order its stock really changed: checkouts
+    // hold the read side from reserving stock until their order is queued, catalog writes
+    // the write side from queueing their upserts until the products are updated. Replay
+    // then never applies a sale to stock that an upsert written after it replaces.
+    private final StampedLock stockJournalLock = new StampedLock();
+    // The last report snapshot and the order version it was taken at (see orderSnapshot)
+    private final Object snapshotLock = new Object();
+    private volatile CachedSnapshot cachedSnapshot;
+    private final Path journalDirectory;
+    private final OutputSink events;
+    private final OrderJournal journal;
+    private final SessionManager sessions;
+    private final StoreMetrics metrics = new StoreMetrics();
+
+    private StoreService(ProductCatalog catalog, Path journalDirectory, Duration idleTimeout, OutputSink events) throws IOException {
+        this.catalog = catalog;
+        this.journalDirectory = journalDirectory;
+        this.events = events; // before the replay, which may report skipped orders
+        catalog.addListener(searchIndex); // keeps search results in sync with the catalog
+        catalog.addListener(viewCache);   // drops cached text when a product changes
+        // Load the last snapshot and replay the journal after it: products, customers, orders and stock changes
+        this.journal = OrderJournal.open(journalDirectory, new JournalRestorer());
+        orders.addListener(this::journalStatusChange); // only now, so replayed changes aren't journaled again
+        // Built in bulk from the restored catalog, which is much faster than following the replay
+        this.listingIndex = new ProductListingIndex(catalog);
+        catalog.addListener(listingIndex);
+        this.filterEngine = new ProductFilterEngine(listingIndex, searchIndex);
+        for (Order order : orders.all()) {
+            analytics.record(order); // as each order stands after the replay
+        }
+        orders.addListener(analytics);
+        this.sessions = new SessionManager(catalog, new CartStore(journalDirectory.resolve(CART_DIRECTORY)), idleTimeout, events);
+    }
+
+    // Opens the store saved in 'journalDirectory' (or a new, empty one) on top of 'catalog'
+    public static StoreService open(ProductCatalog catalog, Path journalDirectory) throws IOException {
+        return open(catalog, journalDirectory, SessionManager.DEFAULT_IDLE_TIMEOUT, OutputSink.direct(System.out));
+    }
+
+    // Same, with sessions expiring (and carts put aside) after 'idleTimeout' without use,
+    // and warnings (skipped orders, carts that couldn't be saved) reported to 'events'
+    public static StoreService open(ProductCatalog catalog, Path journalDirectory, Duration idleTimeout,
+                                    OutputSink events) throws IOException {
+        if (catalog == null || journalDirectory == null || events == null) {
+            throw new IllegalArgumentException("A catalog, a journal directory and an output for events are required.");
+        }
+        return new StoreService(catalog, journalDirectory, idleTimeout, events);
+    }
+
+    public Path getJournalDirectory() { return journalDirectory; }
+    public int getProductCount() { return catalog.size(); }
+    public int getCustomerCount() { return customers.size(); }
+    public int getOrderCount() { return orders.size(); }
+
+    // Adds starting products (e.g. on the very first run) and waits until they are saved
+    public void seedCatalog(Collection<Product> products) {
+        awaitJournal(upsertProducts(products));
+    }
+
+    // Adds or updates every product in a CSV or JSON-lines file (see CatalogImporter),
+    // batch by batch. Rows that fail validation go to 'failures' and the rest carry on.
+    // Returns once every imported product is on disk.
+    public CatalogImporter.Summary importCatalog(Path file, CatalogImporter.FailureListener failures) throws IOException {
+        AtomicReference<CompletableFuture<Void>> lastWrite = new AtomicReference<>(CompletableFuture.completedFuture(null));
+        CatalogImporter importer = new CatalogImporter(batch -> lastWrite.set(upsertProducts(batch)), Runtime.getRuntime().availableProcessors(), CatalogImporter.DEFAULT_CHUNK_BYTES);
+        CatalogImporter.Summary summary = importer.importFile(file, failures);
+        awaitJournal(lastWrite.get()); // journal writes reach the disk in order
+        return summary;
+    }
+
+    // Journals the products first and then puts them in the catalog, with no checkout in
+    // between (see stockJournalLock). Journal writes reach the disk in order, so the returned
+    // future completes once these and everything before them are saved.
+    private CompletableFuture<Void> upsertProducts(Collection<Product> products) {
+        long stamp = stockJournalLock.writeLock();
+        try {
+            CompletableFuture<Void> saved = journal.recordProductsUpserted(products);
+            catalog.putAll(products);
+            return saved;
+        } finally {
+            stockJournalLock.unlockWrite(stamp);
+        }
+    }
+
+    // ---- Products ----
+
+    // Every product. Prefer productPage for big catalogs.
+    public List<Product> listProducts() {
+        List<Product> result = new ArrayList<>(catalog.size());
+        for (Product product : catalog.products()) {
+            result.add(product);
+        }
+        return result;
+    }
+
+    // One page of the catalog (see ProductListingIndex); pass the page's next cursor to get
+    // the page after it, or null to start at the beginning
+    public ProductPage productPage(ProductSort sort, boolean descending, boolean inStockOnly, String cursor, int pageSize) {
+        return listingIndex.page(sort, descending, inStockOnly, cursor, pageSize);
+    }
+
+    // Products matching 'filter' (words, price range, in stock), cheapest first or dearest
+    // first, one page at a time like productPage
+    public ProductPage filterProducts(ProductFilter filter, boolean descending, String cursor, int pageSize) {
+        return filterEngine.filter(filter, descending, cursor, pageSize);
+    }
+
+    // The product as the browse listing shows it (Product.details), usually from the cache
+    public String productDetails(Product product) {
+        return viewCache.render(product, detailsView);
+    }
+
+    // Ready-made product text; clients add their own views (e.g. the API's JSON)
+    public ProductViewCache getViewCache() { return viewCache; }
+
+    // Null if there is no such product
+    public Product findProduct(int productID) {
+        long started = System.nanoTime();
+        Product product = catalog.get(productID);
+        metrics.record(Operation.PRODUCT_LOOKUP, started, true);
+        return product;
+    }
+
+    // Like findProduct, but left out of the lookup metrics: for naming the products that
+    // orders, reports and the like already point to, which aren't lookups anyone asked for
+    public Product productForDisplay(int productID) {
+        return catalog.get(productID);
+    }
+
+    public Product getProduct(int productID) {
+        return requireProduct(findProduct(productID), productID);
+    }
+
+    private static Product requireProduct(Product product, int productID) {
+        if (product == null) {
+            throw new IllegalArgumentException("Product not found with ID " + productID + ".");
+        }
+        return product;
+    }
+
+    // Matches words (or parts of words) in names and descriptions, best matches first
+    public List<Product> searchProducts(String query, int limit) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("Please enter a valid name or keyword to search for.");
+        }
+        long started = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<Product> found = searchIndex.search(query, limit);
+            ok = true;
+            return found;
+        } finally {
+            metrics.record(Operation.SEARCH, started, ok);
+        }
+    }
+
+    // ---- Customers ----
+
+    // Every customer, by ID. Prefer findCustomerByEmail for logins; this copies them all.
+    public List<Customer> listCustomers() {
+        return customers.all();
+    }
+
+    // Null if there is no such customer
+    public Customer findCustomer(int customerID) {
+        return customers.get(customerID);
+    }
+
+    public Customer getCustomer(int customerID) {
+        Customer customer = customers.get(customerID);
+        if (customer == null) {
+            throw new IllegalArgumentException("Customer not found with ID " + customerID + ".");
+        }
+        return customer;
+    }
+
+    // Null if nobody has registered with this address (in any capitalization)
+    public Customer findCustomerByEmail(String email) {
+        return customers.findByEmail(email);
+    }
+
+    // Throws IllegalArgumentException if the details are invalid or the email address is
+    // taken, and IllegalStateException (with nobody registered) if the account can't be saved
+    public Customer registerCustomer(String name, String email) {
+        if (name == null || name.trim().isEmpty() || email == null || email.trim().isEmpty()) {
+            throw new IllegalArgumentException("Name and email cannot be empty.");
+        }
+        Customer customer = customers.register(name, email);
+        try {
+            awaitJournal(journal.recordCustomerRegistered(customer));
+        } catch (IllegalStateException e) {
+            customers.unregister(customer); // it would be gone after a restart anyway
+            throw e;
+        }
+        return customer;
+    }
+
+    // ---- Sessions ----
+
+    // Logs a customer in; the session's token identifies them from then on
+    public Session startSession(Customer customer) {
+        return sessions.open(customer);
+    }
+
+    // The customer logged in with 'token', or null if the session has expired (or never was)
+    public Customer resumeSession(String token) {
+        return sessions.resume(token);
+    }
+
+    // Logs out; false if there was no such session
+    public boolean endSession(String token) {
+        return sessions.end(token);
+    }
+
+    public int getSessionCount() { return sessions.getSessionCount(); }
+
+    // Customers whose carts are in memory right now
+    public int getActiveShopperCount() { return sessions.getActiveShopperCount(); }
+
+    // ---- Carts ----
+
+    // Every cart method starts with sessions.activate, which brings a cart that was put
+    // aside back into memory (under the same lock)
+
+    public CartSnapshot viewCart(Customer customer) {
+        synchronized (customer) {
+            sessions.activate(customer);
+            int size = customer.getCartSize();
+            Product[] products = new Product[size];
+            int[] quantities = new int[size];
+            for (int i = 0; i < size; i++) {
+                products[i] = customer.getCartProduct(i);
+                quantities[i] = customer.getCartQuantity(i);
+            }
+            return new CartSnapshot(products, quantities, customer.calculateTotalCents());
+        }
+    }
+
+    // Adds 'quantity' of a product (or more of it, if it's already in the cart); returns the product
+    public Product addToCart(Customer customer, int productID, int quantity) {
+        long started = System.nanoTime();
+        boolean ok = false;
+        try {
+            Product product = requireProduct(catalog.get(productID), productID); // timed as part of the cart add
+            if (!product.isAvailable()) {
+                throw new IllegalArgumentException("Sorry, " + product.getName() + " is currently out of stock.");
+            }
+            synchronized (customer) {
+                sessions.activate(customer);
+                customer.addToCart(product, quantity);
+            }
+            ok = true;
+            return product;
+        } finally {
+            metrics.record(Operation.ADD_TO_CART, started, ok);
+        }
+    }
+
+    public void updateCartQuantity(Customer customer, int index, int quantity) {
+        synchronized (customer) {
+            sessions.activate(customer);
+            customer.updateQuantity(index, quantity);
+        }
+    }
+
+    // Returns the product that was removed
+    public Product removeFromCart(Customer customer, int index) {
+        synchronized (customer) {
+            sessions.activate(customer);
+            if (index < 0 || index >= customer.getCartSize()) {
+                throw new IllegalArgumentException("Invalid item number. Please choose from the list.");
+            }
+            Product product = customer.getCartProduct(index);
+            customer.removeFromCart(index);
+            return product;
+        }
+    }
+
+    public void clearCart(Customer customer) {
+        synchronized (customer) {
+            sessions.activate(customer);
+            customer.clearCart();
+        }
+    }
+
+    // ---- Checkout and orders ----
+
+    // Reserves stock for every item at once, then creates the confirmed order, clears the
+    // cart and waits until the order is on disk. If any item is short on stock nothing is changed.
+    // If the order can't be saved, its stock is given back, its lines go back in the cart
+    // and IllegalStateException is thrown; nobody else ever sees the order.
+    public Order checkout(Customer customer) {
+        long started = System.nanoTime();
+        boolean ok = false;
+        try {
+            Order order;
+            CompletableFuture<Void> saved;
+            long stamp = stockJournalLock.readLock();
+            try {
+                synchronized (customer) {
+                    sessions.activate(customer);
+                    order = checkoutEngine.checkout(customer);
+                }
+                // Queued before anyone else can see the order, so its later status changes are journaled after it
+                saved = journal.recordOrderPlaced(order);
+            } finally {
+                stockJournalLock.unlockRead(stamp);
+            }
+            try {
+                awaitJournal(saved); // don't publish or confirm it until it's on disk
+            } catch (IllegalStateException e) {
+                undoCheckout(customer, order);
+                throw e;
+            }
+            analytics.record(order); // also before anyone can change its status
+            orders.add(order);
+            ok = true;
+            return order;
+        } finally {
+            metrics.record(Operation.CHECKOUT, started, ok);
+        }
+    }
+
+    // Every order ever placed, oldest first. Prefer the narrower queries below for big histories.
+    public List<Order> listOrders() {
+        return orders.all();
+    }
+
+    // The 'limit' most recent orders, newest first
+    public List<Order> latestOrders(int limit) {
+        return orders.latest(limit);
+    }
+
+    // A customer's orders with the given status (or any status if null), oldest first
+    public List<Order> customerOrders(int customerID, OrderStatus status) {
+        return orders.findByCustomer(customerID, status);
+    }
+
+    // Up to 'limit' orders with the given status, oldest first
+    public List<Order> ordersWithStatus(OrderStatus status, int limit) {
+        return orders.findByStatus(status, limit);
+    }
+
+    // Orders placed from 'from' (inclusive) up to 'to' (exclusive); either may be null
+    public List<Order> ordersBetween(LocalDateTime from, LocalDateTime to) {
+        return orders.findByDate(from, to);
+    }
+
+    // Running sales figures: revenue, units, orders per status and top sellers
+    public SalesAnalytics getAnalytics() { return analytics; }
+
+    // A frozen copy of every order, for running several reports over the same history.
+    // The copy is kept and handed out again until an order is added or changes status, so
+    // reports in a row (or at once) share one; only one thread rebuilds it at a time.
+    public OrderSnapshot orderSnapshot() {
+        CachedSnapshot cached = cachedSnapshot;
+        if (cached != null && cached.version == orders.version()) {
+            return cached.snapshot;
+        }
+        synchronized (snapshotLock) {
+            long version = orders.version(); // read first: a change after this makes the copy stale, never wrong
+            cached = cachedSnapshot;
+            if (cached == null || cached.version != version) {
+                cached = new CachedSnapshot(version, OrderSnapshot.of(orders.all()));
+                cachedSnapshot = cached;
+            }
+            return cached.snapshot;
+        }
+    }
+
+    // Revenue per day over the whole order history (cancelled orders left out)
+    public SortedMap<LocalDate, Long> revenueByDay() {
+        return reports.revenueByDay(orderSnapshot());
+    }
+
+    // Orders by number of units; the last entry counts orders of 'maxUnits' units or more
+    public long[] basketSizes(int maxUnits) {
+        return reports.basketSizes(orderSnapshot(), maxUnits);
+    }
+
+    // The 'limit' customers who have spent the most, biggest first
+    public List<CustomerValue> topCustomers(int limit) {
+        return reports.topCustomers(orderSnapshot(), limit);
+    }
+
+    // Null if there is no such order
+    public Order findOrder(int orderID) {
+        return orders.get(orderID);
+    }
+
+    public Order getOrder(int orderID) {
+        Order order = orders.get(orderID);
+        if (order == null) {
+            throw new IllegalArgumentException("Order with ID " + orderID + " not found.");
+        }
+        return order;
+    }
+
+    // Throws IllegalArgumentException if the order's current status can't move to 'status'
+    public Order updateOrderStatus(int orderID, OrderStatus status) {
+        long started = System.nanoTime();
+        boolean ok = false;
+        try {
+            Order order = getOrder(orderID);
+            order.setStatus(status); // the status listener journals the change
+            ok = true;
+            return order;
+        } finally {
+            metrics.record(Operation.STATUS_UPDATE, started, ok);
+        }
+    }
+
+    // Applies a fulfillment feed of "orderID,status" lines (see StatusFeedProcessor), many
+    // orders at a time. Lines that can't be applied go to 'failures' and the rest carry on.
+    // Returns once every change is on disk.
+    public StatusFeedProcessor.Summary applyStatusFeed(Path feed, StatusFeedProcessor.FailureListener failures) throws IOException {
+        StatusFeedProcessor.Summary summary = new StatusFeedProcessor(orders).process(feed, failures);
+        awaitJournal(journal.sync()); // the status listener queued every change
+        return summary;
+    }
+
+    // ---- Metrics ----
+
+    public StoreMetrics getMetrics() { return metrics; }
+
+    // Everything measured, in the Prometheus text format: operation counts, failures and
+    // latency percentiles, plus the view cache, sessions, dropped output and store sizes
+    public String metricsText() {
+        StringBuilder text = new StringBuilder(8192);
+        metrics.appendPrometheus(text);
+        StoreMetrics.appendSample(text, "ecommerce_view_cache_hits_total", "counter", "Product views served from the cache.", viewCache.getHits());
+        StoreMetrics.appendSample(text, "ecommerce_view_cache_misses_total", "counter", "Product views that had to be formatted.", viewCache.getMisses());
+        StoreMetrics.appendSample(text, "ecommerce_sessions", "gauge", "Logged-in sessions.", getSessionCount());
+        StoreMetrics.appendSample(text, "ecommerce_active_shoppers", "gauge", "Customers whose carts are in memory.", getActiveShopperCount());
+        StoreMetrics.appendSample(text, "ecommerce_output_dropped_total", "counter", "Console output thrown away because the buffer was full.", events.getDroppedCount());
+        StoreMetrics.appendSample(text, "ecommerce_products", "gauge", "Products in the catalog.", getProductCount());
+        StoreMetrics.appendSample(text, "ecommerce_customers", "gauge", "Registered customers.", getCustomerCount());
+        StoreMetrics.appendSample(text, "ecommerce_orders", "gauge", "Orders placed.", getOrderCount());
+        return text.toString();
+    }
+
+    // The same, laid out for reading on the console
+    public String metricsTable() {
+        StringBuilder text = new StringBuilder(2048);
+        metrics.appendTable(text);
+        text.append("\nView cache: ").append(viewCache.getHits()).append(" hits, ").append(viewCache.getMisses()).append(" misses\n");
+        text.append("Sessions: ").append(getSessionCount()).append("   Carts in memory: ").append(getActiveShopperCount()).append('\n');
+        text.append("Output dropped: ").append(events.getDroppedCount()).append('\n');
+        return text.toString();
+    }
+
+    // Puts every cart aside and snapshots the journal so the next start has little to
+    // replay, then closes it
+    @Override
+    public void close() throws IOException {
+        try {
+            sessions.close();
+        } finally {
+            try {
+                awaitJournal(journal.compact());
+            } finally {
+                journal.close();
+            }
+        }
+    }
+
+    // ---- Journal ----
+
+    // Two threads changing the same order may queue their entries in either order; the
+    // sequence number lets replay end on the status the order really has
+    private void journalStatusChange(Order order, OrderStatus oldStatus, OrderStatus newStatus, long sequence) {
+        journal.recordStatusChanged(order.getOrderID(), newStatus.getDisplayName(), sequence);
+    }
+
+    // Gives back the stock a checkout reserved and puts its lines back in the cart. A line
+    // whose stock someone else bought in the meantime stays out of the cart, as it would if
+    // the customer tried to add it now.
+    private void undoCheckout(Customer customer, Order order) {
+        synchronized (customer) {
+            for (int line = 0; line < order.getLineCount(); line++) {
+                Product product = catalog.get(order.getProductID(line));
+                if (product != null) {
+                    product.release(order.getQuantity(line));
+                }
+            }
+            for (int line = 0; line < order.getLineCount(); line++) {
+                Product product = catalog.get(order.getProductID(line));
+                if (product != null && product.hasEnoughStock(order.getQuantity(line))) {
+                    customer.addToCart(product, order.getQuantity(line));
+                }
+            }
+        }
+    }
+
+    // Waits for a journal write to reach the disk
+    private void awaitJournal(CompletableFuture<Void> write) {
+        try {
+            write.join();
+        } catch (RuntimeException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new IllegalStateException("Could not save to " + journalDirectory + ": " + cause.getMessage(), cause);
+        }
+    }
+
+    // Rebuilds the catalog, customers, orders and stock levels from the journal at startup
+    private static final class CachedSnapshot {
+        final long version;
+        final OrderSnapshot snapshot;
+
+        CachedSnapshot(long version, OrderSnapshot snapshot) {
+            this.version = version;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private class JournalRestorer implements JournalHandler {
+        @Override
+        public void productUpserted(int productID, String name, long priceCents, String description, int stock) {
+            catalog.put(new Product(productID, name, Money.ofCents(priceCents), description, stock));
+        }
+
+        @Override
+        public void customerRegistered(int customerID, String name, String email) {
+            customers.restore(new Customer(customerID, name, email));
+        }
+
+        @Override
+        public void orderCreated(int orderID, int customerID, long createdAtMillis, String status,
+                                 int[] productIDs, long[] unitPriceCents, int[] quantities) {
+            Customer customer = customers.get(customerID);
+            if (customer == null) {
+                events.emit(StoreEvent.warning("journal", "Skipping saved order #" + orderID + ": unknown customer " + customerID));
+                return;
+            }
+            LocalDateTime orderDate = LocalDateTime.ofInstant(Instant.ofEpochMilli(createdAtMillis), ZoneId.systemDefault());
+            // Every line comes back, with the price paid, even for products no longer sold
+            orders.add(Order.restore(orderID, customer, orderDate, OrderStatus.parse(status), productIDs, unitPriceCents, quantities));
+            checkoutEngine.advancePast(orderID);
+        }
+
+        @Override
+        public void statusChanged(int orderID, String status, long sequence) {
+            Order order = orders.get(orderID);
+            if (order != null) {
+                order.restoreStatus(OrderStatus.parse(status), sequence); // skips changes older than the last applied
+            }
+        }
+
+        @Override
+        public void stockReduced(int productID, int quantity) {
+            Product product = catalog.get(productID);
+            if (product != null && !product.tryReserve(quantity)) {
+                product.setStock(0); // the catalog started with less stock than was sold
+            }
+        }
+    }
+}
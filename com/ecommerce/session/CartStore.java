@@ -0,0 +1,114 @@
+package com.ecommerce.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Carts put aside on disk while their shoppers are away, one small file per customer:
+//
+//   [int magic][int lines][lines x (int productID, int quantity)][int crc32]
+//
+// so a ten-line cart takes 92 bytes. Files are spread over 256 subdirectories by customer
+// ID, so no directory gets huge however many shoppers there are. A file is written to a
+// temporary name and renamed into place once it's on disk, so a cart that exists is always
+// complete; one that fails its check anyway (e.g. a damaged disk) is dropped rather than
+// half restored.
+//
+// Each customer's file is only ever touched by one thread at a time (SessionManager holds
+// the customer's lock), so there is no locking in here.
+public class CartStore {
+    private static final int MAGIC = 0x43415254; // "CART"
+    private static final int HEADER_SIZE = 8;
+    private static final int LINE_SIZE = 8;
+    private static final int CRC_SIZE = 4;
+    private static final String SUFFIX = ".cart";
+
+    private final Path directory;
+
+    public CartStore(Path directory) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("The cart store needs a directory.");
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+    }
+
+    public Path getDirectory() { return directory; }
+
+    // Saves a cart of 'lines' lines (productIDs[i] x quantities[i]), replacing any saved
+    // before; an empty cart just deletes the file
+    public void save(int customerID, int[] productIDs, int[] quantities, int lines) throws IOException {
+        Path file = file(customerID);
+        if (lines == 0) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + lines * LINE_SIZE + CRC_SIZE);
+        buffer.putInt(MAGIC).putInt(lines);
+        for (int i = 0; i < lines; i++) {
+            buffer.putInt(productIDs[i]).putInt(quantities[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Reads a saved cart and deletes it, since from now on the cart lives in memory again.
+    // Returns productID, quantity pairs one after the other ([id, qty, id, qty, ...]), or
+    // null if nothing was saved for this customer (or what was saved is damaged).
+    public int[] take(int customerID) throws IOException {
+        Path file = file(customerID);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        Files.delete(file);
+        return decode(bytes);
+    }
+
+    private static int[] decode(byte[] bytes) {
+        if (bytes.length < HEADER_SIZE + CRC_SIZE) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int lines = buffer.getInt(4);
+        if (buffer.getInt(0) != MAGIC || lines <= 0 || bytes.length != HEADER_SIZE + (long) lines * LINE_SIZE + CRC_SIZE) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - CRC_SIZE);
+        if (buffer.getInt(bytes.length - CRC_SIZE) != (int) crc.getValue()) {
+            return null;
+        }
+        int[] pairs = new int[lines * 2];
+        buffer.position(HEADER_SIZE);
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = buffer.getInt();
+        }
+        return pairs;
+    }
+
+    private Path file(int customerID) {
+        return directory.resolve(String.format("%02x", customerID & 0xff)).resolve(customerID + SUFFIX);
+    }
+}
@@ -0,0 +1,25 @@
+package com.ecommerce.session;
+
+import com.ecommerce.Customer;
+
+// One logged-in shopper, known by a random token (see SessionManager)
+public final class Session {
+    private final String token;
+    private final Customer customer;
+    private volatile long lastUsedNanos;
+
+    Session(String token, Customer customer, long now) {
+        this.token = token;
+        this.customer = customer;
+        this.lastUsedNanos = now;
+    }
+
+    public String getToken() { return token; }
+    public Customer getCustomer() { return customer; }
+
+    long getLastUsedNanos() { return lastUsedNanos; }
+
+    void touch(long now) {
+        lastUsedNanos = now;
+    }
+}
@@ -0,0 +1,249 @@
+package com.ecommerce.session;
+
+import com.ecommerce.Customer;
+import com.ecommerce.Product;
+import com.ecommerce.ProductCatalog;
+import com.ecommerce.output.OutputSink;
+import com.ecommerce.output.StoreEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Logged-in shoppers and the carts they are using right now.
+//
+// A session is a random token mapped to a customer, so any number of shoppers can be
+// logged in at once (from the console, the HTTP API, several devices). A session that
+// isn't used for the idle timeout expires, and the shopper has to log in again.
+//
+// Carts only stay in memory while their shoppers are active. Every cart operation first
+// calls activate(customer), which marks the shopper as active and, if their cart was put
+// aside, loads it back from the CartStore. A background thread regularly looks for
+// shoppers who haven't done anything for the idle timeout, writes their carts to the
+// CartStore and frees them, so memory follows the shoppers who are actually shopping,
+// not everyone who has ever logged in. Products that were removed from the catalog while
+// a cart was put aside are dropped from it, and quantities are cut down to what's in stock.
+//
+// activate() and putting a cart aside both hold the customer's lock (the same lock
+// StoreService takes around every cart change), so a cart can't be put aside halfway
+// through a change, or changed halfway through being put aside. Safe to use from many
+// threads at once.
+public class SessionManager implements Closeable {
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(30);
+    private static final int TOKEN_BYTES = 16;
+
+    private final ProductCatalog catalog;
+    private final CartStore carts;
+    private final long idleTimeoutNanos;
+    private final OutputSink events;
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Shopper> active = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+
+    // A customer whose cart is in memory
+    private static final class Shopper {
+        final Customer customer;
+        volatile long lastUsedNanos;
+
+        Shopper(Customer customer, long now) {
+            this.customer = customer;
+            this.lastUsedNanos = now;
+        }
+    }
+
+    // Starts a background thread that checks for idle shoppers a few times per timeout.
+    // Problems the background thread runs into are reported to 'events'.
+    public SessionManager(ProductCatalog catalog, CartStore carts, Duration idleTimeout, OutputSink events) {
+        if (catalog == null || carts == null || events == null) {
+            throw new IllegalArgumentException("Sessions need a catalog, a cart store and somewhere to report events.");
+        }
+        if (idleTimeout == null || idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("The idle timeout must be positive.");
+        }
+        this.catalog = catalog;
+        this.carts = carts;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.events = events;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleTimeout.toMillis() / 4);
+        sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Logs a customer in with a new session
+    public Session open(Customer customer) {
+        if (customer == null) {
+            throw new IllegalArgumentException("Only a customer can log in.");
+        }
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        Session session = new Session(token, customer, System.nanoTime());
+        sessions.put(token, session);
+        activate(customer);
+        return session;
+    }
+
+    // The customer a session belongs to, or null if there's no such session or it has
+    // expired. Counts as using the session, and brings back the customer's cart if it was
+    // put aside.
+    public Customer resume(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (now - session.getLastUsedNanos() > idleTimeoutNanos) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.touch(now);
+        activate(session.getCustomer());
+        return session.getCustomer();
+    }
+
+    // Logs out; false if there was no such session. The cart stays until the shopper goes idle.
+    public boolean end(String token) {
+        return token != null && sessions.remove(token) != null;
+    }
+
+    // Marks a customer as shopping and makes sure their cart is in memory. Call it before
+    // reading or changing the cart. Throws IllegalStateException if a cart that was put
+    // aside can't be read back.
+    public void activate(Customer customer) {
+        long now = System.nanoTime();
+        synchronized (customer) {
+            Shopper shopper = active.get(customer.getCustomerID());
+            if (shopper != null) {
+                shopper.lastUsedNanos = now;
+                return;
+            }
+            int[] saved;
+            try {
+                saved = carts.take(customer.getCustomerID());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not load the saved cart from " + carts.getDirectory() + ": " + e.getMessage(), e);
+            }
+            if (saved != null) {
+                restoreCart(customer, saved);
+            }
+            active.put(customer.getCustomerID(), new Shopper(customer, now));
+        }
+    }
+
+    public int getSessionCount() { return sessions.size(); }
+
+    // Customers whose carts are in memory
+    public int getActiveShopperCount() { return active.size(); }
+
+    // Ends expired sessions and puts aside the carts of shoppers idle for the timeout.
+    // Runs on its own every so often; returns how many carts were put aside.
+    public int evictIdle() {
+        long now = System.nanoTime();
+        sessions.values().removeIf(session -> now - session.getLastUsedNanos() > idleTimeoutNanos);
+        int evicted = 0;
+        for (Shopper shopper : active.values()) {
+            if (now - shopper.lastUsedNanos <= idleTimeoutNanos) {
+                continue;
+            }
+            try {
+                if (putAside(shopper, now)) {
+                    evicted++;
+                }
+            } catch (IOException e) {
+                // Nothing is lost: the cart stays in memory and the next sweep tries again
+                events.emit(StoreEvent.warning("sessions", "Could not save the cart of customer "
+                        + shopper.customer.getCustomerID() + " to " + carts.getDirectory() + ": " + e.getMessage()));
+            }
+        }
+        return evicted;
+    }
+
+    // Stops the background thread and puts every cart in memory aside, so carts are still
+    // there after a restart (sessions aren't; shoppers log in again)
+    @Override
+    public void close() throws IOException {
+        sweeper.shutdownNow();
+        try {
+            sweeper.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IOException failure = null;
+        for (Shopper shopper : active.values()) {
+            try {
+                putAside(shopper, Long.MAX_VALUE);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        sessions.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void sweep() {
+        try {
+            evictIdle();
+        } catch (RuntimeException e) {
+            // keep sweeping; a failed run is retried on the next one
+            events.emit(StoreEvent.warning("sessions", "Could not check for idle shoppers: " + e.getMessage()));
+        }
+    }
+
+    // Writes the cart to the store and frees it, unless the shopper came back in the
+    // meantime ('idleBefore' is Long.MAX_VALUE to put it aside regardless)
+    private boolean putAside(Shopper shopper, long idleBefore) throws IOException {
+        Customer customer = shopper.customer;
+        synchronized (customer) {
+            if (idleBefore != Long.MAX_VALUE && idleBefore - shopper.lastUsedNanos <= idleTimeoutNanos) {
+                return false;
+            }
+            int lines = customer.getCartSize();
+            int[] productIDs = new int[lines];
+            int[] quantities = new int[lines];
+            for (int i = 0; i < lines; i++) {
+                productIDs[i] = customer.getCartProduct(i).getProductID();
+                quantities[i] = customer.getCartQuantity(i);
+            }
+            carts.save(customer.getCustomerID(), productIDs, quantities, lines);
+            customer.clearCart();
+            active.remove(customer.getCustomerID(), shopper);
+            return true;
+        }
+    }
+
+    private void restoreCart(Customer customer, int[] saved) {
+        for (int i = 0; i < saved.length; i += 2) {
+            Product product = catalog.get(saved[i]);
+            if (product == null) {
+                continue; // no longer sold
+            }
+            int quantity = Math.min(saved[i + 1], product.getStock());
+            if (quantity <= 0) {
+                continue;
+            }
+            try {
+                customer.addToCart(product, quantity);
+            } catch (IllegalArgumentException e) {
+                // sold out a moment ago; the rest of the cart still comes back
+            }
+        }
+    }
+}
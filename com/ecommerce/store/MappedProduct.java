@@ -0,0 +1,74 @@
+package com.ecommerce.store;
+
+import com.ecommerce.Money;
+import com.ecommerce.Product;
+import com.ecommerce.ProductChange;
+
+// A lightweight view of one product record inside a MappedProductStore.
+// It holds no product data of its own: every getter reads the record in the mapped
+// file and every setter writes it there, so any number of views of the same product
+// always agree. Views are cheap, short-lived objects; the store hands out a new one
+// for each lookup. Using a view after its product was removed throws IllegalStateException.
+final class MappedProduct extends Product {
+    private final MappedProductStore store;
+    private final int slot;
+    private final int productID;
+
+    MappedProduct(MappedProductStore store, int slot, int productID) {
+        this.store = store;
+        this.slot = slot;
+        this.productID = productID;
+    }
+
+    @Override
+    public int getProductID() { return productID; }
+
+    @Override
+    public String getName() { return store.readName(slot, productID); }
+
+    @Override
+    public Money getPrice() { return Money.ofCents(getPriceCents()); }
+
+    @Override
+    public long getPriceCents() { return store.readPriceCents(slot, productID); }
+
+    @Override
+    public String getDescription() { return store.readDescription(slot, productID); }
+
+    @Override
+    public int getStock() { return store.readStock(slot, productID); }
+
+    @Override
+    public void setProductID(int productID) {
+        throw new IllegalArgumentException("A stored product's ID can't be changed. Remove it and add it again instead.");
+    }
+
+    @Override
+    public void setName(String name) {
+        store.writeName(slot, productID, validateName(name));
+        notifyChanged(ProductChange.NAME);
+    }
+
+    @Override
+    public void setPrice(Money price) {
+        store.writePriceCents(slot, productID, validatePrice(price).getCents());
+        notifyChanged(ProductChange.PRICE);
+    }
+
+    @Override
+    public void setDescription(String description) {
+        store.writeDescription(slot, productID, validateDescription(description));
+        notifyChanged(ProductChange.DESCRIPTION);
+    }
+
+    @Override
+    public void setStock(int stock) {
+        store.writeStock(slot, productID, validateStock(stock));
+        notifyChanged(ProductChange.STOCK);
+    }
+
+    @Override
+    protected boolean compareAndSetStock(int expected, int updated) {
+        return store.compareAndSetStock(slot, productID, expected, updated);
+    }
+}
@@ -0,0 +1,530 @@
+package com.ecommerce.store;
+
+import com.ecommerce.Money;
+import com.ecommerce.Product;
+import com.ecommerce.ProductStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+
+// Keeps the catalog's products in a memory-mapped file instead of on the Java heap.
+// The product data of millions of products then costs the garbage collector nothing,
+// survives restarts without being rebuilt, and can be bigger than the heap (the OS pages
+// it in and out as needed). Only the products themselves live here: indexes built over
+// the catalog (search, listings) are still ordinary heap objects that grow with it.
+//
+// The capacity is fixed while the store is open. openOrCreate grows an existing file that
+// is too small by copying it into a bigger one, so raising the capacity takes a restart.
+//
+// File layout (all numbers in native byte order):
+//   header    64 bytes   magic, version, sizes, and the counters below
+//   table     8 bytes per entry, productID -> record slot, open addressing, linear probing
+//   records   32 bytes per product: id, stock, price in cents, name offset, description offset
+//   text      [int length][UTF-8 bytes] for every name and description, append-only
+//
+// A product keeps its record slot for as long as it is in the store, so the views handed
+// out by get() stay valid. Removing a product clears its id and puts the slot on a free list.
+// Replacing a name or description appends the new text; the old bytes are not reused.
+//
+// Reads never lock. Adding and removing products take the write lock; changes to a single
+// product's fields take the read lock, so they can't land on a slot that is being reused.
+public class MappedProductStore implements ProductStore, Closeable {
+    private static final int MAGIC = 0x50524F44; // "PROD"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+    private static final long H_MAGIC = 0;
+    private static final long H_VERSION = 4;
+    private static final long H_CAPACITY = 8;
+    private static final long H_TABLE_SIZE = 12;
+    private static final long H_HIGH_WATER = 16; // slots ever used
+    private static final long H_COUNT = 20;
+    private static final long H_FREE_HEAD = 24;
+    private static final long H_TEXT_CAPACITY = 32;
+    private static final long H_TEXT_END = 40;
+
+    private static final int ENTRY_SIZE = 8;
+    private static final int RECORD_SIZE = 32;
+    private static final long R_ID = 0;
+    private static final long R_STOCK = 4; // on a free slot: the next free slot
+    private static final long R_PRICE = 8;
+    private static final long R_NAME = 16;
+    private static final long R_DESCRIPTION = 24;
+
+    private static final int NO_SLOT = -1;
+    private static final long EMPTY_TEXT = -1;
+
+    private final FileChannel channel;
+    private final MappedRegion region;
+    private final int capacity;
+    private final int mask;
+    private final long tableStart;
+    private final long recordsStart;
+    private final long textStart;
+    private final long textCapacity;
+    private final StampedLock lock = new StampedLock();
+    private final Object textLock = new Object();
+
+    private MappedProductStore(FileChannel channel, MappedRegion region, int capacity, int tableSize, long textCapacity) {
+        this.channel = channel;
+        this.region = region;
+        this.capacity = capacity;
+        this.mask = tableSize - 1;
+        this.tableStart = HEADER_SIZE;
+        this.recordsStart = tableStart + (long) tableSize * ENTRY_SIZE;
+        this.textStart = recordsStart + (long) capacity * RECORD_SIZE;
+        this.textCapacity = textCapacity;
+    }
+
+    // Creates a new, empty store file that holds up to 'capacity' products and
+    // 'textBytes' bytes of names and descriptions. Fails if the file already exists.
+    public static MappedProductStore create(Path file, int capacity, long textBytes) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Store capacity must be a positive number.");
+        }
+        if (textBytes <= 0) {
+            throw new IllegalArgumentException("Text space must be a positive number of bytes.");
+        }
+        int tableSize = tableSizeFor(capacity);
+        textBytes = (textBytes + 7) & ~7L;
+        long length = HEADER_SIZE + (long) tableSize * ENTRY_SIZE + (long) capacity * RECORD_SIZE + textBytes;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // The file is sparse until pages are written, so a large capacity costs little disk up front
+            channel.write(ByteBuffer.allocate(1), length - 1);
+            MappedRegion region = new MappedRegion(channel, length);
+            region.putInt(H_VERSION, VERSION);
+            region.putInt(H_CAPACITY, capacity);
+            region.putInt(H_TABLE_SIZE, tableSize);
+            region.putInt(H_HIGH_WATER, 0);
+            region.putInt(H_COUNT, 0);
+            region.putInt(H_FREE_HEAD, NO_SLOT);
+            region.putLong(H_TEXT_CAPACITY, textBytes);
+            region.putLong(H_TEXT_END, 0);
+            region.force();
+            region.putInt(H_MAGIC, MAGIC); // last, so a half-created file is never mistaken for a store
+            region.force();
+            return new MappedProductStore(channel, region, capacity, tableSize, textBytes);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Opens a store file made earlier by create()
+    public static MappedProductStore open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long length = channel.size();
+            if (length < HEADER_SIZE) {
+                throw new IOException(file + " is not a product store (too short).");
+            }
+            MappedRegion region = new MappedRegion(channel, length);
+            if (region.getInt(H_MAGIC) != MAGIC) {
+                throw new IOException(file + " is not a product store.");
+            }
+            if (region.getInt(H_VERSION) != VERSION) {
+                throw new IOException(file + " has unsupported store version " + region.getInt(H_VERSION) + ".");
+            }
+            int capacity = region.getInt(H_CAPACITY);
+            int tableSize = region.getInt(H_TABLE_SIZE);
+            long textBytes = region.getLong(H_TEXT_CAPACITY);
+            long expected = HEADER_SIZE + (long) tableSize * ENTRY_SIZE + (long) capacity * RECORD_SIZE + textBytes;
+            if (capacity <= 0 || Integer.bitCount(tableSize) != 1 || expected != length) {
+                throw new IOException(file + " has a damaged header.");
+            }
+            return new MappedProductStore(channel, region, capacity, tableSize, textBytes);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Opens the file if it exists, otherwise creates it. An existing file with room for
+    // fewer than 'capacity' products or 'textBytes' of text is grown to that size first.
+    public static MappedProductStore openOrCreate(Path file, int capacity, long textBytes) throws IOException {
+        if (!Files.exists(file)) {
+            return create(file, capacity, textBytes);
+        }
+        MappedProductStore store = open(file);
+        if (store.capacity >= capacity && store.textCapacity >= textBytes) {
+            return store;
+        }
+        return grow(store, file, Math.max(capacity, store.capacity), Math.max(textBytes, store.textCapacity));
+    }
+
+    // Copies every product into a new, bigger file next to 'file', then moves it into
+    // place; until that move the old file is untouched. Products get new slots, so this
+    // only happens while opening, before any views exist. Closes 'old'.
+    private static MappedProductStore grow(MappedProductStore old, Path file, int capacity, long textBytes) throws IOException {
+        Path bigger = file.resolveSibling(file.getFileName() + ".grow");
+        Files.deleteIfExists(bigger); // left over from a grow that was cut short
+        try (MappedProductStore grown = create(bigger, capacity, textBytes)) {
+            for (Iterator<Product> products = old.iterator(); products.hasNext(); ) {
+                grown.put(products.next());
+            }
+        } catch (IOException | RuntimeException e) {
+            old.close();
+            Files.deleteIfExists(bigger);
+            throw e;
+        }
+        old.close();
+        Files.move(bigger, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(file);
+    }
+
+    public int capacity() { return capacity; }
+
+    @Override
+    public int size() {
+        return region.getInt(H_COUNT);
+    }
+
+    @Override
+    public Product get(int productID) {
+        if (productID <= 0) {
+            return null; // IDs are always positive, so this can't be in the store
+        }
+        long stamp = lock.tryOptimisticRead();
+        int slot = findSlot(productID);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                slot = findSlot(productID);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return slot == NO_SLOT ? null : new MappedProduct(this, slot, productID);
+    }
+
+    // Copies the product's data into the store. The returned previous product is a view
+    // of the same record, so it already shows the new data; read old values before calling.
+    @Override
+    public Product put(Product product) {
+        int productID = product.getProductID();
+        long stamp = lock.writeLock();
+        try {
+            int slot = findSlot(productID);
+            if (slot != NO_SLOT) {
+                writeFields(slot, product);
+                return new MappedProduct(this, slot, productID);
+            }
+            if (region.getInt(H_COUNT) == capacity) {
+                throw new IllegalStateException("The product store is full (" + capacity + " products). Reopen it with a larger capacity.");
+            }
+            slot = allocateSlot();
+            writeFields(slot, product);
+            region.putInt(record(slot) + R_ID, productID); // last, so iterators never see a half-written record
+            insertEntry(productID, slot);
+            region.putInt(H_COUNT, region.getInt(H_COUNT) + 1);
+            return null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // The removed product comes back as an ordinary heap Product, since its record is gone
+    @Override
+    public Product remove(int productID) {
+        if (productID <= 0) {
+            return null;
+        }
+        long stamp = lock.writeLock();
+        try {
+            int slot = findSlot(productID);
+            if (slot == NO_SLOT) {
+                return null;
+            }
+            long record = record(slot);
+            Product removed = new Product(productID, readText(region.getLong(record + R_NAME)),
+                    Money.ofCents(region.getLong(record + R_PRICE)),
+                    readText(region.getLong(record + R_DESCRIPTION)), region.getInt(record + R_STOCK));
+            removeEntry(productID);
+            region.putInt(record + R_ID, 0);
+            region.putInt(record + R_STOCK, region.getInt(H_FREE_HEAD));
+            region.putInt(H_FREE_HEAD, slot);
+            region.putInt(H_COUNT, region.getInt(H_COUNT) - 1);
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Walks the record slots in order. Weakly consistent: products added or removed
+    // during the walk may or may not be seen, but nothing is ever seen half-written.
+    @Override
+    public Iterator<Product> iterator() {
+        return new Iterator<Product>() {
+            private final int end = region.getInt(H_HIGH_WATER);
+            private int slot = advance(0);
+
+            private int advance(int from) {
+                while (from < end && region.getInt(record(from) + R_ID) == 0) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() { return slot < end; }
+
+            @Override
+            public Product next() {
+                if (slot >= end) {
+                    throw new NoSuchElementException();
+                }
+                int productID = region.getInt(record(slot) + R_ID);
+                Product product = new MappedProduct(MappedProductStore.this, slot, productID);
+                slot = advance(slot + 1);
+                return product;
+            }
+        };
+    }
+
+    @Override
+    public void ensureCapacity(int additional) {
+        if (additional > capacity - size()) {
+            throw new IllegalStateException("The product store has room for " + (capacity - size())
+                    + " more products, not " + additional + ".");
+        }
+    }
+
+    // Writes all changes through to disk
+    public void force() {
+        region.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        region.force();
+        channel.close();
+    }
+
+    // ---- Field access for MappedProduct ----
+    // Reads check the record's id after reading, so a view of a removed product can't
+    // quietly return another product's data if its slot was reused in the meantime.
+
+    String readName(int slot, int productID) {
+        String name = readText(region.getLong(record(slot) + R_NAME));
+        checkLive(slot, productID);
+        return name;
+    }
+
+    String readDescription(int slot, int productID) {
+        String description = readText(region.getLong(record(slot) + R_DESCRIPTION));
+        checkLive(slot, productID);
+        return description;
+    }
+
+    long readPriceCents(int slot, int productID) {
+        long cents = region.getLong(record(slot) + R_PRICE);
+        checkLive(slot, productID);
+        return cents;
+    }
+
+    int readStock(int slot, int productID) {
+        int stock = region.getInt(record(slot) + R_STOCK);
+        checkLive(slot, productID);
+        return stock;
+    }
+
+    void writeName(int slot, int productID, String name) {
+        long stamp = lock.readLock();
+        try {
+            checkLive(slot, productID);
+            region.putLong(record(slot) + R_NAME, appendText(name));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void writeDescription(int slot, int productID, String description) {
+        long stamp = lock.readLock();
+        try {
+            checkLive(slot, productID);
+            region.putLong(record(slot) + R_DESCRIPTION, appendText(description));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void writePriceCents(int slot, int productID, long cents) {
+        long stamp = lock.readLock();
+        try {
+            checkLive(slot, productID);
+            region.putLong(record(slot) + R_PRICE, cents);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void writeStock(int slot, int productID, int stock) {
+        long stamp = lock.readLock();
+        try {
+            checkLive(slot, productID);
+            region.putInt(record(slot) + R_STOCK, stock);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    boolean compareAndSetStock(int slot, int productID, int expected, int updated) {
+        long stamp = lock.readLock();
+        try {
+            checkLive(slot, productID);
+            return region.compareAndSetInt(record(slot) + R_STOCK, expected, updated);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void checkLive(int slot, int productID) {
+        if (region.getInt(record(slot) + R_ID) != productID) {
+            throw new IllegalStateException("Product " + productID + " is no longer in the store.");
+        }
+    }
+
+    // ---- Records ----
+
+    private long record(int slot) {
+        return recordsStart + (long) slot * RECORD_SIZE;
+    }
+
+    private int allocateSlot() {
+        int slot = region.getInt(H_FREE_HEAD);
+        if (slot != NO_SLOT) {
+            region.putInt(H_FREE_HEAD, region.getInt(record(slot) + R_STOCK));
+            return slot;
+        }
+        slot = region.getInt(H_HIGH_WATER);
+        region.putInt(H_HIGH_WATER, slot + 1);
+        return slot;
+    }
+
+    private void writeFields(int slot, Product product) {
+        long record = record(slot);
+        region.putInt(record + R_STOCK, product.getStock());
+        region.putLong(record + R_PRICE, product.getPriceCents());
+        replaceText(record + R_NAME, product.getName());
+        replaceText(record + R_DESCRIPTION, product.getDescription());
+    }
+
+    // Leaves unchanged text where it is, so replaying the same products at every
+    // startup doesn't keep growing the text space. (A fresh record points at offset 0,
+    // which is always valid text, so the comparison is safe there too.)
+    private void replaceText(long field, String text) {
+        long current = region.getLong(field);
+        if (readText(current).equals(text)) {
+            return;
+        }
+        region.putLong(field, appendText(text));
+    }
+
+    // ---- Text ----
+
+    private long appendText(String text) {
+        if (text.isEmpty()) {
+            return EMPTY_TEXT;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        long needed = (Integer.BYTES + bytes.length + 3) & ~3L; // keeps every length int aligned
+        synchronized (textLock) {
+            long offset = region.getLong(H_TEXT_END);
+            if (offset + needed > textCapacity) {
+                throw new IllegalStateException("The product store's text space is full (" + textCapacity + " bytes).");
+            }
+            region.putBytes(textStart + offset + Integer.BYTES, bytes);
+            region.putInt(textStart + offset, bytes.length);
+            region.putLong(H_TEXT_END, offset + needed);
+            return offset;
+        }
+    }
+
+    private String readText(long offset) {
+        if (offset == EMPTY_TEXT) {
+            return "";
+        }
+        byte[] bytes = new byte[region.getInt(textStart + offset)];
+        region.getBytes(textStart + offset + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ---- Table ----
+    // Each entry is one long (productID in the high half, slot in the low half), so a
+    // lock-free reader always sees a matching pair. Empty entries are 0.
+
+    private int findSlot(int productID) {
+        int index = mix(productID) & mask;
+        while (true) {
+            long entry = region.getLong(entry(index));
+            if (entry == 0) {
+                return NO_SLOT;
+            }
+            if ((int) (entry >>> 32) == productID) {
+                return (int) entry;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void insertEntry(int productID, int slot) {
+        int index = mix(productID) & mask;
+        while (region.getLong(entry(index)) != 0) {
+            index = (index + 1) & mask;
+        }
+        region.putLong(entry(index), ((long) productID << 32) | (slot & 0xFFFFFFFFL));
+    }
+
+    // Backward-shift deletion, the same as IntIntHashMap, so no tombstones pile up
+    private void removeEntry(int productID) {
+        int gap = mix(productID) & mask;
+        while ((int) (region.getLong(entry(gap)) >>> 32) != productID) {
+            gap = (gap + 1) & mask;
+        }
+        int index = gap;
+        while (true) {
+            index = (index + 1) & mask;
+            long entry = region.getLong(entry(index));
+            if (entry == 0) {
+                region.putLong(entry(gap), 0);
+                return;
+            }
+            int home = mix((int) (entry >>> 32)) & mask;
+            boolean movable = gap <= index ? (home <= gap || home > index) : (home <= gap && home > index);
+            if (movable) {
+                region.putLong(entry(gap), entry);
+                gap = index;
+            }
+        }
+    }
+
+    private long entry(int index) {
+        return tableStart + (long) index * ENTRY_SIZE;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // At least twice the capacity, so probes stay short and there is always an empty entry
+    private static int tableSizeFor(int capacity) {
+        long size = Long.highestOneBit(Math.max(capacity, 1) * 2L - 1) << 1;
+        if (size > (1 << 30)) {
+            throw new IllegalArgumentException("Store capacity is too large.");
+        }
+        return (int) size;
+    }
+}
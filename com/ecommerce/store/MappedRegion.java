@@ -0,0 +1,93 @@
+package com.ecommerce.store;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// A whole file mapped into memory, addressed with long offsets.
+// A single MappedByteBuffer can't go past 2 GB, so the file is mapped in 1 GB chunks.
+// Ints and longs are always stored at offsets that are multiples of their size, so
+// none of them ever straddles two chunks, and they can be updated atomically.
+final class MappedRegion {
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final MappedByteBuffer[] chunks;
+
+    MappedRegion(FileChannel channel, long length) throws IOException {
+        int count = (int) ((length + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+        chunks = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i << CHUNK_SHIFT;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(CHUNK_SIZE, length - start));
+            chunks[i].order(ByteOrder.nativeOrder());
+        }
+    }
+
+    int getInt(long offset) {
+        return (int) INTS.getVolatile(chunk(offset), index(offset));
+    }
+
+    void putInt(long offset, int value) {
+        INTS.setVolatile(chunk(offset), index(offset), value);
+    }
+
+    boolean compareAndSetInt(long offset, int expected, int updated) {
+        return INTS.compareAndSet(chunk(offset), index(offset), expected, updated);
+    }
+
+    long getLong(long offset) {
+        return (long) LONGS.getVolatile(chunk(offset), index(offset));
+    }
+
+    void putLong(long offset, long value) {
+        LONGS.setVolatile(chunk(offset), index(offset), value);
+    }
+
+    void getBytes(long offset, byte[] target) {
+        int done = 0;
+        while (done < target.length) {
+            long at = offset + done;
+            ByteBuffer view = chunk(at).duplicate();
+            view.position(index(at));
+            int n = Math.min(target.length - done, view.remaining());
+            view.get(target, done, n);
+            done += n;
+        }
+    }
+
+    void putBytes(long offset, byte[] source) {
+        int done = 0;
+        while (done < source.length) {
+            long at = offset + done;
+            ByteBuffer view = chunk(at).duplicate();
+            view.position(index(at));
+            int n = Math.min(source.length - done, view.remaining());
+            view.put(source, done, n);
+            done += n;
+        }
+    }
+
+    // Flushes changed pages to disk
+    void force() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    private MappedByteBuffer chunk(long offset) {
+        return chunks[(int) (offset >>> CHUNK_SHIFT)];
+    }
+
+    private static int index(long offset) {
+        return (int) (offset & CHUNK_MASK);
+    }
+}
@@ -0,0 +1,173 @@
+package com.ecommerce.util;
+
+import java.util.Arrays;
+
+// Open-addressing hash map from int keys to int values.
+// Nothing is boxed: keys and values live in two parallel int arrays and
+// collisions are resolved with linear probing. Key 0 marks a free slot,
+// so only non-zero keys can be stored (all IDs in the store are positive).
+// Not thread-safe on its own; callers guard it when sharing across threads.
+public class IntIntHashMap {
+    private static final int FREE = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final int missingValue;
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    public IntIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        int capacity = tableSizeFor((int) Math.ceil(Math.max(expectedSize, 4) / LOAD_FACTOR));
+        allocate(capacity);
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    // Returns the value for a key, or the missing value given at construction
+    public int get(int key) {
+        checkKey(key);
+        int slot = mix(key) & mask;
+        while (true) {
+            int k = keys[slot];
+            if (k == key) {
+                return values[slot];
+            }
+            if (k == FREE) {
+                return missingValue;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        checkKey(key);
+        int slot = mix(key) & mask;
+        while (true) {
+            int k = keys[slot];
+            if (k == key) {
+                return true;
+            }
+            if (k == FREE) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // Stores a value and returns the previous one (or the missing value)
+    public int put(int key, int value) {
+        checkKey(key);
+        int slot = mix(key) & mask;
+        while (true) {
+            int k = keys[slot];
+            if (k == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (k == FREE) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size >= resizeAt) {
+                    rehash(keys.length << 1);
+                }
+                return missingValue;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // Removes a key and returns its value (or the missing value)
+    public int remove(int key) {
+        checkKey(key);
+        int slot = mix(key) & mask;
+        while (true) {
+            int k = keys[slot];
+            if (k == FREE) {
+                return missingValue;
+            }
+            if (k == key) {
+                int previous = values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+    // Closes the gap left by a removed key so later probes still find their keys
+    // (backward-shift deletion, no tombstones needed)
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            int k = keys[slot];
+            if (k == FREE) {
+                keys[gap] = FREE;
+                return;
+            }
+            int home = mix(k) & mask;
+            // Move the key into the gap only if its home slot is not between the gap and its current slot
+            boolean movable = gap <= slot ? (home <= gap || home > slot) : (home <= gap && home > slot);
+            if (movable) {
+                keys[gap] = k;
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int k = oldKeys[i];
+            if (k != FREE) {
+                int slot = mix(k) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = k;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static void checkKey(int key) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Key 0 is reserved and can't be stored.");
+        }
+    }
+
+    // Spreads sequential IDs across the table (Fibonacci hashing)
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int n) {
+        int capacity = Integer.highestOneBit(Math.max(n - 1, 1)) << 1;
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Map is too large.");
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,186 @@
+package com.ecommerce.orders;
+
+import com.ecommerce.Customer;
+import com.ecommerce.Money;
+import com.ecommerce.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Many threads competing for the same stock at once. Product.tryReserve and
+// CheckoutEngine.checkout must never sell more than there is, never lose a unit that was
+// given back, and never leave half of a failed checkout reserved.
+//
+// checkoutThroughput runs full checkouts for a fixed time and prints checkouts per second:
+//
+//   gradle test -Decommerce.stress.threads=32 -Decommerce.stress.seconds=10
+//
+// (16 threads for 2 seconds by default).
+class StockContentionTest {
+    private static final int THREADS = Integer.getInteger("ecommerce.stress.threads", 16);
+    private static final int SECONDS = Integer.getInteger("ecommerce.stress.seconds", 2);
+    private static final int HOT_PRODUCTS = 3;
+
+    @Test
+    void checkoutThroughput() throws Exception {
+        // Enough stock that most of the run sells; whether it runs out or not, every unit
+        // must be accounted for at the end
+        Product[] products = hotProducts(2_000_000);
+        CheckoutEngine engine = new CheckoutEngine(1);
+        AtomicInteger nextCustomerID = new AtomicInteger(1001);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SECONDS);
+        long started = System.nanoTime();
+        List<int[]> perThread = runOnAllThreads(() -> {
+            Customer customer = new Customer(nextCustomerID.getAndIncrement(), "Stress Shopper", "stress@example.com");
+            int[] soldAndPlaced = new int[HOT_PRODUCTS + 2]; // units per product, then orders, then rejections
+            while (System.nanoTime() < deadline) {
+                try {
+                    fillCart(customer, products);
+                    Order order = engine.checkout(customer);
+                    for (int line = 0; line < order.getLineCount(); line++) {
+                        soldAndPlaced[order.getProductID(line) - 1] += order.getQuantity(line);
+                    }
+                    soldAndPlaced[HOT_PRODUCTS]++;
+                } catch (IllegalArgumentException e) {
+                    customer.clearCart(); // out of stock; a failed checkout changes nothing
+                    soldAndPlaced[HOT_PRODUCTS + 1]++;
+                }
+            }
+            return soldAndPlaced;
+        });
+        double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+
+        long[] totals = new long[HOT_PRODUCTS + 2];
+        for (int[] counts : perThread) {
+            for (int i = 0; i < counts.length; i++) {
+                totals[i] += counts[i];
+            }
+        }
+        System.out.printf(Locale.ROOT, "%d threads: %d checkouts in %.2f s (%.0f checkouts/s), %d rejected for lack of stock%n",
+                THREADS, totals[HOT_PRODUCTS], elapsedSeconds, totals[HOT_PRODUCTS] / elapsedSeconds, totals[HOT_PRODUCTS + 1]);
+        assertTrue(totals[HOT_PRODUCTS] > 0);
+        assertNothingOversoldOrLost(products, 2_000_000, totals);
+    }
+
+    @Test
+    void checkoutsSellExactlyTheStock() throws Exception {
+        Product[] products = hotProducts(5_000);
+        CheckoutEngine engine = new CheckoutEngine(1);
+        AtomicInteger nextCustomerID = new AtomicInteger(1001);
+        List<int[]> perThread = runOnAllThreads(() -> {
+            Customer customer = new Customer(nextCustomerID.getAndIncrement(), "Stress Shopper", "stress@example.com");
+            int[] sold = new int[HOT_PRODUCTS];
+            try {
+                while (true) {
+                    fillCart(customer, products);
+                    Order order = engine.checkout(customer);
+                    for (int line = 0; line < order.getLineCount(); line++) {
+                        sold[order.getProductID(line) - 1] += order.getQuantity(line);
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                return sold; // sold out
+            }
+        });
+        long[] totals = new long[HOT_PRODUCTS];
+        for (int[] sold : perThread) {
+            for (int i = 0; i < HOT_PRODUCTS; i++) {
+                totals[i] += sold[i];
+            }
+        }
+        assertNothingOversoldOrLost(products, 5_000, totals);
+    }
+
+    @Test
+    void reservationsNeverOversell() throws Exception {
+        Product product = product(1, 10_000);
+        List<Integer> reserved = runOnAllThreads(() -> {
+            int units = 0;
+            while (product.tryReserve(1)) {
+                units++;
+            }
+            return units;
+        });
+        assertEquals(10_000, reserved.stream().mapToInt(Integer::intValue).sum());
+        assertEquals(0, product.getStock());
+        assertFalse(product.tryReserve(1));
+    }
+
+    @Test
+    void reserveAndReleaseLeaveStockUnchanged() throws Exception {
+        Product product = product(1, THREADS);
+        runOnAllThreads(() -> {
+            for (int i = 0; i < 100_000; i++) {
+                if (product.tryReserve(1)) {
+                    product.release(1);
+                }
+            }
+            return 0;
+        });
+        assertEquals(THREADS, product.getStock());
+    }
+
+    // Every cart holds all the hot products, added in a different order on each thread, so
+    // checkouts that reserved in cart order could deadlock
+    private static void fillCart(Customer customer, Product[] products) {
+        for (int i = 0; i < products.length; i++) {
+            customer.addToCart(products[(customer.getCustomerID() + i) % products.length], 1 + i);
+        }
+    }
+
+    private static void assertNothingOversoldOrLost(Product[] products, int initialStock, long[] sold) {
+        for (Product product : products) {
+            assertTrue(product.getStock() >= 0);
+            assertEquals(initialStock, sold[product.getProductID() - 1] + product.getStock(),
+                    "units sold plus units left for product " + product.getProductID());
+        }
+    }
+
+    private static Product[] hotProducts(int stock) {
+        Product[] products = new Product[HOT_PRODUCTS];
+        for (int i = 0; i < HOT_PRODUCTS; i++) {
+            products[i] = product(i + 1, stock);
+        }
+        return products;
+    }
+
+    private static Product product(int productID, int stock) {
+        return new Product(productID, "Stress Item " + productID, Money.parse("1.00"), "", stock);
+    }
+
+    // Starts 'task' on every thread at the same moment and returns what each one returned
+    private static <T> List<T> runOnAllThreads(Callable<T> task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(SECONDS + 60, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}